@@ -1,8 +1,8 @@
 package ubicomp.william.com.rgbchanneldatacollector;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * The AnemiaDetection class represents a collection of tools
@@ -22,24 +22,35 @@ import java.util.Queue;
 
 public class AnemiaDetection {
 
-    private static final double ERROR_TOLERANCE = 2;
-    private static final double LOW_PASS_SMOOTHING = 5.65;
-    private static final double HIGH_PASS_SMOOTHING = 2;
-    private static final double MINIMUM_DIFFERENCE = 0.05;
-    private static final double CALC_DIFF_HARD = 5.5;
-
-    private static final int DETECTOR_BUFFER_SIZE = 5;
-    private static final int DATA_SIZE = 10;
-    private static final int GARBAGE_FRAMES = 0; // Change this value if you want to remove noise from data from first X frames of stream
-    private static final int MAX_ERROR_ALLOTMENT = 4;
-    private static final int MAPPING = 3;
-    private static final int PEAK = 1;
-    private static final int TROUGH = 2;
-    private static final int AVERAGE = 3;
-    private static final int MAX_LIGHT_COVER = 5;
-    private static final int MAX_LIGHT_PARTIAL_COVER = 50;
+    static final double ERROR_TOLERANCE = 2;
+    static final double LOW_PASS_SMOOTHING = 5.65;
+    static final double HIGH_PASS_SMOOTHING = 2;
+    static final double MINIMUM_DIFFERENCE = 0.05;
+    static final double CALC_DIFF_HARD = 5.5;
+
+    static final int DETECTOR_BUFFER_SIZE = 5;
+    static final int DATA_SIZE = 10;
+    static final int GARBAGE_FRAMES = 0; // Change this value if you want to remove noise from data from first X frames of stream
+    static final int MAX_ERROR_ALLOTMENT = 4;
+    static final int MAPPING = 3;
+    static final int PEAK = 1;
+    static final int TROUGH = 2;
+    static final int AVERAGE = 3;
+    static final int MAX_LIGHT_COVER = 5;
+    static final int MAX_LIGHT_PARTIAL_COVER = 50;
+    // Longest red value delay line, in frames; wider calibrations are clamped
+    static final int MAX_SIGNAL_WIDTH = 1024;
+
+    // Samples filtered at a time by detectPeakTroughs with a conditioning filter
+    private static final int CONDITIONING_BLOCK = 256;
+
+    private static final int SNAPSHOT_MAGIC = 0x414E4453; // "ANDS"
+    private static final short SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_FIXED_SIZE = 4 + 2 + 1 + 8 * 8 + 8 * 4
+            + 4 + 2 * 8 * DETECTOR_BUFFER_SIZE + 2 * 4 + 4 * MAX_ERROR_ALLOTMENT;
 
     private boolean mAlreadyExecuted;
+    private boolean mRevalidating;
     private boolean mPrevPeakDetected;
     private boolean mPrevTroughDetected;
     private double mLpfOutput;
@@ -57,15 +68,45 @@ public class AnemiaDetection {
     private int mPeakFrame;
     private int mTroughFrame;
     private int mSignalWidth;
+    private int mWindowStart;
+    private int mWindowCount;
+    private int mElementStart;
+    private int mElementCount;
 
     private int[] mConfidence;
-    private ArrayList<Double> mFilteredData;
-    private ArrayList<Double> mOriginalData;
-    private Queue<Double> mElementHolder;
+    private double[] mDetectorResult;
+    private double[] mFilteredData;
+    private double[] mOriginalData;
+    private double[] mElementHolder;
+    private double[] mConditioned;
+
+    private final DetectorParameters mParams;
+    private final MonotonicPeakDetector mPeakDetector;
+    private DetectorInstrumentation mInstrumentation;
+    private PeakTroughListener mPeakTroughListener;
+    private MonotonicPeakDetector mPredictor;
+    private BiquadFilterChain mConditioningFilter;
+    private boolean mConditioningPrimed;
+    // Frames left until lowPassFilter and highPassFilter are seeded again
+    private int mReseedFrames;
+    private int mQualityFirstFrame;
 
 
     public AnemiaDetection(int mFrameCount) {
+        this(mFrameCount, DetectorParameters.DEFAULT);
+    }
+
+    /**
+     * @param mFrameCount frame count of the first frame
+     * @param params      tuning of the detector
+     */
+    public AnemiaDetection(int mFrameCount, DetectorParameters params) {
+        if (params == null) {
+            throw new IllegalArgumentException();
+        }
+        this.mParams          = params;
         this.mAlreadyExecuted = false;
+        this.mRevalidating    = false;
         this.mTroughCount     = 0;
         this.mPeakCount       = 0;
         this.mPeakHold        = 0;
@@ -75,15 +116,116 @@ public class AnemiaDetection {
         this.mPeakFrame       = 0;
         this.mTroughFrame     = 0;
         this.mSignalWidth     = 0;
+        this.mWindowStart     = 0;
+        this.mWindowCount     = 0;
+        this.mElementStart    = 0;
+        this.mElementCount    = 0;
         this.mPeak            = 0;
         this.mTrough          = 0;
         this.mFrameCount      = mFrameCount;
+        this.mQualityFirstFrame = -1;
         this.mConfidence      = new int[MAX_ERROR_ALLOTMENT];
-        this.mElementHolder   = new LinkedList();
-        this.mFilteredData    = new ArrayList<>();
-        this.mOriginalData    = new ArrayList<>();
+        this.mDetectorResult  = new double[3];
+        this.mElementHolder   = new double[Math.max(params.getGarbageFrames() / 2, 1)];
+        this.mFilteredData    = new double[DETECTOR_BUFFER_SIZE];
+        this.mOriginalData    = new double[DETECTOR_BUFFER_SIZE];
+        // The five sample window keeps its own code path
+        this.mPeakDetector    = params.hasDefaultPeakWindow() ? null
+                : new MonotonicPeakDetector(params.getPeakHalfWidth(), true);
+    }
+
+
+    /**
+     * Attaches an instrumentation hook that is told about every
+     * detector call, or detaches it when null (the default). A
+     * detached hook costs one null check per call.
+     */
+    public void setInstrumentation(DetectorInstrumentation instrumentation) {
+        this.mInstrumentation = instrumentation;
+    }
+
+    /**
+     * Attaches a listener that is told about tentative peak and
+     * trough points as soon as the filtered signal turns, and then
+     * about their confirmation or retraction, or detaches it when
+     * null (the default). detectPeakTrough results do not change.
+     * A listener attached in the middle of a stream, or after
+     * readSnapshot, only sees points whose run starts after that.
+     * With a peak half width of 1 points are confirmed without a
+     * tentative call first.
+     */
+    public void setPeakTroughListener(PeakTroughListener listener) {
+        this.mPeakTroughListener = listener;
+        if (listener == null) {
+            mPredictor = null;
+        } else if (mPredictor == null) {
+            mPredictor = new MonotonicPeakDetector(mParams.getPeakHalfWidth(), false);
+        }
+    }
+
+    /**
+     * Replaces lowPassFilter and highPassFilter in front of the peak
+     * and trough detector with a chain of biquad sections, or goes
+     * back to them when null (the default). The detector owns the
+     * state of the chain from then on: use a copy() for each detector.
+     *
+     * Where lowPassFilter starts from the first frame after the
+     * garbage frames, the chain is primed with the steady state of
+     * that frame (reset(double)), so a band pass starts at 0 instead
+     * of ringing from 0 up to the red value. A chain set in the
+     * middle of a stream is primed with the next frame. Likewise,
+     * when a chain is removed in the middle of a stream the first
+     * order filters start over from the next two frames, as they do
+     * after the garbage frames, rather than from their stale outputs.
+     */
+    public void setConditioningFilter(BiquadFilterChain filter) {
+        if (filter == null && mConditioningFilter != null) {
+            mReseedFrames = 2;
+        }
+        this.mConditioningFilter = filter;
+        this.mConditioningPrimed = false;
+        if (filter != null && mConditioned == null) {
+            mConditioned = new double[CONDITIONING_BLOCK];
+        }
+    }
+
+    /**
+     * Starts the filters over from the next frame, as they do after
+     * the garbage frames. For callers that never passed the frames
+     * the filters are seeded from, such as a DetectionWorker whose
+     * first frames were dropped by its queue.
+     */
+    void reseedFilters() {
+        if (mConditioningFilter == null) {
+            mReseedFrames = 2;
+        } else {
+            mConditioningPrimed = false;
+        }
     }
 
+    public BiquadFilterChain getConditioningFilter() {
+        return mConditioningFilter;
+    }
+
+    public DetectorParameters getParameters() {
+        return mParams;
+    }
+
+    /**
+     * @return current output of lowPassFilter
+     */
+    double getLpfOutput() {
+        return mLpfOutput;
+    }
+
+    /**
+     * @return current output of highPassFilter (or of the
+     *         conditioning filter), the value the peak / trough
+     *         window works on
+     */
+    double getHpfOutput() {
+        return mHpfOutput;
+    }
 
     public void updateFrameCount(int frameCount) {
         if (mFrameCount < 0) {
@@ -115,49 +257,368 @@ public class AnemiaDetection {
      */
     public double[] detectPeakTrough(double rAvg, int startFrame) {
         double[] result = new double[3];
-        if (mFrameCount <= GARBAGE_FRAMES + startFrame) {
-            return result;
+        detectPeakTrough(rAvg, startFrame, result);
+        return result;
+    }
+
+    /**
+     * Allocation free version of detectPeakTrough. Writes the
+     * outcome of the current frame into a caller supplied array
+     * so the same array can be reused for every frame.
+     *
+     * @param rAvg       The average red value (0 - 255 RGB format)
+     *                   of each input video frame
+     * @param startFrame The first frame that the detector will start
+     *                   running on
+     * @param result     An array of at least three elements that
+     *                   receives the same three data points returned
+     *                   by detectPeakTrough(double, int); every index
+     *                   is reset to 0 when the frame is NOT a peak
+     *                   NOR trough
+     *
+     * @return 1 for a peak point, 2 for a trough point, 0 otherwise
+     */
+    public int detectPeakTrough(double rAvg, int startFrame, double[] result) {
+        if (result == null || result.length < 3) {
+            throw new IllegalArgumentException();
+        }
+        final DetectorInstrumentation instrumentation = mInstrumentation;
+        if (instrumentation == null) {
+            return detectFrame(rAvg, startFrame, result);
+        }
+        final long start = System.nanoTime();
+        final int type = detectFrame(rAvg, startFrame, result);
+        instrumentation.onDetectPeakTrough(type, System.nanoTime() - start);
+        return type;
+    }
+
+    private int detectFrame(double rAvg, int startFrame, double[] result) {
+        result[0] = 0;
+        result[1] = 0;
+        result[2] = 0;
+        final int garbageFrames = mParams.getGarbageFrames();
+        if (mFrameCount <= garbageFrames + startFrame) {
+            return 0;
         }
-        if (mFrameCount == GARBAGE_FRAMES + startFrame + 1) {
+        final BiquadFilterChain filter = mConditioningFilter;
+        int type = 0;
+        if (mFrameCount == garbageFrames + startFrame + 1) {
+            mLpfOutput = rAvg;
+            mReseedFrames = 0;
+            if (filter != null) {
+                filter.reset(rAvg);
+                mConditioningPrimed = true;
+            }
+        } else if (filter != null) {
+            if (!mConditioningPrimed) {
+                filter.reset(rAvg);
+                mConditioningPrimed = true;
+            }
+            mHpfOutput = filter.process(rAvg);
+            if (mFrameCount != garbageFrames + startFrame + 2) {
+                type = detectWindow(rAvg, startFrame, result);
+            }
+        } else if (mReseedFrames == 2) {
             mLpfOutput = rAvg;
+            mReseedFrames = 1;
         } else {
-            mLpfOutput = lowPassFilter(LOW_PASS_SMOOTHING, rAvg, mLpfOutput);
-            if (mFrameCount == GARBAGE_FRAMES + startFrame + 2) {
+            mLpfOutput = lowPassFilter(mParams.getLowPassSmoothing(), rAvg, mLpfOutput);
+            if (mFrameCount == garbageFrames + startFrame + 2 || mReseedFrames == 1) {
                 mHpfOutput = 0;
                 mPrevLpfInput = mLpfOutput;
+                mReseedFrames = 0;
             } else {
-                mHpfOutput = highPassFilter(HIGH_PASS_SMOOTHING, mLpfOutput,
+                mHpfOutput = highPassFilter(mParams.getHighPassGain(), mLpfOutput,
                                             mHpfOutput, mPrevLpfInput);
                 mPrevLpfInput = mLpfOutput;
-                if(mFrameCount <= GARBAGE_FRAMES + DETECTOR_BUFFER_SIZE + startFrame + 2) {
-                    mFilteredData.add(mHpfOutput);
-                    mOriginalData.add(rAvg);
-                } else {
-                    final int rMapping = mFrameCount - MAPPING;
-                    final double rVal = mOriginalData.get(2);
-                    if (mFilteredData.get(2) > mFilteredData.get(1) &&
-                            mFilteredData.get(2) > mFilteredData.get(3) &&
-                            mFilteredData.get(1) > mFilteredData.get(0) &&
-                            mFilteredData.get(3) > mFilteredData.get(4)) {
-                        result[0] = PEAK;
-                        result[1]= rMapping;
-                        result[2] = rVal;
-                    } else if (mFilteredData.get(2) < mFilteredData.get(1) &&
-                               mFilteredData.get(2) < mFilteredData.get(3) &&
-                               mFilteredData.get(1) < mFilteredData.get(0) &&
-                               mFilteredData.get(3) < mFilteredData.get(4)) {
-                        result[0] = TROUGH;
-                        result[1]= rMapping;
-                        result[2] = rVal;
-                    }
-                    mOriginalData.remove(0);
-                    mFilteredData.remove(0);
-                    mOriginalData.add(rAvg);
-                    mFilteredData.add(mHpfOutput);
+                type = detectWindow(rAvg, startFrame, result);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Looks for a peak or trough in the middle of the detector window
+     * and then appends the frame and its filtered value mHpfOutput.
+     * With a peak half width other than 2 the window is a
+     * MonotonicPeakDetector, which reports points
+     * half width + 1 frames late where the five sample window
+     * reports them MAPPING frames late.
+     */
+    private int detectWindow(double rAvg, int startFrame, double[] result) {
+        final PeakTroughListener listener = mPeakTroughListener;
+        if (listener != null) {
+            predict(listener, rAvg);
+        }
+        final MonotonicPeakDetector peakDetector = mPeakDetector;
+        if (peakDetector != null) {
+            final int type = peakDetector.add(mHpfOutput, rAvg);
+            if (type != 0) {
+                result[0] = type;
+                result[1] = mFrameCount - peakDetector.getDelay();
+                result[2] = peakDetector.getPointValue();
+            }
+            return type;
+        }
+        int type = 0;
+        if (mFrameCount > mParams.getGarbageFrames() + DETECTOR_BUFFER_SIZE + startFrame + 2 &&
+                mWindowCount == DETECTOR_BUFFER_SIZE) {
+            final double f0 = mFilteredData[windowIndex(0)];
+            final double f1 = mFilteredData[windowIndex(1)];
+            final double f2 = mFilteredData[windowIndex(2)];
+            final double f3 = mFilteredData[windowIndex(3)];
+            final double f4 = mFilteredData[windowIndex(4)];
+            if (f2 > f1 && f2 > f3 && f1 > f0 && f3 > f4) {
+                type = PEAK;
+            } else if (f2 < f1 && f2 < f3 && f1 < f0 && f3 < f4) {
+                type = TROUGH;
+            }
+            if (type != 0) {
+                result[0] = type;
+                result[1] = mFrameCount - MAPPING;
+                result[2] = mOriginalData[windowIndex(2)];
+            }
+        }
+        pushWindow(rAvg, mHpfOutput);
+        return type;
+    }
+
+    /**
+     * Feeds the frame and its filtered value mHpfOutput to the
+     * predictor and tells the listener what it saw.
+     */
+    private void predict(PeakTroughListener listener, double rAvg) {
+        final MonotonicPeakDetector predictor = mPredictor;
+        final int type = predictor.add(mHpfOutput, rAvg);
+        if (predictor.getRetracted() != 0) {
+            listener.onRetracted(predictor.getRetracted(), mFrameCount - predictor.getRetractedDelay());
+        }
+        if (type != 0) {
+            listener.onConfirmed(type, mFrameCount - predictor.getDelay(), predictor.getPointValue());
+        }
+        if (predictor.getTentative() != 0) {
+            listener.onTentative(predictor.getTentative(), mFrameCount - 1, predictor.getTentativeValue());
+        }
+    }
+
+    /**
+     * Runs detectPeakTrough over a whole recorded trace in one
+     * pass. The first sample is processed at the current frame
+     * count and every following sample at the next frame, exactly
+     * as if updateFrameCount and detectPeakTrough had been called
+     * once per sample. When the method returns the frame count is
+     * that of the last sample.
+     *
+     * @param rAvg       Average red values (0 - 255 RGB format),
+     *                   one per video frame
+     * @param offset     Index of the first sample to process
+     * @param length     Number of samples to process
+     * @param startFrame The first frame that the detector will start
+     *                   running on
+     *
+     * @return Every peak and trough point found in the trace
+     */
+    public PeakTroughEvents detectPeakTroughs(double[] rAvg, int offset, int length, int startFrame) {
+        PeakTroughEvents events = new PeakTroughEvents();
+        detectPeakTroughs(rAvg, offset, length, startFrame, events);
+        return events;
+    }
+
+    /**
+     * Same as detectPeakTroughs(double[], int, int, int) but appends
+     * the points to a caller supplied event list.
+     *
+     * @return The number of points appended to events
+     */
+    public int detectPeakTroughs(double[] rAvg, int offset, int length, int startFrame,
+                                 PeakTroughEvents events) {
+        if (rAvg == null || events == null || offset < 0 || length < 0
+                || length > rAvg.length - offset) {
+            throw new IllegalArgumentException();
+        }
+        final DetectorInstrumentation instrumentation = mInstrumentation;
+        final long start = instrumentation != null ? System.nanoTime() : 0;
+        final int before = events.size();
+        final int end = offset + length;
+        final int firstFrame = mFrameCount;
+        final double[] result = mDetectorResult;
+        int i = offset;
+        // Warm-up frames take the regular per frame path
+        for (; i < end; i++) {
+            mFrameCount = firstFrame + (i - offset);
+            if (mFrameCount > mParams.getGarbageFrames() + DETECTOR_BUFFER_SIZE + startFrame + 2 &&
+                    mWindowCount == DETECTOR_BUFFER_SIZE
+                    && (mConditioningFilter == null || mConditioningPrimed) && mReseedFrames == 0
+                    && mPeakDetector == null
+                    && mPeakTroughListener == null) {
+                break;
+            }
+            int type = detectFrame(rAvg[i], startFrame, result);
+            if (type != 0) {
+                events.add(type, (int) result[1], result[2]);
+            }
+        }
+        if (i < end) {
+            if (mConditioningFilter != null) {
+                detectConditioned(rAvg, i, end, events);
+            } else {
+                detectSteadyState(rAvg, i, end, events);
+            }
+        }
+        if (instrumentation != null) {
+            instrumentation.onDetectPeakTroughs(events, before, length, System.nanoTime() - start);
+        }
+        return events.size() - before;
+    }
+
+    /**
+     * Steady state loop of detectPeakTroughs. Keeps the filter
+     * state and the detector window in local variables for the
+     * whole trace and writes them back once at the end. Must
+     * produce the same points as calling detectPeakTrough for
+     * every sample.
+     */
+    private void detectSteadyState(double[] rAvg, int from, int end, PeakTroughEvents events) {
+        final double lpfSmoothing = mParams.getLowPassSmoothing();
+        final double hpfGain = mParams.getHighPassGain();
+        double lpf = mLpfOutput;
+        double hpf = mHpfOutput;
+        double prevLpf = mPrevLpfInput;
+        double f0 = mFilteredData[windowIndex(0)];
+        double f1 = mFilteredData[windowIndex(1)];
+        double f2 = mFilteredData[windowIndex(2)];
+        double f3 = mFilteredData[windowIndex(3)];
+        double f4 = mFilteredData[windowIndex(4)];
+        double o0 = mOriginalData[windowIndex(0)];
+        double o1 = mOriginalData[windowIndex(1)];
+        double o2 = mOriginalData[windowIndex(2)];
+        double o3 = mOriginalData[windowIndex(3)];
+        double o4 = mOriginalData[windowIndex(4)];
+        int frame = mFrameCount;
+        for (int i = from; i < end; i++, frame++) {
+            final double r = rAvg[i];
+            lpf = lpf + (r - lpf) / lpfSmoothing;
+            hpf = hpfGain * (hpf + lpf - prevLpf);
+            prevLpf = lpf;
+            if (f2 > f1 && f2 > f3 && f1 > f0 && f3 > f4) {
+                events.add(PEAK, frame - MAPPING, o2);
+            } else if (f2 < f1 && f2 < f3 && f1 < f0 && f3 < f4) {
+                events.add(TROUGH, frame - MAPPING, o2);
+            }
+            f0 = f1;
+            f1 = f2;
+            f2 = f3;
+            f3 = f4;
+            f4 = hpf;
+            o0 = o1;
+            o1 = o2;
+            o2 = o3;
+            o3 = o4;
+            o4 = r;
+        }
+        mFrameCount = frame - 1;
+        mLpfOutput = lpf;
+        mHpfOutput = hpf;
+        mPrevLpfInput = prevLpf;
+        mWindowStart = 0;
+        mFilteredData[0] = f0;
+        mFilteredData[1] = f1;
+        mFilteredData[2] = f2;
+        mFilteredData[3] = f3;
+        mFilteredData[4] = f4;
+        mOriginalData[0] = o0;
+        mOriginalData[1] = o1;
+        mOriginalData[2] = o2;
+        mOriginalData[3] = o3;
+        mOriginalData[4] = o4;
+    }
+
+    /**
+     * Steady state loop of detectPeakTroughs with a conditioning
+     * filter. Filters the trace a block at a time with the bulk
+     * BiquadFilterChain.process and then runs the detector window
+     * over the block. Must produce the same points as calling
+     * detectPeakTrough for every sample.
+     */
+    private void detectConditioned(double[] rAvg, int from, int end, PeakTroughEvents events) {
+        final BiquadFilterChain filter = mConditioningFilter;
+        final double[] conditioned = mConditioned;
+        double f0 = mFilteredData[windowIndex(0)];
+        double f1 = mFilteredData[windowIndex(1)];
+        double f2 = mFilteredData[windowIndex(2)];
+        double f3 = mFilteredData[windowIndex(3)];
+        double f4 = mFilteredData[windowIndex(4)];
+        double o0 = mOriginalData[windowIndex(0)];
+        double o1 = mOriginalData[windowIndex(1)];
+        double o2 = mOriginalData[windowIndex(2)];
+        double o3 = mOriginalData[windowIndex(3)];
+        double o4 = mOriginalData[windowIndex(4)];
+        int frame = mFrameCount;
+        for (int block = from; block < end; block += CONDITIONING_BLOCK) {
+            final int length = Math.min(CONDITIONING_BLOCK, end - block);
+            System.arraycopy(rAvg, block, conditioned, 0, length);
+            filter.process(conditioned, 0, length);
+            for (int i = 0; i < length; i++, frame++) {
+                if (f2 > f1 && f2 > f3 && f1 > f0 && f3 > f4) {
+                    events.add(PEAK, frame - MAPPING, o2);
+                } else if (f2 < f1 && f2 < f3 && f1 < f0 && f3 < f4) {
+                    events.add(TROUGH, frame - MAPPING, o2);
                 }
+                f0 = f1;
+                f1 = f2;
+                f2 = f3;
+                f3 = f4;
+                f4 = conditioned[i];
+                o0 = o1;
+                o1 = o2;
+                o2 = o3;
+                o3 = o4;
+                o4 = rAvg[block + i];
             }
         }
-        return result;
+        mFrameCount = frame - 1;
+        mHpfOutput = f4;
+        mWindowStart = 0;
+        mFilteredData[0] = f0;
+        mFilteredData[1] = f1;
+        mFilteredData[2] = f2;
+        mFilteredData[3] = f3;
+        mFilteredData[4] = f4;
+        mOriginalData[0] = o0;
+        mOriginalData[1] = o1;
+        mOriginalData[2] = o2;
+        mOriginalData[3] = o3;
+        mOriginalData[4] = o4;
+    }
+
+    /**
+     * Maps a position in the detector window (0 = oldest sample)
+     * to its slot in the underlying ring buffer.
+     */
+    private int windowIndex(int position) {
+        int index = mWindowStart + position;
+        return index < DETECTOR_BUFFER_SIZE ? index : index - DETECTOR_BUFFER_SIZE;
+    }
+
+    /**
+     * Appends a sample to the detector window. Once the window
+     * holds DETECTOR_BUFFER_SIZE samples the oldest one is
+     * overwritten in place instead of shifting the buffer.
+     *
+     * @param original the raw red value of the frame
+     * @param filtered the band-passed red value of the frame
+     */
+    private void pushWindow(double original, double filtered) {
+        if (mWindowCount < DETECTOR_BUFFER_SIZE) {
+            int index = windowIndex(mWindowCount);
+            mOriginalData[index] = original;
+            mFilteredData[index] = filtered;
+            mWindowCount++;
+        } else {
+            mOriginalData[mWindowStart] = original;
+            mFilteredData[mWindowStart] = filtered;
+            mWindowStart = windowIndex(1);
+        }
     }
 
      /**
@@ -183,63 +644,276 @@ public class AnemiaDetection {
       */
 
      public int checkDataQuality(double rVal, double gVal, double bVal, int confidence, int startFrame) {
-         int output = 0;
-         if (rVal < 0 || gVal < 0 || bVal < 0 || confidence > DATA_SIZE - 1 || confidence < 0) {
+         if (rVal < 0 || gVal < 0 || bVal < 0 || !mParams.isValidConfidence(confidence)) {
              throw new IllegalArgumentException();
          }
-         if (mPeakCount < AVERAGE || mTroughCount < AVERAGE) {
-             double[] result = detectPeakTrough(rVal, startFrame);
-             if (result[0] == PEAK) {
-                 mPeakHold += result[2];
-                 mPeakFrame += result[1];
-                 mPeakCount++;
-             } else if(result[0] == TROUGH) {
-                 mTroughHold += result[2];
-                 mTroughFrame += result[1];
-                 mTroughCount++;
-             }
+         final DetectorInstrumentation instrumentation = mInstrumentation;
+         if (instrumentation == null) {
+             return checkFrame(rVal, gVal, bVal, confidence, startFrame, null);
+         }
+         if (mQualityFirstFrame < 0) {
+             mQualityFirstFrame = mFrameCount;
+         }
+         final long start = System.nanoTime();
+         final int output = checkFrame(rVal, gVal, bVal, confidence, startFrame, instrumentation);
+         instrumentation.onCheckDataQuality(output, System.nanoTime() - start);
+         return output;
+     }
+
+     private int checkFrame(double rVal, double gVal, double bVal, int confidence, int startFrame,
+                            DetectorInstrumentation instrumentation) {
+         int output = 0;
+         if (mRevalidating) {
+             revalidate(rVal, startFrame, instrumentation);
+             output = classify(rVal, gVal, bVal, confidence, instrumentation);
+         } else if (mPeakCount < mParams.getCalibrationPeaks()
+                 || mTroughCount < mParams.getCalibrationPeaks()) {
+             accumulatePeakTrough(rVal, startFrame);
          } else if (!mAlreadyExecuted) {
-             mCalcDiff = ((mPeakHold / mPeakCount) - (mTroughHold / mTroughCount)) + ERROR_TOLERANCE;
-             mSignalWidth = (int) Math.abs((((mPeakFrame / mPeakCount)
-                                  - (mTroughFrame / mTroughCount))) + ERROR_TOLERANCE);
+             mCalcDiff = averageCalcDiff();
+             mSignalWidth = averageSignalWidth();
              mCountHold = mFrameCount;
+             resetElementHolder(mSignalWidth);
              mAlreadyExecuted = true;
-         } else {
-             if (mFrameCount - mCountHold <= mSignalWidth) {
-                 mElementHolder.add(rVal);
-             } else {
-                 double difference = Math.abs(rVal - mElementHolder.remove());
-                 if (difference < mCalcDiff && difference > MINIMUM_DIFFERENCE &&
-                         gVal < MAX_LIGHT_COVER && bVal < MAX_LIGHT_COVER) {
-                     mConfidence[0]++;
-                 } else if (difference < mCalcDiff && difference > MINIMUM_DIFFERENCE &&
-                         (gVal < MAX_LIGHT_PARTIAL_COVER || bVal < MAX_LIGHT_PARTIAL_COVER)) {
-                     mConfidence[1]++;
-                 } else if (difference > mCalcDiff) {
-                     mConfidence[2]++;
-                 } else { // difference < 0.15 && gVal > 0.05 && bVal > 0.05
-                     mConfidence[3]++;
-                 }
-                 mElementHolder.add(rVal);
-                 if (mFrameCount % DATA_SIZE == 0) {
-                     output = confidenceCheck(confidence);
-                     mConfidence = new int[MAX_ERROR_ALLOTMENT];
-                 }
+             if (instrumentation != null) {
+                 instrumentation.onCalibrated(mFrameCount - Math.max(mQualityFirstFrame, 0),
+                                              mCalcDiff, mSignalWidth);
              }
+         } else {
+             output = classify(rVal, gVal, bVal, confidence, instrumentation);
          }
          return output;
      }
 
+    /**
+     * Starts checkDataQuality off with thresholds learned in an
+     * earlier session (see getCalcDiff and getSignalWidth), so it
+     * classifies frames as soon as the red value delay line is full
+     * instead of waiting for the calibration peaks and troughs first.
+     *
+     * The peaks and troughs are still collected while the session
+     * runs. Once enough of each have been seen the thresholds are
+     * recomputed from this session and replace the given ones.
+     *
+     * @param calcDiff    largest red value change expected from the pulse
+     * @param signalWidth frames between a peak and its trough, at most
+     *                    MAX_SIGNAL_WIDTH
+     */
+    public void applyCalibration(double calcDiff, int signalWidth) {
+        if (Double.isNaN(calcDiff) || Double.isInfinite(calcDiff)
+                || signalWidth < 0 || signalWidth > MAX_SIGNAL_WIDTH) {
+            throw new IllegalArgumentException();
+        }
+        mPeakHold = 0;
+        mTroughHold = 0;
+        mPeakFrame = 0;
+        mTroughFrame = 0;
+        mPeakCount = 0;
+        mTroughCount = 0;
+        mCalcDiff = calcDiff;
+        mSignalWidth = signalWidth;
+        resetElementHolder(signalWidth);
+        Arrays.fill(mConfidence, 0);
+        mAlreadyExecuted = true;
+        mRevalidating = true;
+    }
+
+    /**
+     * @return true once checkDataQuality has thresholds, learned or
+     *         applied with applyCalibration
+     */
+    public boolean isCalibrated() {
+        return mAlreadyExecuted;
+    }
+
+    /**
+     * @return true while thresholds given to applyCalibration have
+     *         not yet been confirmed by this session
+     */
+    public boolean isRevalidating() {
+        return mRevalidating;
+    }
+
+    /**
+     * @return the largest red value change checkDataQuality expects
+     *         from the pulse, 0 before calibration
+     */
+    public double getCalcDiff() {
+        return mCalcDiff;
+    }
+
+    /**
+     * @return the frames between a peak and its trough that
+     *         checkDataQuality compares red values over, at most
+     *         MAX_SIGNAL_WIDTH, 0 before calibration
+     */
+    public int getSignalWidth() {
+        return mSignalWidth;
+    }
+
+    /**
+     * Adds the peak or trough of the current frame, if any, to the
+     * calibration accumulators.
+     */
+    private void accumulatePeakTrough(double rVal, int startFrame) {
+        double[] result = mDetectorResult;
+        int type = detectPeakTrough(rVal, startFrame, result);
+        if (type == PEAK) {
+            mPeakHold += result[2];
+            mPeakFrame += result[1];
+            mPeakCount++;
+        } else if(type == TROUGH) {
+            mTroughHold += result[2];
+            mTroughFrame += result[1];
+            mTroughCount++;
+        }
+    }
+
+    private double averageCalcDiff() {
+        return ((mPeakHold / mPeakCount) - (mTroughHold / mTroughCount)) + mParams.getErrorTolerance();
+    }
+
+    private int averageSignalWidth() {
+        return Math.min((int) Math.abs((((mPeakFrame / mPeakCount)
+                   - (mTroughFrame / mTroughCount))) + mParams.getErrorTolerance()), MAX_SIGNAL_WIDTH);
+    }
+
+    /**
+     * Collects peaks and troughs next to the classification after
+     * applyCalibration, and replaces the applied thresholds once
+     * there are enough of them. The delay line only starts over when
+     * the signal width has changed.
+     */
+    private void revalidate(double rVal, int startFrame, DetectorInstrumentation instrumentation) {
+        accumulatePeakTrough(rVal, startFrame);
+        if (mPeakCount < mParams.getCalibrationPeaks() || mTroughCount < mParams.getCalibrationPeaks()) {
+            return;
+        }
+        mCalcDiff = averageCalcDiff();
+        int signalWidth = averageSignalWidth();
+        if (signalWidth != mSignalWidth) {
+            mSignalWidth = signalWidth;
+            resetElementHolder(signalWidth);
+        }
+        mCountHold = mFrameCount;
+        mRevalidating = false;
+        if (instrumentation != null) {
+            instrumentation.onCalibrated(mFrameCount - Math.max(mQualityFirstFrame, 0),
+                                         mCalcDiff, mSignalWidth);
+        }
+    }
+
+    /**
+     * Sorts the frame into a confidence bucket once the delay line
+     * is full and turns the buckets into a verdict every data size
+     * frames.
+     *
+     * @return the verdict, 0 on the other frames
+     */
+    private int classify(double rVal, double gVal, double bVal, int confidence,
+                         DetectorInstrumentation instrumentation) {
+        int output = 0;
+        if (mElementCount < mElementHolder.length) {
+            fillElementHolder(rVal);
+        } else {
+            double difference = Math.abs(rVal - shiftElementHolder(rVal));
+            mConfidence[classifyFrame(difference, mCalcDiff, gVal, bVal, mParams)]++;
+            if (mFrameCount % mParams.getDataSize() == 0) {
+                if (instrumentation != null) {
+                    instrumentation.onConfidenceBuckets(mConfidence);
+                }
+                output = confidenceCheck(confidence);
+                Arrays.fill(mConfidence, 0);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Clears the red value delay line and resizes it to hold
+     * the given number of frames (at least one).
+     *
+     * @param width number of frames between compared red values
+     */
+    private void resetElementHolder(int width) {
+        int capacity = Math.max(width, 1);
+        if (mElementHolder.length != capacity) {
+            mElementHolder = new double[capacity];
+        }
+        mElementStart = 0;
+        mElementCount = 0;
+    }
+
+    /**
+     * Appends a red value to the delay line while it is still
+     * filling up.
+     */
+    private void fillElementHolder(double rVal) {
+        mElementHolder[mElementCount] = rVal;
+        mElementCount++;
+    }
+
+    /**
+     * Replaces the oldest red value of the full delay line with
+     * the newest one.
+     *
+     * @param rVal the red value of the current frame
+     * @return the red value stored one delay line length ago
+     */
+    private double shiftElementHolder(double rVal) {
+        double oldest = mElementHolder[mElementStart];
+        mElementHolder[mElementStart] = rVal;
+        mElementStart++;
+        if (mElementStart == mElementHolder.length) {
+            mElementStart = 0;
+        }
+        return oldest;
+    }
+
+    /**
+     * Sorts a single frame into one of the confidence buckets.
+     * The difference window test is evaluated only once per frame.
+     *
+     * 0 - Finger is accurately on camera
+     * 1 - Finger not covering camera correctly
+     * 2 - Finger has shifted on camera
+     * 3 - Finger not on camera
+     *
+     * @param difference change in red value over one signal width
+     * @param calcDiff   largest change expected from the pulse itself
+     * @param gVal       average green value of the frame
+     * @param bVal       average blue value of the frame
+     * @param params     light and difference thresholds
+     * @return index into mConfidence
+     */
+    static int classifyFrame(double difference, double calcDiff, double gVal, double bVal,
+                             DetectorParameters params) {
+        if (difference < calcDiff && difference > params.getMinimumDifference()) {
+            final double cover = params.getMaxLightCover();
+            if (gVal < cover && bVal < cover) {
+                return 0;
+            }
+            final double partialCover = params.getMaxLightPartialCover();
+            return gVal < partialCover || bVal < partialCover ? 1 : 3;
+        }
+        return difference > calcDiff ? 2 : 3;
+    }
+
     // Error reporting
     private int confidenceCheck(int confidence) {
+        return confidenceCheck(mConfidence, 0, confidence);
+    }
+
+    // Error reporting over MAX_ERROR_ALLOTMENT buckets starting at offset
+    static int confidenceCheck(int[] buckets, int offset, int confidence) {
         int result = 0;
-        if (mConfidence[0] >= confidence) {
+        if (buckets[offset] >= confidence) {
             result = 1;
-        } else if (mConfidence[1] >= confidence) {
+        } else if (buckets[offset + 1] >= confidence) {
             result = 2;
-        } else if (mConfidence[2] >= confidence) {
+        } else if (buckets[offset + 2] >= confidence) {
             result = 3;
-        } else if (mConfidence[3] >= confidence) {
+        } else if (buckets[offset + 3] >= confidence) {
             result = 4;
         }
         return result;
@@ -259,15 +933,13 @@ public class AnemiaDetection {
      * 'a'    a constant that determines the
      *        sharpness of the output peaks/troughs
      *
-     * @param smoothing  filter aggressiveness
+     * @param smoothing  filter aggressiveness 'a', checked by
+     *                   DetectorParameters
      * @param input      noisy signal to be filtered
      * @param prevOutput previous value of the clean signal
      * @return filtered signal
      */
     private double lowPassFilter(double smoothing, double input, double prevOutput) {
-        if (smoothing <= 1) {
-            throw new IllegalArgumentException();
-        }
         return prevOutput + (input - prevOutput) / smoothing;
     }
 
@@ -285,18 +957,14 @@ public class AnemiaDetection {
      * 'b'    equivalent to (1 - (1 / smoothing));
      *        determines sharpness of output peaks/troughs
      *
-     * @param smoothing  filter aggressiveness
+     * @param b          precomputed by DetectorParameters
      * @param input      noisy signal to be filtered
      * @param prevInput  previous value of the noisy signal
      * @param prevOutput previous value of the clean signal
      * @return filtered signal
      */
-    private double highPassFilter(double smoothing, double input,
+    private double highPassFilter(double b, double input,
                                   double prevOutput, double prevInput) {
-        if (smoothing <= 1) {
-            throw new IllegalArgumentException();
-        }
-        double b = 1 - (1 / smoothing);
         return b * (prevOutput + input - prevInput);
     }
 
@@ -348,36 +1016,225 @@ public class AnemiaDetection {
      */
 
     public int checkDataQuality2(double rVal, double gVal, double bVal, int confidence) {
-        if (rVal < 0 || gVal < 0 || bVal < 0 || confidence > DATA_SIZE - 1 || confidence < 0) {
+        if (rVal < 0 || gVal < 0 || bVal < 0 || !mParams.isValidConfidence(confidence)) {
             throw new IllegalArgumentException();
         }
+        final DetectorInstrumentation instrumentation = mInstrumentation;
+        if (instrumentation == null) {
+            return checkFrame2(rVal, gVal, bVal, confidence, null);
+        }
+        final long start = System.nanoTime();
+        final int output = checkFrame2(rVal, gVal, bVal, confidence, instrumentation);
+        instrumentation.onCheckDataQuality(output, System.nanoTime() - start);
+        return output;
+    }
+
+    private int checkFrame2(double rVal, double gVal, double bVal, int confidence,
+                            DetectorInstrumentation instrumentation) {
         int output = 0;
-        if (mFrameCount <= GARBAGE_FRAMES) {
+        if (mFrameCount <= mParams.getGarbageFrames()) {
             return output;
         } else {
-            if (mFrameCount - GARBAGE_FRAMES <= GARBAGE_FRAMES / 2) {
-                mElementHolder.add(rVal);
+            if (mElementCount < mElementHolder.length) {
+                fillElementHolder(rVal);
             } else {
-                double difference = Math.abs(rVal - mElementHolder.remove());
-                if (difference < CALC_DIFF_HARD && difference > MINIMUM_DIFFERENCE &&
-                        gVal < MAX_LIGHT_COVER && bVal < MAX_LIGHT_COVER) {
-                    mConfidence[0]++;
-                } else if (difference < CALC_DIFF_HARD && difference > MINIMUM_DIFFERENCE &&
-                        (gVal < MAX_LIGHT_PARTIAL_COVER || bVal < MAX_LIGHT_PARTIAL_COVER)) {
-                    mConfidence[1]++;
-                } else if (difference > CALC_DIFF_HARD) {
-                    mConfidence[2]++;
-                } else {
-                    mConfidence[3]++;
-                }
-                mElementHolder.add(rVal);
-                if (mFrameCount % DATA_SIZE == 0) {
+                double difference = Math.abs(rVal - shiftElementHolder(rVal));
+                mConfidence[classifyFrame(difference, mParams.getCalcDiffHard(), gVal, bVal, mParams)]++;
+                if (mFrameCount % mParams.getDataSize() == 0) {
+                    if (instrumentation != null) {
+                        instrumentation.onConfidenceBuckets(mConfidence);
+                    }
                     output = confidenceCheck(confidence);
-                    mConfidence = new int[MAX_ERROR_ALLOTMENT];
+                    Arrays.fill(mConfidence, 0);
                 }
             }
         }
         return output;
     }
-}
 
+    /**
+     * @return the number of bytes writeSnapshot needs for the
+     *         current state
+     */
+    public int getSnapshotSize() {
+        return SNAPSHOT_FIXED_SIZE + 8 * mElementCount;
+    }
+
+    /**
+     * Writes the complete detector state (filters, detector window,
+     * calibration accumulators, red value delay line and confidence
+     * buckets) to a buffer, so the session can be continued by
+     * readSnapshot in another process. The layout is fixed and big
+     * endian whatever the byte order of the buffer:
+     *
+     *      int     magic "ANDS", short version, byte flags
+     *              (calibrated, previous peak, previous trough,
+     *              revalidating, then 2 bits of filter re-seed frames)
+     *      double  lpf, hpf, previous lpf input, peak hold,
+     *              trough hold, calc diff, peak, trough
+     *      int     frame count, trough count, peak count, count hold,
+     *              peak frame, trough frame, signal width,
+     *              first quality frame
+     *      int     window count, then DETECTOR_BUFFER_SIZE original
+     *              and DETECTOR_BUFFER_SIZE filtered values, oldest first
+     *      int     delay line capacity and count, then count red
+     *              values, oldest first
+     *      int     MAX_ERROR_ALLOTMENT confidence buckets
+     *
+     * The snapshot takes getSnapshotSize() bytes, a little over 200
+     * plus 8 per frame of signal width. The instrumentation hook is
+     * not part of the state. Neither are the states of a conditioning
+     * filter and of a peak window other than the five sample one, so
+     * a detector with either cannot be saved or restored.
+     *
+     * @param out receives the snapshot at its position, which is
+     *            advanced past it
+     */
+    public void writeSnapshot(ByteBuffer out) {
+        checkSnapshotSupported();
+        if (out.remaining() < getSnapshotSize()) {
+            throw new IllegalArgumentException();
+        }
+        final ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        try {
+            out.putInt(SNAPSHOT_MAGIC);
+            out.putShort(SNAPSHOT_VERSION);
+            out.put((byte) ((mAlreadyExecuted ? 1 : 0)
+                    | (mPrevPeakDetected ? 2 : 0)
+                    | (mPrevTroughDetected ? 4 : 0)
+                    | (mRevalidating ? 8 : 0)
+                    | (mReseedFrames << 4)));
+            out.putDouble(mLpfOutput);
+            out.putDouble(mHpfOutput);
+            out.putDouble(mPrevLpfInput);
+            out.putDouble(mPeakHold);
+            out.putDouble(mTroughHold);
+            out.putDouble(mCalcDiff);
+            out.putDouble(mPeak);
+            out.putDouble(mTrough);
+            out.putInt(mFrameCount);
+            out.putInt(mTroughCount);
+            out.putInt(mPeakCount);
+            out.putInt(mCountHold);
+            out.putInt(mPeakFrame);
+            out.putInt(mTroughFrame);
+            out.putInt(mSignalWidth);
+            out.putInt(mQualityFirstFrame);
+            out.putInt(mWindowCount);
+            for (int i = 0; i < DETECTOR_BUFFER_SIZE; i++) {
+                out.putDouble(mOriginalData[windowIndex(i)]);
+            }
+            for (int i = 0; i < DETECTOR_BUFFER_SIZE; i++) {
+                out.putDouble(mFilteredData[windowIndex(i)]);
+            }
+            final int capacity = mElementHolder.length;
+            out.putInt(capacity);
+            out.putInt(mElementCount);
+            for (int i = 0; i < mElementCount; i++) {
+                int index = mElementStart + i;
+                out.putDouble(mElementHolder[index < capacity ? index : index - capacity]);
+            }
+            for (int i = 0; i < MAX_ERROR_ALLOTMENT; i++) {
+                out.putInt(mConfidence[i]);
+            }
+        } finally {
+            out.order(order);
+        }
+    }
+
+    /**
+     * Replaces the detector state with a snapshot written by
+     * writeSnapshot. The state is left unchanged if the snapshot
+     * is not valid; a snapshot never makes the detector allocate
+     * more than its own calibration could (MAX_SIGNAL_WIDTH values).
+     *
+     * @param in holds the snapshot at its position, which is
+     *           advanced past it
+     */
+    public void readSnapshot(ByteBuffer in) {
+        checkSnapshotSupported();
+        final ByteOrder order = in.order();
+        final int start = in.position();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            // Validate the variable part before touching any state
+            if (in.remaining() < SNAPSHOT_FIXED_SIZE
+                    || in.getInt(start) != SNAPSHOT_MAGIC
+                    || in.getShort(start + 4) != SNAPSHOT_VERSION) {
+                throw new IllegalArgumentException();
+            }
+            final int holderAt = start + SNAPSHOT_FIXED_SIZE - 4 * MAX_ERROR_ALLOTMENT - 2 * 4;
+            final int windowCount = in.getInt(holderAt - 2 * 8 * DETECTOR_BUFFER_SIZE - 4);
+            final int capacity = in.getInt(holderAt);
+            final int count = in.getInt(holderAt + 4);
+            final boolean calibrated = (in.get(start + 6) & 1) != 0;
+            final int signalWidth = in.getInt(start + 7 + 8 * 8 + 6 * 4);
+            if (signalWidth < 0 || signalWidth > MAX_SIGNAL_WIDTH
+                    || ((in.get(start + 6) >> 4) & 3) == 3) {
+                throw new IllegalArgumentException();
+            }
+            // The delay line is sized by calibration, see resetElementHolder
+            final int expectedCapacity = Math.max(calibrated ? signalWidth : mParams.getGarbageFrames() / 2, 1);
+            if (windowCount < 0 || windowCount > DETECTOR_BUFFER_SIZE
+                    || capacity != expectedCapacity || count < 0 || count > capacity
+                    || count > (in.remaining() - SNAPSHOT_FIXED_SIZE) / 8) {
+                throw new IllegalArgumentException();
+            }
+            final double[] holder = mElementHolder.length == capacity ? mElementHolder : new double[capacity];
+
+            in.position(start + 6);
+            final int flags = in.get();
+            mAlreadyExecuted    = (flags & 1) != 0;
+            mPrevPeakDetected   = (flags & 2) != 0;
+            mPrevTroughDetected = (flags & 4) != 0;
+            mRevalidating       = (flags & 8) != 0;
+            mReseedFrames       = (flags >> 4) & 3;
+            mLpfOutput          = in.getDouble();
+            mHpfOutput          = in.getDouble();
+            mPrevLpfInput       = in.getDouble();
+            mPeakHold           = in.getDouble();
+            mTroughHold         = in.getDouble();
+            mCalcDiff           = in.getDouble();
+            mPeak               = in.getDouble();
+            mTrough             = in.getDouble();
+            mFrameCount         = in.getInt();
+            mTroughCount        = in.getInt();
+            mPeakCount          = in.getInt();
+            mCountHold          = in.getInt();
+            mPeakFrame          = in.getInt();
+            mTroughFrame        = in.getInt();
+            mSignalWidth        = in.getInt();
+            mQualityFirstFrame  = in.getInt();
+            mWindowCount        = in.getInt();
+            mWindowStart        = 0;
+            for (int i = 0; i < DETECTOR_BUFFER_SIZE; i++) {
+                mOriginalData[i] = in.getDouble();
+            }
+            for (int i = 0; i < DETECTOR_BUFFER_SIZE; i++) {
+                mFilteredData[i] = in.getDouble();
+            }
+            in.position(in.position() + 8);
+            mElementHolder = holder;
+            for (int i = 0; i < count; i++) {
+                mElementHolder[i] = in.getDouble();
+            }
+            mElementStart = 0;
+            mElementCount = count;
+            for (int i = 0; i < MAX_ERROR_ALLOTMENT; i++) {
+                mConfidence[i] = in.getInt();
+            }
+            if (mPredictor != null) {
+                mPredictor.reset();
+            }
+        } finally {
+            in.order(order);
+        }
+    }
+
+    private void checkSnapshotSupported() {
+        if (mConditioningFilter != null || mPeakDetector != null) {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Arrays;
+
+/**
+ * The BiquadFilterChain class is a cascade of second order IIR
+ * sections (biquads) that can condition the red channel in place of
+ * the first order lowPassFilter / highPassFilter pair of
+ * AnemiaDetection, see AnemiaDetection.setConditioningFilter.
+ *
+ * The coefficients are designed once, when the chain is created,
+ * from the sample rate (the camera frame rate) and the cutoff
+ * frequencies: every section is an RBJ cookbook low or high pass
+ * whose Q values together make a Butterworth response of the given
+ * order. A band pass for the pulse band of a 30 fps camera:
+ *
+ *      BiquadFilterChain pulse = BiquadFilterChain.bandPass(30, 0.7, 4, 2);
+ *
+ * Sections run in transposed direct form II, which needs two state
+ * values per section and keeps rounding noise low. Processing never
+ * allocates.
+ *
+ * THEORY:
+ *      Each section computes, for input x and output y:
+ *
+ *          y  = b0 * x + z1
+ *          z1 = b1 * x - a1 * y + z2
+ *          z2 = b2 * x - a2 * y
+ *
+ *      and feeds y to the next section. A Butterworth filter of
+ *      order N is N / 2 sections with
+ *
+ *          Q(k) = 1 / (2 * cos((2k + 1) * PI / (2N))),  k = 0 ... N/2 - 1
+ *
+ * A chain holds the state of one stream. Not thread safe; use copy()
+ * to get a chain with the same coefficients for another stream.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class BiquadFilterChain {
+
+    private static final int COEFFICIENTS = 5;
+
+    private final double mSampleRate;
+    private final int mSections;
+    // b0, b1, b2, a1, a2 of each section, normalised by a0
+    private final double[] mCoefficients;
+    // z1, z2 of each section
+    private final double[] mState;
+
+    private BiquadFilterChain(double sampleRate, double[] coefficients) {
+        this.mSampleRate   = sampleRate;
+        this.mSections     = coefficients.length / COEFFICIENTS;
+        this.mCoefficients = coefficients;
+        this.mState        = new double[2 * mSections];
+    }
+
+    /**
+     * @param sampleRate samples (frames) per second
+     * @param cutoff     -3 dB frequency in Hz, below sampleRate / 2
+     * @param order      even Butterworth order (2, 4, ...)
+     */
+    public static BiquadFilterChain lowPass(double sampleRate, double cutoff, int order) {
+        return new BiquadFilterChain(sampleRate, design(sampleRate, cutoff, order, false));
+    }
+
+    /**
+     * @param sampleRate samples (frames) per second
+     * @param cutoff     -3 dB frequency in Hz, below sampleRate / 2
+     * @param order      even Butterworth order (2, 4, ...)
+     */
+    public static BiquadFilterChain highPass(double sampleRate, double cutoff, int order) {
+        return new BiquadFilterChain(sampleRate, design(sampleRate, cutoff, order, true));
+    }
+
+    /**
+     * High pass at lowCutoff followed by low pass at highCutoff,
+     * each a Butterworth of the given order.
+     *
+     * @param sampleRate samples (frames) per second
+     * @param lowCutoff  lower -3 dB frequency in Hz
+     * @param highCutoff upper -3 dB frequency in Hz, below sampleRate / 2
+     * @param order      even Butterworth order of each edge (2, 4, ...)
+     */
+    public static BiquadFilterChain bandPass(double sampleRate, double lowCutoff,
+                                             double highCutoff, int order) {
+        if (!(lowCutoff < highCutoff)) {
+            throw new IllegalArgumentException();
+        }
+        return highPass(sampleRate, lowCutoff, order).then(lowPass(sampleRate, highCutoff, order));
+    }
+
+    /**
+     * @return a new chain running the sections of this chain and then
+     *         those of next, with cleared state
+     */
+    public BiquadFilterChain then(BiquadFilterChain next) {
+        if (next == null || next.mSampleRate != mSampleRate) {
+            throw new IllegalArgumentException();
+        }
+        double[] coefficients = new double[mCoefficients.length + next.mCoefficients.length];
+        System.arraycopy(mCoefficients, 0, coefficients, 0, mCoefficients.length);
+        System.arraycopy(next.mCoefficients, 0, coefficients, mCoefficients.length, next.mCoefficients.length);
+        return new BiquadFilterChain(mSampleRate, coefficients);
+    }
+
+    /**
+     * @return a chain with the same coefficients and cleared state
+     */
+    public BiquadFilterChain copy() {
+        return new BiquadFilterChain(mSampleRate, mCoefficients);
+    }
+
+    public double getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getSectionCount() {
+        return mSections;
+    }
+
+    /**
+     * @param frequency frequency in Hz
+     * @return gain of the whole chain at that frequency (1 = 0 dB)
+     */
+    public double getMagnitude(double frequency) {
+        final double w = 2 * Math.PI * frequency / mSampleRate;
+        final double cos1 = Math.cos(w);
+        final double sin1 = Math.sin(w);
+        final double cos2 = Math.cos(2 * w);
+        final double sin2 = Math.sin(2 * w);
+        double gain = 1;
+        for (int s = 0; s < mSections; s++) {
+            final int c = s * COEFFICIENTS;
+            final double b0 = mCoefficients[c];
+            final double b1 = mCoefficients[c + 1];
+            final double b2 = mCoefficients[c + 2];
+            final double a1 = mCoefficients[c + 3];
+            final double a2 = mCoefficients[c + 4];
+            final double numRe = b0 + b1 * cos1 + b2 * cos2;
+            final double numIm = -b1 * sin1 - b2 * sin2;
+            final double denRe = 1 + a1 * cos1 + a2 * cos2;
+            final double denIm = -a1 * sin1 - a2 * sin2;
+            gain *= Math.sqrt((numRe * numRe + numIm * numIm) / (denRe * denRe + denIm * denIm));
+        }
+        return gain;
+    }
+
+    /**
+     * Clears the state, as if the input had been 0 forever.
+     */
+    public void reset() {
+        Arrays.fill(mState, 0);
+    }
+
+    /**
+     * Sets the state to the steady state for a constant input, as if
+     * the input had been that value forever. Priming the chain with
+     * the first sample avoids the long step response a cleared chain
+     * gives on a signal sitting at 200 RGB units.
+     */
+    public void reset(double input) {
+        double x = input;
+        for (int s = 0; s < mSections; s++) {
+            final int c = s * COEFFICIENTS;
+            final double b0 = mCoefficients[c];
+            final double b1 = mCoefficients[c + 1];
+            final double b2 = mCoefficients[c + 2];
+            final double a1 = mCoefficients[c + 3];
+            final double a2 = mCoefficients[c + 4];
+            final double y = x * (b0 + b1 + b2) / (1 + a1 + a2);
+            final double z2 = b2 * x - a2 * y;
+            mState[2 * s] = b1 * x - a1 * y + z2;
+            mState[2 * s + 1] = z2;
+            x = y;
+        }
+    }
+
+    /**
+     * Filters one sample.
+     *
+     * @return the filtered sample
+     */
+    public double process(double input) {
+        final double[] coefficients = mCoefficients;
+        final double[] state = mState;
+        double x = input;
+        for (int s = 0, c = 0, z = 0; s < mSections; s++, c += COEFFICIENTS, z += 2) {
+            final double y = coefficients[c] * x + state[z];
+            state[z] = coefficients[c + 1] * x - coefficients[c + 3] * y + state[z + 1];
+            state[z + 1] = coefficients[c + 2] * x - coefficients[c + 4] * y;
+            x = y;
+        }
+        return x;
+    }
+
+    /**
+     * Filters length samples of data in place, with the same result
+     * as calling process(double) on each of them. Runs one section
+     * over the whole block at a time, so its coefficients and state
+     * stay in registers.
+     */
+    public void process(double[] data, int offset, int length) {
+        if (data == null || offset < 0 || length < 0 || length > data.length - offset) {
+            throw new IllegalArgumentException();
+        }
+        final int end = offset + length;
+        for (int s = 0; s < mSections; s++) {
+            final int c = s * COEFFICIENTS;
+            final double b0 = mCoefficients[c];
+            final double b1 = mCoefficients[c + 1];
+            final double b2 = mCoefficients[c + 2];
+            final double a1 = mCoefficients[c + 3];
+            final double a2 = mCoefficients[c + 4];
+            double z1 = mState[2 * s];
+            double z2 = mState[2 * s + 1];
+            for (int i = offset; i < end; i++) {
+                final double x = data[i];
+                final double y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                data[i] = y;
+            }
+            mState[2 * s] = z1;
+            mState[2 * s + 1] = z2;
+        }
+    }
+
+    /**
+     * Butterworth low or high pass of the given order as RBJ biquads.
+     */
+    private static double[] design(double sampleRate, double cutoff, int order, boolean highPass) {
+        if (!(sampleRate > 0) || Double.isInfinite(sampleRate) || !(cutoff > 0)
+                || !(cutoff < sampleRate / 2) || order < 2 || order % 2 != 0) {
+            throw new IllegalArgumentException();
+        }
+        final int sections = order / 2;
+        final double w0 = 2 * Math.PI * cutoff / sampleRate;
+        final double cos = Math.cos(w0);
+        final double sin = Math.sin(w0);
+        double[] coefficients = new double[sections * COEFFICIENTS];
+        for (int k = 0; k < sections; k++) {
+            final double q = 1 / (2 * Math.cos((2 * k + 1) * Math.PI / (2 * order)));
+            final double alpha = sin / (2 * q);
+            final double a0 = 1 + alpha;
+            final double b1 = highPass ? -(1 + cos) : 1 - cos;
+            final int c = k * COEFFICIENTS;
+            coefficients[c]     = Math.abs(b1) / 2 / a0;
+            coefficients[c + 1] = b1 / a0;
+            coefficients[c + 2] = Math.abs(b1) / 2 / a0;
+            coefficients[c + 3] = -2 * cos / a0;
+            coefficients[c + 4] = (1 - alpha) / a0;
+        }
+        return coefficients;
+    }
+}
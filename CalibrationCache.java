@@ -0,0 +1,186 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The CalibrationCache class remembers the thresholds checkDataQuality
+ * learned for a user on a device (mCalcDiff and mSignalWidth), so the
+ * next session of that user can skip the calibration phase with
+ * AnemiaDetection.applyCalibration.
+ *
+ * The cache holds at most maxEntries calibrations and evicts the
+ * least recently used one when full. A calibration older than
+ * maxAgeMillis is stale: it is not handed out any more and is
+ * removed when found. Keys are chosen by the caller, typically a
+ * user id combined with the device model, since the values depend
+ * on both the finger and the camera.
+ *
+ * Ages are measured with System.currentTimeMillis(), which the user
+ * or network time can set back: a calibration then lives longer than
+ * maxAgeMillis by the size of the step (and a step forward makes it
+ * stale early).
+ *
+ * Thread safe.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class CalibrationCache {
+
+    private final long mMaxAgeMillis;
+    private final LinkedHashMap<String, Calibration> mEntries;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param maxEntries   most calibrations kept
+     * @param maxAgeMillis age after which a calibration is stale
+     */
+    public CalibrationCache(final int maxEntries, long maxAgeMillis) {
+        if (maxEntries < 1 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mMaxAgeMillis = maxAgeMillis;
+        this.mEntries      = new LinkedHashMap<String, Calibration>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Calibration> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Starts a detector off with the cached calibration of a key.
+     *
+     * @return true if a fresh calibration was applied, false if the
+     *         detector has to calibrate itself
+     */
+    public boolean apply(String key, AnemiaDetection detector) {
+        Calibration calibration = get(key);
+        if (calibration == null) {
+            return false;
+        }
+        detector.applyCalibration(calibration.getCalcDiff(), calibration.getSignalWidth());
+        return true;
+    }
+
+    /**
+     * Stores the calibration of a detector under a key, once it
+     * has one that was learned or confirmed in its own session.
+     *
+     * @return true if the calibration was stored
+     */
+    public boolean store(String key, AnemiaDetection detector) {
+        if (!detector.isCalibrated() || detector.isRevalidating()) {
+            return false;
+        }
+        put(key, detector.getCalcDiff(), detector.getSignalWidth());
+        return true;
+    }
+
+    /**
+     * @return the calibration stored under key, or null if there is
+     *         none or it is stale
+     */
+    public Calibration get(String key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    public void put(String key, double calcDiff, int signalWidth) {
+        put(key, calcDiff, signalWidth, System.currentTimeMillis());
+    }
+
+    public synchronized void remove(String key) {
+        mEntries.remove(key);
+    }
+
+    /**
+     * Drops every stale calibration.
+     */
+    public synchronized void removeStale() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Calibration> it = mEntries.values().iterator(); it.hasNext(); ) {
+            if (isStale(it.next(), now)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    synchronized Calibration get(String key, long nowMillis) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        Calibration calibration = mEntries.get(key);
+        if (calibration != null && isStale(calibration, nowMillis)) {
+            mEntries.remove(key);
+            calibration = null;
+        }
+        if (calibration == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return calibration;
+    }
+
+    synchronized void put(String key, double calcDiff, int signalWidth, long nowMillis) {
+        if (key == null || Double.isNaN(calcDiff) || Double.isInfinite(calcDiff)
+                || signalWidth < 0 || signalWidth > AnemiaDetection.MAX_SIGNAL_WIDTH) {
+            throw new IllegalArgumentException();
+        }
+        mEntries.put(key, new Calibration(calcDiff, signalWidth, nowMillis));
+    }
+
+    private boolean isStale(Calibration calibration, long nowMillis) {
+        return nowMillis - calibration.mStoredAt > mMaxAgeMillis;
+    }
+
+    /**
+     * Thresholds learned in one session.
+     */
+    public static final class Calibration {
+
+        private final double mCalcDiff;
+        private final int mSignalWidth;
+        private final long mStoredAt;
+
+        Calibration(double calcDiff, int signalWidth, long storedAt) {
+            this.mCalcDiff    = calcDiff;
+            this.mSignalWidth = signalWidth;
+            this.mStoredAt    = storedAt;
+        }
+
+        public double getCalcDiff() {
+            return mCalcDiff;
+        }
+
+        public int getSignalWidth() {
+            return mSignalWidth;
+        }
+
+        /**
+         * @return System.currentTimeMillis() when it was stored
+         */
+        public long getStoredAt() {
+            return mStoredAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The DetectionWorker class runs AnemiaDetection on its own thread,
+ * fed by a FrameSummaryQueue, so the camera callback only has to
+ * queue the frame averages and a slow detection step never holds up
+ * frame delivery.
+ *
+ * The worker keeps two detectors: one for checkDataQuality and one
+ * for detectPeakTrough, as the two keep separate filter state. The
+ * frame count given to both is the queue sequence number plus one,
+ * so results refer to camera frames and frames dropped by the queue
+ * show up as gaps in the count. If the queue dropped the frames the
+ * filters of the detectors are seeded from (the first frames after
+ * startFrame and the garbage frames), the filters are seeded from
+ * the first frames delivered instead.
+ *
+ * Listener callbacks run on the worker thread.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class DetectionWorker implements Runnable {
+
+    public interface Listener {
+
+        /**
+         * @param verdict the checkDataQuality result of the frame
+         */
+        void onVerdict(long timestamp, int frame, int verdict);
+
+        /**
+         * @param type  1 for a peak point, 2 for a trough point
+         * @param frame frame count of the peak or trough
+         * @param rVal  r value of the peak or trough
+         */
+        void onPeakTrough(long timestamp, int type, int frame, double rVal);
+    }
+
+    private static final int DRAIN_BATCH = 64;
+    private static final int IDLE_SPINS = 100;
+
+    private final FrameSummaryQueue mQueue;
+    private final int mConfidence;
+    private final int mStartFrame;
+    private final Listener mListener;
+    private final AnemiaDetection mQuality;
+    private final AnemiaDetection mEvents;
+    private final double[] mResult;
+    private final FrameSummaryQueue.FrameHandler mHandler;
+
+    private volatile Thread mThread;
+    private volatile long mProcessed;
+    private int mLastFrame;
+
+    /**
+     * @param queue      the queue the camera thread offers frames to
+     * @param confidence Accuracy level passed to checkDataQuality
+     *                   (1 = 10% ... 9 = 90%)
+     * @param startFrame The first frame the detectors start running on
+     * @param listener   receives the results of every frame
+     */
+    public DetectionWorker(FrameSummaryQueue queue, int confidence, int startFrame, Listener listener) {
+        if (queue == null || listener == null
+                || confidence > AnemiaDetection.DATA_SIZE - 1 || confidence < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mQueue      = queue;
+        this.mConfidence = confidence;
+        this.mStartFrame = startFrame;
+        this.mListener   = listener;
+        this.mQuality    = new AnemiaDetection(1);
+        this.mEvents     = new AnemiaDetection(1);
+        this.mResult     = new double[3];
+        this.mHandler    = new FrameSummaryQueue.FrameHandler() {
+            @Override
+            public void onFrame(long sequence, long timestamp, double rVal, double gVal, double bVal) {
+                process(sequence, timestamp, rVal, gVal, bVal);
+            }
+        };
+    }
+
+    /**
+     * Starts the worker on a new daemon thread.
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            throw new IllegalStateException();
+        }
+        Thread thread = new Thread(this, "AnemiaDetection");
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Closes the queue, waits for the worker to process the frames
+     * still queued and for its thread to end.
+     */
+    public void stop() throws InterruptedException {
+        mQueue.close();
+        Thread thread = mThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+    }
+
+    /**
+     * Processes frames until the queue is closed and empty, or the
+     * thread is interrupted.
+     */
+    @Override
+    public void run() {
+        int idle = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (mQueue.drain(mHandler, DRAIN_BATCH) > 0) {
+                idle = 0;
+            } else if (mQueue.isClosed()) {
+                // Frames offered before close may have landed after
+                // the last drain
+                if (mQueue.drain(mHandler, Integer.MAX_VALUE) == 0) {
+                    return;
+                }
+            } else if (++idle < IDLE_SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(FrameSummaryQueue.IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * @return number of frames processed so far
+     */
+    public long getProcessedCount() {
+        return mProcessed;
+    }
+
+    private void process(long sequence, long timestamp, double rVal, double gVal, double bVal) {
+        final int frame = (int) (sequence + 1);
+        final int seedFrame = mStartFrame + mEvents.getParameters().getGarbageFrames() + 1;
+        if (frame > seedFrame && mLastFrame <= seedFrame && mLastFrame != frame - 1) {
+            // The frames the filters are seeded from were dropped
+            mQuality.reseedFilters();
+            mEvents.reseedFilters();
+        }
+        mLastFrame = frame;
+        mQuality.updateFrameCount(frame);
+        int verdict = mQuality.checkDataQuality(rVal, gVal, bVal, mConfidence, mStartFrame);
+        mEvents.updateFrameCount(frame);
+        int type = mEvents.detectPeakTrough(rVal, mStartFrame, mResult);
+        mProcessed++;
+        mListener.onVerdict(timestamp, frame, verdict);
+        if (type != 0) {
+            mListener.onPeakTrough(timestamp, type, (int) mResult[1], mResult[2]);
+        }
+    }
+}
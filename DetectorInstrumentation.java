@@ -0,0 +1,67 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The DetectorInstrumentation interface is told what an
+ * AnemiaDetection object does, for metrics and tracing. Attach an
+ * implementation with AnemiaDetection.setInstrumentation. Calls are
+ * made on the thread that calls the detector, in the middle of the
+ * frame, so implementations should be quick and must not allocate
+ * if the detector is to stay allocation free. Arrays passed in are
+ * owned by the detector and are only valid during the call.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public interface DetectorInstrumentation {
+
+    /**
+     * A detectPeakTrough call has finished, including the calls
+     * checkDataQuality makes while it calibrates.
+     *
+     * @param type  1 for a peak point, 2 for a trough point, 0 otherwise
+     * @param nanos time spent in the call
+     */
+    void onDetectPeakTrough(int type, long nanos);
+
+    /**
+     * A detectPeakTroughs call has finished.
+     *
+     * @param events the event list of the call; the points it found
+     *               start at index from
+     * @param frames number of frames processed
+     * @param nanos  time spent in the call
+     */
+    void onDetectPeakTroughs(PeakTroughEvents events, int from, int frames, long nanos);
+
+    /**
+     * A checkDataQuality or checkDataQuality2 call has finished.
+     *
+     * @param verdict the result of the call (0 - 4)
+     * @param nanos   time spent in the call
+     */
+    void onCheckDataQuality(int verdict, long nanos);
+
+    /**
+     * checkDataQuality has seen enough peaks and troughs and fixed
+     * its thresholds.
+     *
+     * @param frames      frames from the first checkDataQuality call
+     *                    with this hook attached to calibration
+     * @param calcDiff    largest red value change expected from the pulse
+     * @param signalWidth frames between a peak and its trough
+     */
+    void onCalibrated(int frames, double calcDiff, int signalWidth);
+
+    /**
+     * checkDataQuality or checkDataQuality2 is about to turn
+     * DATA_SIZE frames of confidence buckets into a verdict.
+     *
+     * @param buckets number of frames sorted into each of the four
+     *                buckets (on camera, not covering, shifted, off)
+     */
+    void onConfidenceBuckets(int[] buckets);
+}
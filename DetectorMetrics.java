@@ -0,0 +1,306 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The DetectorMetrics class collects counters and histograms about
+ * the detectors it is attached to:
+ *
+ *      peaks and troughs found
+ *      checkDataQuality and checkDataQuality2 results, per code (0 - 4)
+ *      frames sorted into each confidence bucket
+ *      nanoseconds per detectPeakTrough, detectPeakTroughs and
+ *      checkDataQuality (or checkDataQuality2) call
+ *      calibration duration in frames, mCalcDiff and mSignalWidth
+ *
+ * Recording never allocates. All values are kept in atomic arrays,
+ * so one instance can be shared by detectors running on different
+ * threads and read at any time; a reader may see a frame half
+ * recorded.
+ *
+ * The histograms are log-linear: values below 16 get a bucket each,
+ * every power of two above that is split into 16 linear buckets, so
+ * any value is placed within 1/16 (6.25%) of its size.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class DetectorMetrics implements DetectorInstrumentation {
+
+    /**
+     * mCalcDiff is recorded in hundredths of an RGB unit.
+     */
+    public static final double CALC_DIFF_SCALE = 100;
+
+    private static final int PEAKS = 0;
+    private static final int TROUGHS = 1;
+    private static final int CALIBRATIONS = 2;
+    private static final int VERDICTS = 3;
+    private static final int BUCKETS = VERDICTS + 5;
+    private static final int BUCKET_KINDS = AnemiaDetection.MAX_ERROR_ALLOTMENT;
+    private static final int COUNTERS = BUCKETS + BUCKET_KINDS;
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTERS);
+    private final Histogram mDetectNanos = new Histogram();
+    private final Histogram mBatchNanos = new Histogram();
+    private final Histogram mQualityNanos = new Histogram();
+    private final Histogram mCalibrationFrames = new Histogram();
+    private final Histogram mCalcDiff = new Histogram();
+    private final Histogram mSignalWidth = new Histogram();
+
+    @Override
+    public void onDetectPeakTrough(int type, long nanos) {
+        if (type == AnemiaDetection.PEAK) {
+            mCounters.incrementAndGet(PEAKS);
+        } else if (type == AnemiaDetection.TROUGH) {
+            mCounters.incrementAndGet(TROUGHS);
+        }
+        mDetectNanos.record(nanos);
+    }
+
+    @Override
+    public void onDetectPeakTroughs(PeakTroughEvents events, int from, int frames, long nanos) {
+        byte[] types = events.getTypes();
+        int peaks = 0;
+        for (int i = from; i < events.size(); i++) {
+            if (types[i] == AnemiaDetection.PEAK) {
+                peaks++;
+            }
+        }
+        mCounters.addAndGet(PEAKS, peaks);
+        mCounters.addAndGet(TROUGHS, events.size() - from - peaks);
+        mBatchNanos.record(nanos);
+    }
+
+    @Override
+    public void onCheckDataQuality(int verdict, long nanos) {
+        mCounters.incrementAndGet(VERDICTS + verdict);
+        mQualityNanos.record(nanos);
+    }
+
+    @Override
+    public void onCalibrated(int frames, double calcDiff, int signalWidth) {
+        mCounters.incrementAndGet(CALIBRATIONS);
+        mCalibrationFrames.record(frames);
+        mCalcDiff.record(Math.round(calcDiff * CALC_DIFF_SCALE));
+        mSignalWidth.record(signalWidth);
+    }
+
+    @Override
+    public void onConfidenceBuckets(int[] buckets) {
+        for (int i = 0; i < BUCKET_KINDS; i++) {
+            mCounters.addAndGet(BUCKETS + i, buckets[i]);
+        }
+    }
+
+    public long getPeakCount() {
+        return mCounters.get(PEAKS);
+    }
+
+    public long getTroughCount() {
+        return mCounters.get(TROUGHS);
+    }
+
+    public long getCalibrationCount() {
+        return mCounters.get(CALIBRATIONS);
+    }
+
+    /**
+     * @param verdict a checkDataQuality result (0 - 4)
+     * @return how many calls returned it
+     */
+    public long getVerdictCount(int verdict) {
+        if (verdict < 0 || verdict > 4) {
+            throw new IllegalArgumentException();
+        }
+        return mCounters.get(VERDICTS + verdict);
+    }
+
+    /**
+     * @param bucket confidence bucket (0 on camera, 1 not covering,
+     *               2 shifted, 3 off camera)
+     * @return number of frames sorted into it
+     */
+    public long getBucketCount(int bucket) {
+        if (bucket < 0 || bucket >= BUCKET_KINDS) {
+            throw new IllegalArgumentException();
+        }
+        return mCounters.get(BUCKETS + bucket);
+    }
+
+    public Histogram getDetectNanos() {
+        return mDetectNanos;
+    }
+
+    public Histogram getBatchNanos() {
+        return mBatchNanos;
+    }
+
+    public Histogram getQualityNanos() {
+        return mQualityNanos;
+    }
+
+    public Histogram getCalibrationFrames() {
+        return mCalibrationFrames;
+    }
+
+    /**
+     * @return mCalcDiff of every calibration, in 1 / CALC_DIFF_SCALE units
+     */
+    public Histogram getCalcDiff() {
+        return mCalcDiff;
+    }
+
+    public Histogram getSignalWidth() {
+        return mSignalWidth;
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTERS; i++) {
+            mCounters.set(i, 0);
+        }
+        mDetectNanos.reset();
+        mBatchNanos.reset();
+        mQualityNanos.reset();
+        mCalibrationFrames.reset();
+        mCalcDiff.reset();
+        mSignalWidth.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "peaks %d, troughs %d, calibrations %d%n",
+                getPeakCount(), getTroughCount(), getCalibrationCount()));
+        out.append(String.format(Locale.US, "verdicts 0:%d 1:%d 2:%d 3:%d 4:%d%n",
+                getVerdictCount(0), getVerdictCount(1), getVerdictCount(2),
+                getVerdictCount(3), getVerdictCount(4)));
+        out.append(String.format(Locale.US, "buckets on:%d partial:%d shifted:%d off:%d%n",
+                getBucketCount(0), getBucketCount(1), getBucketCount(2), getBucketCount(3)));
+        out.append("detectPeakTrough ns    ").append(mDetectNanos).append('\n');
+        out.append("detectPeakTroughs ns   ").append(mBatchNanos).append('\n');
+        out.append("checkDataQuality ns    ").append(mQualityNanos).append('\n');
+        out.append("calibration frames     ").append(mCalibrationFrames).append('\n');
+        out.append("calcDiff x100          ").append(mCalcDiff).append('\n');
+        out.append("signal width           ").append(mSignalWidth).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * Log-linear histogram of non negative long values.
+     */
+    public static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        // Bucket counts, then count, sum and max
+        private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT + 3);
+
+        Histogram() {
+        }
+
+        /**
+         * Adds a value; negative values are recorded as 0.
+         */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            mCounts.incrementAndGet(bucketOf(value));
+            mCounts.incrementAndGet(BUCKET_COUNT);
+            mCounts.addAndGet(BUCKET_COUNT + 1, value);
+            long max;
+            while (value > (max = mCounts.get(BUCKET_COUNT + 2))) {
+                if (mCounts.compareAndSet(BUCKET_COUNT + 2, max, value)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return mCounts.get(BUCKET_COUNT);
+        }
+
+        public long getMax() {
+            return mCounts.get(BUCKET_COUNT + 2);
+        }
+
+        /**
+         * @return the average value, 0 when empty
+         */
+        public double getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) mCounts.get(BUCKET_COUNT + 1) / count;
+        }
+
+        /**
+         * @param percentile 0 - 100
+         * @return the highest value of the bucket holding the given
+         *         percentile, never more than getMax(); 0 when empty
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException();
+            }
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mCounts.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(bucket), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * @return number of values recorded in bucket i
+         */
+        public long getBucketCount(int bucket) {
+            return mCounts.get(bucket);
+        }
+
+        public void reset() {
+            for (int i = 0; i < mCounts.length(); i++) {
+                mCounts.set(i, 0);
+            }
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        static long highestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count %d, mean %.1f, p50 %d, p99 %d, max %d",
+                    getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+        }
+    }
+}
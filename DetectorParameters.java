@@ -0,0 +1,282 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Locale;
+
+/**
+ * The DetectorParameters class holds the tuning of an AnemiaDetection
+ * or MultiSessionDetector: filter smoothing, calibration and
+ * classification thresholds. It is immutable and validated when it
+ * is created, so the detectors no longer check the smoothing values
+ * per sample, and it precomputes the high pass gain.
+ *
+ * The low pass filter still divides by its smoothing: multiplying by
+ * 1 / smoothing rounds differently, and the filters are meant to give
+ * bit identical outputs, points and verdicts to the detectors from
+ * before DetectorParameters existed. getLowPassGain is for filters
+ * that cannot divide, such as FixedPointDetector.
+ *
+ * DEFAULT holds the values the detectors have always used. Other
+ * tunings are derived from it, one value at a time:
+ *
+ *      DetectorParameters tuned = DetectorParameters.DEFAULT
+ *              .withLowPassSmoothing(4.5)
+ *              .withMaxLightPartialCover(60);
+ *
+ * The number of confidence buckets (MAX_ERROR_ALLOTMENT) is fixed.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class DetectorParameters {
+
+    public static final DetectorParameters DEFAULT = new DetectorParameters(
+            AnemiaDetection.LOW_PASS_SMOOTHING,
+            AnemiaDetection.HIGH_PASS_SMOOTHING,
+            AnemiaDetection.ERROR_TOLERANCE,
+            AnemiaDetection.MINIMUM_DIFFERENCE,
+            AnemiaDetection.CALC_DIFF_HARD,
+            AnemiaDetection.GARBAGE_FRAMES,
+            AnemiaDetection.DATA_SIZE,
+            AnemiaDetection.AVERAGE,
+            AnemiaDetection.MAX_LIGHT_COVER,
+            AnemiaDetection.MAX_LIGHT_PARTIAL_COVER,
+            AnemiaDetection.DETECTOR_BUFFER_SIZE / 2);
+
+    private final double mLowPassSmoothing;
+    private final double mHighPassSmoothing;
+    private final double mErrorTolerance;
+    private final double mMinimumDifference;
+    private final double mCalcDiffHard;
+    private final int mGarbageFrames;
+    private final int mDataSize;
+    private final int mCalibrationPeaks;
+    private final double mMaxLightCover;
+    private final double mMaxLightPartialCover;
+    private final int mPeakHalfWidth;
+
+    // Precomputed filter gains
+    private final double mLowPassGain;
+    private final double mHighPassGain;
+
+    private DetectorParameters(double lowPassSmoothing, double highPassSmoothing,
+                               double errorTolerance, double minimumDifference, double calcDiffHard,
+                               int garbageFrames, int dataSize, int calibrationPeaks,
+                               double maxLightCover, double maxLightPartialCover, int peakHalfWidth) {
+        if (!(lowPassSmoothing > 1) || !(highPassSmoothing > 1)
+                || Double.isInfinite(lowPassSmoothing) || Double.isInfinite(highPassSmoothing)
+                || !isFinite(errorTolerance) || !isFinite(minimumDifference) || minimumDifference < 0
+                || !isFinite(calcDiffHard) || garbageFrames < 0 || dataSize < 1 || calibrationPeaks < 1
+                || !isFinite(maxLightCover) || !isFinite(maxLightPartialCover) || peakHalfWidth < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.mLowPassSmoothing     = lowPassSmoothing;
+        this.mHighPassSmoothing    = highPassSmoothing;
+        this.mErrorTolerance       = errorTolerance;
+        this.mMinimumDifference    = minimumDifference;
+        this.mCalcDiffHard         = calcDiffHard;
+        this.mGarbageFrames        = garbageFrames;
+        this.mDataSize             = dataSize;
+        this.mCalibrationPeaks     = calibrationPeaks;
+        this.mMaxLightCover        = maxLightCover;
+        this.mMaxLightPartialCover = maxLightPartialCover;
+        this.mPeakHalfWidth        = peakHalfWidth;
+        this.mLowPassGain          = 1 / lowPassSmoothing;
+        this.mHighPassGain         = 1 - (1 / highPassSmoothing);
+    }
+
+    /**
+     * @param smoothing low pass filter aggressiveness 'a' (> 1)
+     */
+    public DetectorParameters withLowPassSmoothing(double smoothing) {
+        return new DetectorParameters(smoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param smoothing high pass filter aggressiveness (> 1)
+     */
+    public DetectorParameters withHighPassSmoothing(double smoothing) {
+        return new DetectorParameters(mLowPassSmoothing, smoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param tolerance added to the calibrated calcDiff and signal width
+     */
+    public DetectorParameters withErrorTolerance(double tolerance) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, tolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param difference smallest red value change counted as a pulse
+     */
+    public DetectorParameters withMinimumDifference(double difference) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                difference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param calcDiff fixed calcDiff used by checkDataQuality2
+     */
+    public DetectorParameters withCalcDiffHard(double calcDiff) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, calcDiff, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param frames noisy frames skipped at the start of the stream
+     */
+    public DetectorParameters withGarbageFrames(int frames) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, frames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param frames frames per checkDataQuality verdict; confidence
+     *               levels run from 0 to frames - 1
+     */
+    public DetectorParameters withDataSize(int frames) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, frames, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param peaks peaks and troughs averaged by the calibration
+     */
+    public DetectorParameters withCalibrationPeaks(int peaks) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, peaks,
+                mMaxLightCover, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param light green and blue average below which the finger
+     *              covers the lens
+     */
+    public DetectorParameters withMaxLightCover(double light) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                light, mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    /**
+     * @param light green or blue average below which the finger
+     *              partly covers the lens
+     */
+    public DetectorParameters withMaxLightPartialCover(double light) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, light, mPeakHalfWidth);
+    }
+
+    /**
+     * @param halfWidth strictly monotone samples required on each side
+     *                  of a peak or trough; 2 is the five sample window,
+     *                  wider windows suit higher frame rates
+     */
+    public DetectorParameters withPeakHalfWidth(int halfWidth) {
+        return new DetectorParameters(mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance,
+                mMinimumDifference, mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks,
+                mMaxLightCover, mMaxLightPartialCover, halfWidth);
+    }
+
+    public double getLowPassSmoothing() {
+        return mLowPassSmoothing;
+    }
+
+    public double getHighPassSmoothing() {
+        return mHighPassSmoothing;
+    }
+
+    public double getErrorTolerance() {
+        return mErrorTolerance;
+    }
+
+    public double getMinimumDifference() {
+        return mMinimumDifference;
+    }
+
+    public double getCalcDiffHard() {
+        return mCalcDiffHard;
+    }
+
+    public int getGarbageFrames() {
+        return mGarbageFrames;
+    }
+
+    public int getDataSize() {
+        return mDataSize;
+    }
+
+    public int getCalibrationPeaks() {
+        return mCalibrationPeaks;
+    }
+
+    public double getMaxLightCover() {
+        return mMaxLightCover;
+    }
+
+    public double getMaxLightPartialCover() {
+        return mMaxLightPartialCover;
+    }
+
+    public int getPeakHalfWidth() {
+        return mPeakHalfWidth;
+    }
+
+    /**
+     * @return true for the five sample window (DETECTOR_BUFFER_SIZE)
+     */
+    boolean hasDefaultPeakWindow() {
+        return 2 * mPeakHalfWidth + 1 == AnemiaDetection.DETECTOR_BUFFER_SIZE;
+    }
+
+    /**
+     * @return 1 / low pass smoothing, the low pass filter gain; the
+     *         double detectors divide by getLowPassSmoothing instead
+     */
+    public double getLowPassGain() {
+        return mLowPassGain;
+    }
+
+    /**
+     * @return 1 - 1 / high pass smoothing, the high pass filter gain
+     */
+    public double getHighPassGain() {
+        return mHighPassGain;
+    }
+
+    /**
+     * @return true if confidence is a valid checkDataQuality
+     *         accuracy level for these parameters
+     */
+    boolean isValidConfidence(int confidence) {
+        return confidence >= 0 && confidence <= mDataSize - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DetectorParameters[lowPass=%s, highPass=%s, errorTolerance=%s, "
+                + "minimumDifference=%s, calcDiffHard=%s, garbageFrames=%d, dataSize=%d, "
+                + "calibrationPeaks=%d, maxLightCover=%s, maxLightPartialCover=%s, peakHalfWidth=%d]",
+                mLowPassSmoothing, mHighPassSmoothing, mErrorTolerance, mMinimumDifference,
+                mCalcDiffHard, mGarbageFrames, mDataSize, mCalibrationPeaks, mMaxLightCover,
+                mMaxLightPartialCover, mPeakHalfWidth);
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
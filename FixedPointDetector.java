@@ -0,0 +1,284 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The FixedPointDetector class is an integer only version of the
+ * AnemiaDetection.detectPeakTrough signal path (lowPassFilter,
+ * highPassFilter and the peak / trough window) for devices where
+ * double math costs battery. Values are fixed point numbers with
+ * fractionBits fraction bits, Q16.16 by default: a red average of
+ * 212.25 is held as 212.25 * 65536 = 13910016.
+ *
+ * The red value of a frame is taken either as a fixed point average
+ * or directly as the integer red sum and pixel count of the frame
+ * (see FrameReducer.getRedSum), so no double is needed anywhere
+ * between the camera and the detector. The filter gains come from
+ * DetectorParameters and are rounded to the fixed point format once,
+ * when the detector is created.
+ *
+ * ERROR BOUND:
+ *      With q = 2^-fractionBits, g the low pass gain, gq its fixed
+ *      point value, b the high pass gain and bq its fixed point
+ *      value, and a red signal that moves at most "swing" RGB units
+ *      away from its low pass value (which also bounds the high pass
+ *      output), every multiplication rounds to nearest and the input
+ *      is rounded to q, so after any number of frames
+ *
+ *          |lpf - lpf(double)| <= EL = (|gq - g| * swing + (gq + 1) * q / 2) / gq
+ *          |hpf - hpf(double)| <= EH = (2 * bq * EL + |bq - b| * swing / b + q / 2) / (1 - bq)
+ *
+ *      For DetectorParameters.DEFAULT in Q16.16 and a swing of 10
+ *      RGB units that is EL = 3.0e-4 and EH = 6.2e-4 RGB units, far
+ *      below the 8 bit resolution of the camera. getFilterErrorBound
+ *      computes EH for other formats and tunings.
+ *
+ *      The window compares neighbouring filtered values, so a point
+ *      can only come out differently from AnemiaDetection when two
+ *      of the five values are less than 2 * EH apart, i.e. on a flat
+ *      top or bottom of the filtered wave.
+ *
+ * COST:
+ *      On a desktop JIT the fixed point path is SLOWER than the double
+ *      one: FixedPointVerifier measured 66.7 ns against 46.8 ns per
+ *      frame on OpenJDK. It only pays off where double math is
+ *      costly (soft float or power limited cores), which has not
+ *      been measured. Keep detectPeakTrough where it is not.
+ *
+ * The checkDataQuality path is not part of this class.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class FixedPointDetector {
+
+    public static final int DEFAULT_FRACTION_BITS = 16;
+    // 255 << 22 and the high pass input still fit an int
+    public static final int MAX_FRACTION_BITS = 22;
+
+    private static final int MAX_CHANNEL = 255;
+    private static final int DETECTOR_BUFFER_SIZE = AnemiaDetection.DETECTOR_BUFFER_SIZE;
+
+    private final int mFractionBits;
+    private final long mHalf;
+    private final int mMaxValue;
+    private final int mLowPassGain;
+    private final int mHighPassGain;
+    private final int mGarbageFrames;
+    private final DetectorParameters mParams;
+
+    private int mFrameCount;
+    private int mLpfOutput;
+    private int mHpfOutput;
+    private int mPrevLpfInput;
+    private int mWindowStart;
+    private int mWindowCount;
+    private final int[] mFilteredData;
+    private final int[] mOriginalData;
+
+
+    public FixedPointDetector(int frameCount) {
+        this(frameCount, DetectorParameters.DEFAULT, DEFAULT_FRACTION_BITS);
+    }
+
+    /**
+     * @param frameCount   frame count of the first frame
+     * @param params       tuning of the detector; only the filter
+     *                     gains and garbage frames are used, and only
+     *                     the five sample peak window is supported
+     * @param fractionBits fraction bits of the fixed point values
+     *                     (1 - MAX_FRACTION_BITS)
+     */
+    public FixedPointDetector(int frameCount, DetectorParameters params, int fractionBits) {
+        if (params == null || !params.hasDefaultPeakWindow()
+                || fractionBits < 1 || fractionBits > MAX_FRACTION_BITS) {
+            throw new IllegalArgumentException();
+        }
+        this.mFrameCount    = frameCount;
+        this.mFractionBits  = fractionBits;
+        this.mHalf          = 1L << (fractionBits - 1);
+        this.mMaxValue      = MAX_CHANNEL << fractionBits;
+        this.mLowPassGain   = toFixed(params.getLowPassGain());
+        this.mHighPassGain  = toFixed(params.getHighPassGain());
+        this.mGarbageFrames = params.getGarbageFrames();
+        this.mParams        = params;
+        this.mFilteredData  = new int[DETECTOR_BUFFER_SIZE];
+        this.mOriginalData  = new int[DETECTOR_BUFFER_SIZE];
+    }
+
+    public void updateFrameCount(int frameCount) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mFrameCount = frameCount;
+    }
+
+    public int getFractionBits() {
+        return mFractionBits;
+    }
+
+    /**
+     * @return value rounded to the nearest fixed point number
+     */
+    public int toFixed(double value) {
+        return (int) Math.round(value * (1 << mFractionBits));
+    }
+
+    public double toDouble(int value) {
+        return value / (double) (1 << mFractionBits);
+    }
+
+    /**
+     * Fixed point average of a channel sum, rounded to nearest.
+     *
+     * @param sum        sum of the 0 - 255 channel values of the frame
+     * @param pixelCount number of pixels summed
+     */
+    public int average(long sum, int pixelCount) {
+        if (pixelCount < 1 || sum < 0 || sum > (long) MAX_CHANNEL * pixelCount) {
+            throw new IllegalArgumentException();
+        }
+        return (int) (((sum << mFractionBits) + (pixelCount >> 1)) / pixelCount);
+    }
+
+    /**
+     * detectPeakTrough on the red sum of a frame.
+     *
+     * @param redSum     sum of the red values of the frame
+     * @param pixelCount number of pixels summed
+     * @param startFrame The first frame that the detector will start
+     *                   running on
+     * @param result     receives type, frame count and fixed point
+     *                   red value, see detectPeakTrough(int, int, int[])
+     *
+     * @return 1 for a peak point, 2 for a trough point, 0 otherwise
+     */
+    public int detectPeakTrough(long redSum, int pixelCount, int startFrame, int[] result) {
+        return detectPeakTrough(average(redSum, pixelCount), startFrame, result);
+    }
+
+    /**
+     * Same as AnemiaDetection.detectPeakTrough(double, int, double[])
+     * on a fixed point red average.
+     *
+     * @param rAvg       fixed point average red value (0 - 255)
+     * @param startFrame The first frame that the detector will start
+     *                   running on
+     * @param result     An array of at least three elements:
+     *                   int[0] 0, 1 (peak) or 2 (trough)
+     *                   int[1] the frame count of the point
+     *                   int[2] its fixed point red value
+     *                   every index is reset to 0 when the frame is
+     *                   NOT a peak NOR trough
+     *
+     * @return 1 for a peak point, 2 for a trough point, 0 otherwise
+     */
+    public int detectPeakTrough(int rAvg, int startFrame, int[] result) {
+        if (result == null || result.length < 3 || rAvg < 0 || rAvg > mMaxValue) {
+            throw new IllegalArgumentException();
+        }
+        result[0] = 0;
+        result[1] = 0;
+        result[2] = 0;
+        if (mFrameCount <= mGarbageFrames + startFrame) {
+            return 0;
+        }
+        int type = 0;
+        if (mFrameCount == mGarbageFrames + startFrame + 1) {
+            mLpfOutput = rAvg;
+        } else {
+            mLpfOutput += multiply(rAvg - mLpfOutput, mLowPassGain);
+            if (mFrameCount == mGarbageFrames + startFrame + 2) {
+                mHpfOutput = 0;
+                mPrevLpfInput = mLpfOutput;
+            } else {
+                mHpfOutput = multiply((long) mHpfOutput + mLpfOutput - mPrevLpfInput, mHighPassGain);
+                mPrevLpfInput = mLpfOutput;
+                if (mFrameCount > mGarbageFrames + DETECTOR_BUFFER_SIZE + startFrame + 2 &&
+                        mWindowCount == DETECTOR_BUFFER_SIZE) {
+                    final int f0 = mFilteredData[windowIndex(0)];
+                    final int f1 = mFilteredData[windowIndex(1)];
+                    final int f2 = mFilteredData[windowIndex(2)];
+                    final int f3 = mFilteredData[windowIndex(3)];
+                    final int f4 = mFilteredData[windowIndex(4)];
+                    if (f2 > f1 && f2 > f3 && f1 > f0 && f3 > f4) {
+                        type = AnemiaDetection.PEAK;
+                    } else if (f2 < f1 && f2 < f3 && f1 < f0 && f3 < f4) {
+                        type = AnemiaDetection.TROUGH;
+                    }
+                    if (type != 0) {
+                        result[0] = type;
+                        result[1] = mFrameCount - AnemiaDetection.MAPPING;
+                        result[2] = mOriginalData[windowIndex(2)];
+                    }
+                }
+                pushWindow(rAvg, mHpfOutput);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * @return fixed point output of the low pass filter
+     */
+    public int getLpfOutput() {
+        return mLpfOutput;
+    }
+
+    /**
+     * @return fixed point output of the high pass filter, the value
+     *         the peak / trough window works on
+     */
+    public int getHpfOutput() {
+        return mHpfOutput;
+    }
+
+    /**
+     * Upper bound EH (see ERROR BOUND above) of the difference
+     * between getHpfOutput and the high pass output of
+     * AnemiaDetection, in RGB units.
+     *
+     * @param swing largest distance of the red value from its low
+     *              pass output, and of the high pass output from 0,
+     *              in RGB units
+     */
+    public double getFilterErrorBound(double swing) {
+        if (!(swing >= 0)) {
+            throw new IllegalArgumentException();
+        }
+        final double q = 1.0 / (1 << mFractionBits);
+        final double g = mParams.getLowPassGain();
+        final double gq = toDouble(mLowPassGain);
+        final double b = mParams.getHighPassGain();
+        final double bq = toDouble(mHighPassGain);
+        final double lowPass = (Math.abs(gq - g) * swing + (gq + 1) * q / 2) / gq;
+        return (2 * bq * lowPass + Math.abs(bq - b) * swing / b + q / 2) / (1 - bq);
+    }
+
+    /**
+     * Fixed point product, rounded to nearest.
+     */
+    private int multiply(long value, int gain) {
+        return (int) ((value * gain + mHalf) >> mFractionBits);
+    }
+
+    private int windowIndex(int position) {
+        int index = mWindowStart + position;
+        return index < DETECTOR_BUFFER_SIZE ? index : index - DETECTOR_BUFFER_SIZE;
+    }
+
+    private void pushWindow(int original, int filtered) {
+        if (mWindowCount < DETECTOR_BUFFER_SIZE) {
+            int index = windowIndex(mWindowCount);
+            mOriginalData[index] = original;
+            mFilteredData[index] = filtered;
+            mWindowCount++;
+        } else {
+            mOriginalData[mWindowStart] = original;
+            mFilteredData[mWindowStart] = filtered;
+            mWindowStart = windowIndex(1);
+        }
+    }
+}
@@ -0,0 +1,685 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The FrameReducer class turns a raw camera frame into the average
+ * red, green and blue values (0 - 255 RGB format) that
+ * AnemiaDetection.checkDataQuality expects. The frame is read
+ * straight from the camera's ByteBuffer in a single pass; YUV
+ * pixels are converted to RGB one at a time and added to running
+ * sums, so no intermediate RGB image is ever created.
+ *
+ * Supported layouts:
+ *      RGBA_8888      - 4 bytes per pixel, R G B A
+ *      NV21           - full Y plane followed by interleaved V/U
+ *      YUV_420_888    - separate Y, U and V planes with row and
+ *                       pixel strides (android.media.Image planes)
+ *
+ * YUV is converted with the same BT.601 integer approximation used
+ * by the Android YUV decoding helpers (video range Y, clamped).
+ *
+ * Besides the averages, the number of saturated pixels (at least one
+ * of R, G or B at 255) is counted, which tells whether the flash is
+ * overdriving the sensor.
+ *
+ * To save CPU the reduction can be limited to a region of interest
+ * and/or to every n-th pixel of every n-th row (setSampleStep). A
+ * sampled mean is only an estimate of the region mean, so each
+ * channel also reports an error estimate: the sample variance over
+ * the number of sampled pixels, i.e. the squared standard error of
+ * the mean. With a sample step of 1 every pixel of the region is
+ * used, the mean is exact and the error estimate is 0.
+ *
+ * A FrameReducer keeps the averages of the last reduced frame and
+ * can be reused for every frame. Not thread safe.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class FrameReducer {
+
+    // Layout of the partial sums array
+    static final int RED_SUM = 0;
+    static final int GREEN_SUM = 1;
+    static final int BLUE_SUM = 2;
+    static final int PIXEL_COUNT = 3;
+    static final int SATURATED_COUNT = 4;
+    static final int RED_SQUARES = 5;
+    static final int GREEN_SQUARES = 6;
+    static final int BLUE_SQUARES = 7;
+    static final int SUM_SLOTS = 8;
+
+    private static final int KIND_RGBA = 0;
+    private static final int KIND_YUV = 1;
+
+    private static final int RGBA_PIXEL_STRIDE = 4;
+    private static final int YUV_MAX = 262143;
+
+    // Packed RGBA reduction: two pixels per long, 16 bit lanes
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long COLOR_HIGH_BITS = 0x0080808000808080L;
+    private static final long PIXEL_FLAGS = 0x0000008000000080L;
+    private static final int LANE_FLUSH_INTERVAL = 256; // 256 * 255 < 2^16
+
+    private final long[] mSums;
+    private boolean mHasRegion;
+    private int mRegionLeft;
+    private int mRegionTop;
+    private int mRegionRight;
+    private int mRegionBottom;
+    private int mSampleStep;
+    private double mRedAverage;
+    private double mGreenAverage;
+    private double mBlueAverage;
+    private double mRedMeanError;
+    private double mGreenMeanError;
+    private double mBlueMeanError;
+    private int mPixelCount;
+    private int mSaturatedCount;
+    private long mRedSum;
+
+    // Region of the frame being reduced, resolved per frame
+    int mLeft;
+    int mTop;
+    int mRight;
+    int mBottom;
+
+    // Frame being reduced, only set during a reduce call
+    private int mKind;
+    private ByteBuffer mPlane;
+    private ByteBuffer mUPlane;
+    private ByteBuffer mVPlane;
+    private int mRowStride;
+    private int mUOffset;
+    private int mVOffset;
+    private int mUvRowStride;
+    private int mUvPixelStride;
+
+    private RgbaReductionKernel mRgbaKernel;
+    private ExecutorService mExecutor;
+    private List<StripTask> mStripTasks;
+
+    public FrameReducer() {
+        this.mSums       = new long[SUM_SLOTS];
+        this.mHasRegion  = false;
+        this.mSampleStep = 1;
+    }
+
+    /**
+     * Limits the reduction to a rectangle of the frame.
+     *
+     * @param left   first column of the region
+     * @param top    first row of the region
+     * @param right  column just past the region
+     * @param bottom row just past the region
+     */
+    public void setRegionOfInterest(int left, int top, int right, int bottom) {
+        if (left < 0 || top < 0 || right <= left || bottom <= top) {
+            throw new IllegalArgumentException();
+        }
+        mHasRegion    = true;
+        mRegionLeft   = left;
+        mRegionTop    = top;
+        mRegionRight  = right;
+        mRegionBottom = bottom;
+    }
+
+    /**
+     * Goes back to reducing the whole frame.
+     */
+    public void clearRegionOfInterest() {
+        mHasRegion = false;
+    }
+
+    /**
+     * Samples only every step-th pixel of every step-th row of the
+     * region, starting at its top left corner. 1 uses every pixel.
+     */
+    public void setSampleStep(int step) {
+        if (step < 1) {
+            throw new IllegalArgumentException();
+        }
+        mSampleStep = step;
+    }
+
+    public int getSampleStep() {
+        return mSampleStep;
+    }
+
+    /**
+     * Reduces an RGBA_8888 frame.
+     *
+     * @param frame     buffer holding the frame, read with absolute gets
+     * @param width     frame width in pixels
+     * @param height    frame height in pixels
+     * @param rowStride distance in bytes between the starts of two rows
+     */
+    public void reduceRgba(ByteBuffer frame, int width, int height, int rowStride) {
+        checkFrame(width, height);
+        if (rowStride < width * RGBA_PIXEL_STRIDE
+                || (long) rowStride * (height - 1) + (long) width * RGBA_PIXEL_STRIDE > frame.limit()) {
+            throw new IllegalArgumentException();
+        }
+        resolveRegion(width, height);
+        mKind = KIND_RGBA;
+        mPlane = frame;
+        mRowStride = rowStride;
+        reduce();
+    }
+
+    /**
+     * Reduces an NV21 frame (the default Camera preview format).
+     *
+     * @param frame  buffer holding width * height luma bytes followed
+     *               by width * height / 2 interleaved V/U bytes
+     * @param width  frame width in pixels, must be even
+     * @param height frame height in pixels, must be even
+     */
+    public void reduceNv21(ByteBuffer frame, int width, int height) {
+        checkFrame(width, height);
+        int lumaSize = width * height;
+        if ((width & 1) != 0 || (height & 1) != 0 || lumaSize + lumaSize / 2 > frame.limit()) {
+            throw new IllegalArgumentException();
+        }
+        resolveRegion(width, height);
+        setYuv(frame, width, frame, lumaSize + 1, frame, lumaSize, width, 2);
+        reduce();
+    }
+
+    /**
+     * Reduces a YUV_420_888 frame given as three planes, e.g. the
+     * planes of an android.media.Image.
+     *
+     * @param y             luma plane
+     * @param yRowStride    row stride of the luma plane
+     * @param u             U (Cb) plane
+     * @param v             V (Cr) plane
+     * @param uvRowStride   row stride shared by the chroma planes
+     * @param uvPixelStride pixel stride shared by the chroma planes
+     * @param width         frame width in pixels
+     * @param height        frame height in pixels
+     */
+    public void reduceYuv420(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                             int uvRowStride, int uvPixelStride, int width, int height) {
+        checkFrame(width, height);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        long chromaEnd = (long) uvRowStride * (chromaHeight - 1) + (long) uvPixelStride * (chromaWidth - 1) + 1;
+        if (yRowStride < width || uvPixelStride < 1 || uvRowStride < 1
+                || (long) yRowStride * (height - 1) + width > y.limit()
+                || chromaEnd > u.limit() || chromaEnd > v.limit()) {
+            throw new IllegalArgumentException();
+        }
+        resolveRegion(width, height);
+        setYuv(y, yRowStride, u, 0, v, 0, uvRowStride, uvPixelStride);
+        reduce();
+    }
+
+    /**
+     * Reduces every following RGBA frame read in full (a sample step
+     * of 1) with the given kernel, such as the Vector API kernel
+     * VectorRgbaReductionKernel on a server JVM, or with the portable
+     * packed-long reduction when null (the default). Every kernel
+     * gives the same result.
+     */
+    public void setRgbaKernel(RgbaReductionKernel kernel) {
+        mRgbaKernel = kernel;
+    }
+
+    /**
+     * Splits every following frame into horizontal strips that are
+     * reduced concurrently on the given executor, typically a small
+     * fixed thread pool. Each strip produces its own partial sums,
+     * which are merged in strip order once all strips are done.
+     * The sums are integers, so the averages and error estimates
+     * are bit identical to a sequential reduction.
+     *
+     * The calling thread waits for the strips; the frame buffer is
+     * only read with absolute gets while they run.
+     *
+     * @param executor executor running the strips, or null to go back
+     *                 to reducing on the calling thread
+     * @param strips   number of strips per frame
+     */
+    public void setStripExecutor(ExecutorService executor, int strips) {
+        if (strips < 1) {
+            throw new IllegalArgumentException();
+        }
+        mExecutor = executor;
+        mStripTasks = new ArrayList<>(strips);
+        for (int i = 0; i < strips; i++) {
+            mStripTasks.add(new StripTask());
+        }
+    }
+
+    /**
+     * Runs checkDataQuality on the averages of the last reduced frame.
+     *
+     * @return the verdict of checkDataQuality
+     */
+    public int feed(AnemiaDetection detector, int confidence, int startFrame) {
+        return detector.checkDataQuality(mRedAverage, mGreenAverage, mBlueAverage, confidence, startFrame);
+    }
+
+    public double getRedAverage() {
+        return mRedAverage;
+    }
+
+    public double getGreenAverage() {
+        return mGreenAverage;
+    }
+
+    public double getBlueAverage() {
+        return mBlueAverage;
+    }
+
+    /**
+     * @return sample variance of the red values over the number of
+     *         sampled pixels; 0 when every pixel was used
+     */
+    public double getRedMeanError() {
+        return mRedMeanError;
+    }
+
+    /**
+     * @return sample variance of the green values over the number of
+     *         sampled pixels; 0 when every pixel was used
+     */
+    public double getGreenMeanError() {
+        return mGreenMeanError;
+    }
+
+    /**
+     * @return sample variance of the blue values over the number of
+     *         sampled pixels; 0 when every pixel was used
+     */
+    public double getBlueMeanError() {
+        return mBlueMeanError;
+    }
+
+    /**
+     * @return sum of the red values the red average was computed
+     *         from, for FixedPointDetector
+     */
+    public long getRedSum() {
+        return mRedSum;
+    }
+
+    /**
+     * @return number of pixels the averages were computed from
+     */
+    public int getPixelCount() {
+        return mPixelCount;
+    }
+
+    /**
+     * @return number of pixels of the last reduced frame with at
+     *         least one color channel at 255
+     */
+    public int getSaturatedCount() {
+        return mSaturatedCount;
+    }
+
+    /**
+     * Reads a raw frame dump (for example a frame captured on a
+     * phone and copied to a workstation) into a direct buffer.
+     */
+    public static ByteBuffer loadRawFrame(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer frame = ByteBuffer.allocateDirect(bytes.length);
+        frame.put(bytes);
+        frame.clear();
+        return frame;
+    }
+
+    /**
+     * Adds the RGB sums of columns [left, right) of rows
+     * [rowFrom, rowTo) of an RGBA frame to sums.
+     *
+     * Two pixels are read at a time as one long. Masking out every
+     * other byte spreads R/B and G/A into four 16 bit lanes each,
+     * which are summed with plain long additions and widened into
+     * the channel totals every LANE_FLUSH_INTERVAL longs, before a
+     * lane can overflow. Saturated pixels are found with the usual
+     * zero byte test on the inverted pixel bytes.
+     */
+    static void accumulateRgba(ByteBuffer frame, int rowStride, int left, int right,
+                               int rowFrom, int rowTo, long[] sums) {
+        final boolean bigEndian = frame.order() == ByteOrder.BIG_ENDIAN;
+        final int width = right - left;
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long saturated = 0;
+        for (int row = rowFrom; row < rowTo; row++) {
+            int index = row * rowStride + left * RGBA_PIXEL_STRIDE;
+            int pairs = width >>> 1;
+            while (pairs > 0) {
+                final int chunk = Math.min(pairs, LANE_FLUSH_INTERVAL);
+                final int end = index + chunk * 2 * RGBA_PIXEL_STRIDE;
+                long redBlueLanes = 0;
+                long greenAlphaLanes = 0;
+                for (; index < end; index += 2 * RGBA_PIXEL_STRIDE) {
+                    long pixels = frame.getLong(index);
+                    if (bigEndian) {
+                        pixels = Long.reverseBytes(pixels);
+                    }
+                    redBlueLanes += pixels & EVEN_BYTES;
+                    greenAlphaLanes += (pixels >>> 8) & EVEN_BYTES;
+                    long inverted = ~pixels;
+                    long full = ~(((inverted & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | inverted | LOW_SEVEN_BITS)
+                            & COLOR_HIGH_BITS;
+                    saturated += Long.bitCount((full | (full >>> 8) | (full >>> 16)) & PIXEL_FLAGS);
+                }
+                red   += (redBlueLanes & 0xffff) + ((redBlueLanes >>> 32) & 0xffff);
+                blue  += ((redBlueLanes >>> 16) & 0xffff) + (redBlueLanes >>> 48);
+                green += (greenAlphaLanes & 0xffff) + ((greenAlphaLanes >>> 32) & 0xffff);
+                pairs -= chunk;
+            }
+            if ((width & 1) != 0) {
+                int r = frame.get(index) & 0xff;
+                int g = frame.get(index + 1) & 0xff;
+                int b = frame.get(index + 2) & 0xff;
+                red += r;
+                green += g;
+                blue += b;
+                if (r == 255 || g == 255 || b == 255) {
+                    saturated++;
+                }
+            }
+        }
+        sums[RED_SUM] += red;
+        sums[GREEN_SUM] += green;
+        sums[BLUE_SUM] += blue;
+        sums[PIXEL_COUNT] += (long) width * (rowTo - rowFrom);
+        sums[SATURATED_COUNT] += saturated;
+    }
+
+    /**
+     * Adds the RGB sums and squares of the sampled pixels of columns
+     * [left, right) of rows [rowFrom, rowTo) of an RGBA frame to
+     * sums. Samples lie on a step sized grid anchored at (left, top)
+     * so a region split into row ranges samples the same pixels.
+     */
+    static void accumulateRgbaSampled(ByteBuffer frame, int rowStride, int left, int right, int top,
+                                      int rowFrom, int rowTo, int step, long[] sums) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long redSquares = 0;
+        long greenSquares = 0;
+        long blueSquares = 0;
+        long saturated = 0;
+        long pixels = 0;
+        final int columnStep = step * RGBA_PIXEL_STRIDE;
+        for (int row = firstSampledRow(top, rowFrom, step); row < rowTo; row += step) {
+            final int end = row * rowStride + right * RGBA_PIXEL_STRIDE;
+            for (int index = row * rowStride + left * RGBA_PIXEL_STRIDE; index < end; index += columnStep) {
+                int r = frame.get(index) & 0xff;
+                int g = frame.get(index + 1) & 0xff;
+                int b = frame.get(index + 2) & 0xff;
+                red += r;
+                green += g;
+                blue += b;
+                redSquares += r * r;
+                greenSquares += g * g;
+                blueSquares += b * b;
+                if (r == 255 || g == 255 || b == 255) {
+                    saturated++;
+                }
+                pixels++;
+            }
+        }
+        sums[RED_SUM] += red;
+        sums[GREEN_SUM] += green;
+        sums[BLUE_SUM] += blue;
+        sums[RED_SQUARES] += redSquares;
+        sums[GREEN_SQUARES] += greenSquares;
+        sums[BLUE_SQUARES] += blueSquares;
+        sums[PIXEL_COUNT] += pixels;
+        sums[SATURATED_COUNT] += saturated;
+    }
+
+    /**
+     * Converts the sampled pixels of columns [left, right) of rows
+     * [rowFrom, rowTo) of a YUV 4:2:0 frame to RGB one pixel at a
+     * time and adds the results and their squares to sums. Samples
+     * lie on a step sized grid anchored at (left, top).
+     */
+    static void accumulateYuv(ByteBuffer y, int yOffset, int yRowStride,
+                              ByteBuffer u, int uOffset, ByteBuffer v, int vOffset,
+                              int uvRowStride, int uvPixelStride, int left, int right, int top,
+                              int rowFrom, int rowTo, int step, long[] sums) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long redSquares = 0;
+        long greenSquares = 0;
+        long blueSquares = 0;
+        long saturated = 0;
+        long pixels = 0;
+        for (int row = firstSampledRow(top, rowFrom, step); row < rowTo; row += step) {
+            int yIndex = yOffset + row * yRowStride;
+            int uvRow = (row >> 1) * uvRowStride;
+            for (int col = left; col < right; col += step) {
+                int uvIndex = uvRow + (col >> 1) * uvPixelStride;
+                int luma = (y.get(yIndex + col) & 0xff) - 16;
+                if (luma < 0) {
+                    luma = 0;
+                }
+                int cb = (u.get(uOffset + uvIndex) & 0xff) - 128;
+                int cr = (v.get(vOffset + uvIndex) & 0xff) - 128;
+                int y1192 = 1192 * luma;
+                int r = clamp(y1192 + 1634 * cr) >> 10;
+                int g = clamp(y1192 - 833 * cr - 400 * cb) >> 10;
+                int b = clamp(y1192 + 2066 * cb) >> 10;
+                red   += r;
+                green += g;
+                blue  += b;
+                redSquares   += r * r;
+                greenSquares += g * g;
+                blueSquares  += b * b;
+                if (r == 255 || g == 255 || b == 255) {
+                    saturated++;
+                }
+                pixels++;
+            }
+        }
+        sums[RED_SUM] += red;
+        sums[GREEN_SUM] += green;
+        sums[BLUE_SUM] += blue;
+        sums[RED_SQUARES] += redSquares;
+        sums[GREEN_SQUARES] += greenSquares;
+        sums[BLUE_SQUARES] += blueSquares;
+        sums[PIXEL_COUNT] += pixels;
+        sums[SATURATED_COUNT] += saturated;
+    }
+
+    private static int firstSampledRow(int top, int rowFrom, int step) {
+        int offset = (rowFrom - top) % step;
+        return offset == 0 ? rowFrom : rowFrom + step - offset;
+    }
+
+    private void setYuv(ByteBuffer y, int yRowStride, ByteBuffer u, int uOffset,
+                        ByteBuffer v, int vOffset, int uvRowStride, int uvPixelStride) {
+        mKind = KIND_YUV;
+        mPlane = y;
+        mRowStride = yRowStride;
+        mUPlane = u;
+        mUOffset = uOffset;
+        mVPlane = v;
+        mVOffset = vOffset;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+    }
+
+    /**
+     * Reduces the current frame, on the calling thread or in strips,
+     * and publishes the result.
+     */
+    private void reduce() {
+        clearSums(mSums);
+        try {
+            if (mExecutor == null) {
+                accumulateRows(mTop, mBottom, mSums);
+            } else {
+                reduceStrips();
+            }
+            publish(mSums);
+        } finally {
+            mPlane = null;
+            mUPlane = null;
+            mVPlane = null;
+        }
+    }
+
+    private void reduceStrips() {
+        final int strips = mStripTasks.size();
+        final int rows = mBottom - mTop;
+        for (int i = 0; i < strips; i++) {
+            StripTask task = mStripTasks.get(i);
+            task.mRowFrom = mTop + (int) ((long) rows * i / strips);
+            task.mRowTo = mTop + (int) ((long) rows * (i + 1) / strips);
+        }
+        List<Future<long[]>> results;
+        try {
+            results = mExecutor.invokeAll(mStripTasks);
+            for (Future<long[]> result : results) {
+                long[] partial = result.get();
+                for (int slot = 0; slot < SUM_SLOTS; slot++) {
+                    mSums[slot] += partial[slot];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Adds the sums of rows [rowFrom, rowTo) of the region of the
+     * current frame to sums.
+     */
+    private void accumulateRows(int rowFrom, int rowTo, long[] sums) {
+        if (mKind == KIND_RGBA) {
+            if (mSampleStep == 1 && mRgbaKernel != null) {
+                mRgbaKernel.accumulate(mPlane, mRowStride, mLeft, mRight, rowFrom, rowTo, sums);
+            } else if (mSampleStep == 1) {
+                accumulateRgba(mPlane, mRowStride, mLeft, mRight, rowFrom, rowTo, sums);
+            } else {
+                accumulateRgbaSampled(mPlane, mRowStride, mLeft, mRight, mTop, rowFrom, rowTo,
+                                      mSampleStep, sums);
+            }
+        } else {
+            accumulateYuv(mPlane, 0, mRowStride, mUPlane, mUOffset, mVPlane, mVOffset,
+                          mUvRowStride, mUvPixelStride, mLeft, mRight, mTop, rowFrom, rowTo,
+                          mSampleStep, sums);
+        }
+    }
+
+    /**
+     * Reduces one strip of the current frame into its own sums.
+     */
+    private final class StripTask implements Callable<long[]> {
+
+        private final long[] mPartial = new long[SUM_SLOTS];
+        int mRowFrom;
+        int mRowTo;
+
+        @Override
+        public long[] call() {
+            clearSums(mPartial);
+            accumulateRows(mRowFrom, mRowTo, mPartial);
+            return mPartial;
+        }
+    }
+
+    /**
+     * Resolves the region to reduce for a frame of the given size.
+     */
+    void resolveRegion(int width, int height) {
+        if (!mHasRegion) {
+            mLeft   = 0;
+            mTop    = 0;
+            mRight  = width;
+            mBottom = height;
+        } else {
+            if (mRegionRight > width || mRegionBottom > height) {
+                throw new IllegalArgumentException();
+            }
+            mLeft   = mRegionLeft;
+            mTop    = mRegionTop;
+            mRight  = mRegionRight;
+            mBottom = mRegionBottom;
+        }
+    }
+
+    static void clearSums(long[] sums) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = 0;
+        }
+    }
+
+    void publish(long[] sums) {
+        long count = sums[PIXEL_COUNT];
+        double pixels = count;
+        mPixelCount  = (int) count;
+        mSaturatedCount = (int) sums[SATURATED_COUNT];
+        mRedSum       = sums[RED_SUM];
+        mRedAverage   = sums[RED_SUM] / pixels;
+        mGreenAverage = sums[GREEN_SUM] / pixels;
+        mBlueAverage  = sums[BLUE_SUM] / pixels;
+        if (mSampleStep > 1 && count > 1) {
+            mRedMeanError   = meanError(sums[RED_SUM], sums[RED_SQUARES], count);
+            mGreenMeanError = meanError(sums[GREEN_SUM], sums[GREEN_SQUARES], count);
+            mBlueMeanError  = meanError(sums[BLUE_SUM], sums[BLUE_SQUARES], count);
+        } else {
+            mRedMeanError   = 0;
+            mGreenMeanError = 0;
+            mBlueMeanError  = 0;
+        }
+    }
+
+    /**
+     * Sample variance over n, from the sum and sum of squares. The
+     * numerator is formed in long arithmetic, which is exact for
+     * 8 bit samples up to about 10 million pixels.
+     */
+    private static double meanError(long sum, long squares, long n) {
+        long spread = squares * n - sum * sum;
+        double variance = spread / ((double) n * (n - 1));
+        return variance / n;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > YUV_MAX ? YUV_MAX : value;
+    }
+
+    private static void checkFrame(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
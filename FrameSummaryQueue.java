@@ -0,0 +1,223 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The FrameSummaryQueue class hands frame summaries (timestamp and
+ * average red, green and blue value) from the camera callback
+ * thread to a detection thread without locks. It is a bounded ring
+ * for exactly one producer thread and one consumer thread; the
+ * summaries are kept in primitive arrays so neither side allocates
+ * per frame.
+ *
+ * What happens when the producer offers a frame to a full ring is
+ * set by the OverflowPolicy:
+ *
+ *      DROP_OLDEST - the oldest queued frame is discarded
+ *      DROP_NEWEST - the offered frame is discarded
+ *      BLOCK       - the producer waits until the consumer makes room
+ *
+ * Every frame gets a sequence number from the producer (0 for the
+ * first frame offered, dropped frames included), so the consumer can
+ * tell where frames went missing.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class FrameSummaryQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    /**
+     * Receives the frames drained from the queue on the consumer thread.
+     */
+    public interface FrameHandler {
+        void onFrame(long sequence, long timestamp, double rVal, double gVal, double bVal);
+    }
+
+    static final long IDLE_PARK_NANOS = 100000;
+
+    private final OverflowPolicy mPolicy;
+    private final int mMask;
+    private final long[] mSequences;
+    private final long[] mTimestamps;
+    private final double[] mRed;
+    private final double[] mGreen;
+    private final double[] mBlue;
+
+    // Next position to read; written by the consumer, and by the
+    // producer when it drops the oldest frame
+    private final AtomicLong mHead = new AtomicLong();
+    // Next position to write; written by the producer only
+    private final AtomicLong mTail = new AtomicLong();
+    // Counters written by the producer only
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mMaxDepth = new AtomicLong();
+    private long mNextSequence;
+
+    private volatile boolean mClosed;
+
+    /**
+     * @param capacity number of frames the ring holds, rounded up to
+     *                 a power of two
+     * @param policy   what to do when a frame is offered to a full ring
+     */
+    public FrameSummaryQueue(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || capacity > 1 << 30 || policy == null) {
+            throw new IllegalArgumentException();
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mPolicy     = policy;
+        this.mMask       = size - 1;
+        this.mSequences  = new long[size];
+        this.mTimestamps = new long[size];
+        this.mRed        = new double[size];
+        this.mGreen      = new double[size];
+        this.mBlue       = new double[size];
+    }
+
+    /**
+     * Queues the summary of one frame. Producer thread only.
+     *
+     * @param timestamp frame timestamp, in whatever unit the caller uses
+     * @param rVal      Average red value of the frame (0 - 255 RGB format)
+     * @param gVal      Average green value of the frame (0 - 255 RGB format)
+     * @param bVal      Average blue value of the frame (0 - 255 RGB format)
+     *
+     * @return false if the frame was not queued, because the ring was
+     *         full under DROP_NEWEST or the queue has been closed
+     */
+    public boolean offer(long timestamp, double rVal, double gVal, double bVal) {
+        if (mClosed) {
+            return false;
+        }
+        final long sequence = mNextSequence++;
+        final long tail = mTail.get();
+        final int capacity = mMask + 1;
+        long head = mHead.get();
+        if (tail - head == capacity) {
+            switch (mPolicy) {
+                case DROP_NEWEST:
+                    mDropped.lazySet(mDropped.get() + 1);
+                    return false;
+                case DROP_OLDEST:
+                    // Fails only if the consumer took the frame first,
+                    // in which case there is room now
+                    if (mHead.compareAndSet(head, head + 1)) {
+                        mDropped.lazySet(mDropped.get() + 1);
+                    }
+                    head = mHead.get();
+                    break;
+                default:
+                    while (tail - (head = mHead.get()) == capacity) {
+                        if (mClosed) {
+                            return false;
+                        }
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    break;
+            }
+        }
+        final int index = (int) tail & mMask;
+        mSequences[index]  = sequence;
+        mTimestamps[index] = timestamp;
+        mRed[index]        = rVal;
+        mGreen[index]      = gVal;
+        mBlue[index]       = bVal;
+        mTail.lazySet(tail + 1);
+        if (tail + 1 - head > mMaxDepth.get()) {
+            mMaxDepth.lazySet(tail + 1 - head);
+        }
+        return true;
+    }
+
+    /**
+     * Hands up to max queued frames to the handler, oldest first.
+     * Consumer thread only.
+     *
+     * @return number of frames handed over, 0 if the queue was empty
+     */
+    public int drain(FrameHandler handler, int max) {
+        int count = 0;
+        while (count < max) {
+            final long head = mHead.get();
+            if (head == mTail.get()) {
+                break;
+            }
+            final int index = (int) head & mMask;
+            final long sequence = mSequences[index];
+            final long timestamp = mTimestamps[index];
+            final double rVal = mRed[index];
+            final double gVal = mGreen[index];
+            final double bVal = mBlue[index];
+            if (mPolicy == OverflowPolicy.DROP_OLDEST) {
+                // The producer may have dropped and overwritten this
+                // slot while it was read; the copy is only valid if
+                // the head has not moved in the meantime
+                if (!mHead.compareAndSet(head, head + 1)) {
+                    continue;
+                }
+            } else {
+                mHead.lazySet(head + 1);
+            }
+            handler.onFrame(sequence, timestamp, rVal, gVal, bVal);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Stops accepting frames and releases a producer blocked in offer.
+     * Frames already queued can still be drained.
+     */
+    public void close() {
+        mClosed = true;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return number of frames currently queued
+     */
+    public int size() {
+        long head = mHead.get();
+        long tail = mTail.get();
+        return (int) Math.max(0, Math.min(tail - head, mMask + 1));
+    }
+
+    /**
+     * @return the largest number of frames that were queued at once
+     */
+    public int getMaxDepth() {
+        return (int) mMaxDepth.get();
+    }
+
+    /**
+     * @return number of frames discarded by the overflow policy
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return mPolicy;
+    }
+}
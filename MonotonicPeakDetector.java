@@ -0,0 +1,234 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The MonotonicPeakDetector class finds peaks and troughs of a
+ * filtered signal for any half width k. A sample is a peak when the
+ * k samples before it rise strictly up to it and the k samples after
+ * it fall strictly away from it; a trough the other way round. For
+ * k = 2 that is the five sample window of
+ * AnemiaDetection.detectPeakTrough:
+ *
+ *      f2 > f1 > f0  and  f2 > f3 > f4
+ *
+ * Instead of comparing a window of 2k + 1 samples, the detector
+ * keeps the length of the current run of strict rises or falls and
+ * of the run before it, so each sample costs the same whatever k is.
+ * A peak is found when a fall run reaches k steps right after a rise
+ * run of at least k steps.
+ *
+ * A point can only be found k samples after its center. With
+ * legacyDelay every add reports the point found by the previous add,
+ * k + 1 samples after its center, which is how detectPeakTrough
+ * reports them (MAPPING = 3 for k = 2).
+ *
+ * For k > 1 the detector also predicts points: as soon as the
+ * signal turns (the first step of a fall after a rise of at least k
+ * steps, or the other way round) the sample before the turn is a
+ * tentative point, see getTentative. It becomes a point when the
+ * run reaches k steps, or is retracted when the run breaks first,
+ * see getRetracted. Tentative points come 1 sample after their
+ * center whatever k is.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class MonotonicPeakDetector {
+
+    private final int mHalfWidth;
+    private final boolean mLegacyDelay;
+    // Original values of the last k + 1 samples
+    private final double[] mOriginals;
+
+    private int mCount;
+    private int mNext;
+    private double mPrevious;
+    private int mRise;
+    private int mFall;
+    private int mRiseBeforeFall;
+    private int mFallBeforeRise;
+    private int mPendingType;
+    private double mPendingValue;
+    private double mPointValue;
+    private int mOpenType;
+    private int mOpenAge;
+    private int mTentative;
+    private double mTentativeValue;
+    private int mRetracted;
+    private int mRetractedDelay;
+
+
+    /**
+     * @param halfWidth   strictly monotone steps required on each side
+     *                    of a point (k >= 1)
+     * @param legacyDelay report points k + 1 samples after their center
+     *                    instead of k
+     */
+    public MonotonicPeakDetector(int halfWidth, boolean legacyDelay) {
+        if (halfWidth < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.mHalfWidth   = halfWidth;
+        this.mLegacyDelay = legacyDelay;
+        this.mOriginals   = new double[halfWidth + 1];
+    }
+
+    public int getHalfWidth() {
+        return mHalfWidth;
+    }
+
+    /**
+     * @return samples between the center of a point and the add call
+     *         that reports it, k or k + 1
+     */
+    public int getDelay() {
+        return mLegacyDelay ? mHalfWidth + 1 : mHalfWidth;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param filtered value the runs are measured on
+     * @param original value reported for a point (the raw red value)
+     * @return 1 if the sample getDelay() samples back is a peak, 2 if
+     *         it is a trough, 0 otherwise
+     */
+    public int add(double filtered, double original) {
+        int type = 0;
+        mTentative = 0;
+        mRetracted = 0;
+        if (mCount > 0) {
+            if (filtered > mPrevious) {
+                if (mRise == 0) {
+                    mFallBeforeRise = mFall;
+                    mFall = 0;
+                }
+                mRise++;
+            } else if (filtered < mPrevious) {
+                if (mFall == 0) {
+                    mRiseBeforeFall = mRise;
+                    mRise = 0;
+                }
+                mFall++;
+            } else {
+                mRise = 0;
+                mFall = 0;
+                mRiseBeforeFall = 0;
+                mFallBeforeRise = 0;
+            }
+            if (mFall == mHalfWidth && mRiseBeforeFall >= mHalfWidth) {
+                type = AnemiaDetection.PEAK;
+            } else if (mRise == mHalfWidth && mFallBeforeRise >= mHalfWidth) {
+                type = AnemiaDetection.TROUGH;
+            }
+            if (mHalfWidth > 1) {
+                predict(type);
+            }
+        }
+        mPrevious = filtered;
+        mOriginals[mNext] = original;
+        mNext = mNext == mHalfWidth ? 0 : mNext + 1;
+        mCount++;
+        // The oldest of the last k + 1 originals is the center
+        final double center = mOriginals[mNext];
+        if (!mLegacyDelay) {
+            mPointValue = center;
+            return type;
+        }
+        final int reported = mPendingType;
+        mPointValue = mPendingValue;
+        mPendingType = type;
+        mPendingValue = center;
+        return reported;
+    }
+
+    /**
+     * Follows the tentative point, if any, and opens a new one when
+     * the signal has just turned.
+     *
+     * @param type point found by this sample
+     */
+    private void predict(int type) {
+        if (mOpenType != 0) {
+            mOpenAge++;
+            final int run = mOpenType == AnemiaDetection.PEAK ? mFall : mRise;
+            if (type == mOpenType) {
+                mOpenType = 0;
+            } else if (run == 0) {
+                mRetracted = mOpenType;
+                mRetractedDelay = mOpenAge;
+                mOpenType = 0;
+            }
+        }
+        if (mFall == 1 && mRiseBeforeFall >= mHalfWidth) {
+            mTentative = AnemiaDetection.PEAK;
+        } else if (mRise == 1 && mFallBeforeRise >= mHalfWidth) {
+            mTentative = AnemiaDetection.TROUGH;
+        }
+        if (mTentative != 0) {
+            // The previous sample is the center
+            mTentativeValue = mOriginals[mNext == 0 ? mHalfWidth : mNext - 1];
+            mOpenType = mTentative;
+            mOpenAge = 1;
+        }
+    }
+
+    /**
+     * @return 1 or 2 if the last add turned the signal, making the
+     *         sample before it a tentative peak or trough, 0 otherwise
+     */
+    public int getTentative() {
+        return mTentative;
+    }
+
+    /**
+     * @return original value of the tentative point of the last add
+     */
+    public double getTentativeValue() {
+        return mTentativeValue;
+    }
+
+    /**
+     * @return 1 or 2 if the last add broke the run of a tentative
+     *         peak or trough before it reached k steps, 0 otherwise
+     */
+    public int getRetracted() {
+        return mRetracted;
+    }
+
+    /**
+     * @return samples between the center of the retracted point and
+     *         the last add
+     */
+    public int getRetractedDelay() {
+        return mRetractedDelay;
+    }
+
+    /**
+     * @return original value of the point the last add reported
+     */
+    public double getPointValue() {
+        return mPointValue;
+    }
+
+    /**
+     * Forgets every sample.
+     */
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mRise = 0;
+        mFall = 0;
+        mRiseBeforeFall = 0;
+        mFallBeforeRise = 0;
+        mPendingType = 0;
+        mPendingValue = 0;
+        mPointValue = 0;
+        mOpenType = 0;
+        mTentative = 0;
+        mRetracted = 0;
+    }
+}
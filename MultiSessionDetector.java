@@ -0,0 +1,528 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Arrays;
+
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.DETECTOR_BUFFER_SIZE;
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.MAPPING;
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.MAX_ERROR_ALLOTMENT;
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.MAX_SIGNAL_WIDTH;
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.PEAK;
+import static ubicomp.william.com.rgbchanneldatacollector.AnemiaDetection.TROUGH;
+
+/**
+ * The MultiSessionDetector class runs the AnemiaDetection signal
+ * path for many independent streams (sessions) at once. Instead of
+ * one object per stream, the filter state, the peak/trough detector
+ * windows, the calibration accumulators and the confidence counters
+ * of every session live side by side in primitive arrays indexed by
+ * session id, and a whole batch of sessions is advanced with a
+ * single call.
+ *
+ * Every session behaves exactly like its own AnemiaDetection object
+ * whose frame count is advanced by one after each processed frame:
+ * the first frame of a session is processed at the frame count it
+ * was opened with.
+ *
+ * All sessions of an engine share one DetectorParameters tuning.
+ *
+ * The red value delay line of a session takes 32 slots of a shared
+ * pool, or an array of its own when the session calibrates to a
+ * wider signal width (at most AnemiaDetection.MAX_SIGNAL_WIDTH), so
+ * one wide session does not grow the pool for all of them.
+ *
+ * Not thread safe; one thread should drive an engine.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class MultiSessionDetector {
+
+    private static final int DELAY_STRIDE = 32;
+
+    private final DetectorParameters mParams;
+    private int mCapacity;
+    private int mSessionLimit;
+    private int mFreeCount;
+
+    private boolean[] mOpen;
+    private boolean[] mAlreadyExecuted;
+    private int[] mFreeIds;
+    private int[] mFrameCount;
+    private int[] mStartFrame;
+
+    // Filter state
+    private double[] mLpfOutput;
+    private double[] mHpfOutput;
+    private double[] mPrevLpfInput;
+
+    // Detector windows, DETECTOR_BUFFER_SIZE slots per session
+    private double[] mFilteredData;
+    private double[] mOriginalData;
+    private int[] mWindowStart;
+    private int[] mWindowCount;
+
+    // Calibration accumulators
+    private double[] mPeakHold;
+    private double[] mTroughHold;
+    private double[] mCalcDiff;
+    private int[] mPeakCount;
+    private int[] mTroughCount;
+    private int[] mPeakFrame;
+    private int[] mTroughFrame;
+    private int[] mSignalWidth;
+
+    // Quality counters, DELAY_STRIDE delay line slots and
+    // MAX_ERROR_ALLOTMENT confidence buckets per session
+    private double[] mElementHolder;
+    // Own delay line of a session wider than DELAY_STRIDE, else null
+    private double[][] mWideElementHolder;
+    private int[] mElementStart;
+    private int[] mElementCount;
+    private int[] mElementCapacity;
+    private int[] mConfidence;
+
+    private final double[] mScratch;
+    private SessionFilterKernel mFilterKernel;
+    private double[] mLpfCandidate;
+    private double[] mHpfCandidate;
+
+
+    public MultiSessionDetector(int initialCapacity) {
+        this(initialCapacity, DetectorParameters.DEFAULT);
+    }
+
+    /**
+     * @param initialCapacity sessions the arrays are first sized for
+     * @param params          tuning shared by every session; only the
+     *                        five sample peak window is supported
+     */
+    public MultiSessionDetector(int initialCapacity, DetectorParameters params) {
+        if (initialCapacity < 1 || params == null || !params.hasDefaultPeakWindow()) {
+            throw new IllegalArgumentException();
+        }
+        this.mParams          = params;
+        this.mCapacity        = initialCapacity;
+        this.mSessionLimit    = 0;
+        this.mFreeCount       = 0;
+        this.mOpen            = new boolean[initialCapacity];
+        this.mAlreadyExecuted = new boolean[initialCapacity];
+        this.mFreeIds         = new int[initialCapacity];
+        this.mFrameCount      = new int[initialCapacity];
+        this.mStartFrame      = new int[initialCapacity];
+        this.mLpfOutput       = new double[initialCapacity];
+        this.mHpfOutput       = new double[initialCapacity];
+        this.mPrevLpfInput    = new double[initialCapacity];
+        this.mFilteredData    = new double[Math.multiplyExact(initialCapacity, DETECTOR_BUFFER_SIZE)];
+        this.mOriginalData    = new double[Math.multiplyExact(initialCapacity, DETECTOR_BUFFER_SIZE)];
+        this.mWindowStart     = new int[initialCapacity];
+        this.mWindowCount     = new int[initialCapacity];
+        this.mPeakHold        = new double[initialCapacity];
+        this.mTroughHold      = new double[initialCapacity];
+        this.mCalcDiff        = new double[initialCapacity];
+        this.mPeakCount       = new int[initialCapacity];
+        this.mTroughCount     = new int[initialCapacity];
+        this.mPeakFrame       = new int[initialCapacity];
+        this.mTroughFrame     = new int[initialCapacity];
+        this.mSignalWidth     = new int[initialCapacity];
+        this.mElementHolder   = new double[Math.multiplyExact(initialCapacity, DELAY_STRIDE)];
+        this.mWideElementHolder = new double[initialCapacity][];
+        this.mElementStart    = new int[initialCapacity];
+        this.mElementCount    = new int[initialCapacity];
+        this.mElementCapacity = new int[initialCapacity];
+        this.mConfidence      = new int[Math.multiplyExact(initialCapacity, MAX_ERROR_ALLOTMENT)];
+        this.mScratch         = new double[3];
+        this.mLpfCandidate    = new double[0];
+        this.mHpfCandidate    = new double[0];
+    }
+
+    /**
+     * Opens a new session, reusing the id of a closed session
+     * when one is available.
+     *
+     * @param frameCount frame count of the first frame of the session
+     * @param startFrame the first frame that the detector will start
+     *                   running on (see AnemiaDetection.detectPeakTrough)
+     * @return the id of the new session
+     */
+    public int openSession(int frameCount, int startFrame) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException();
+        }
+        int id;
+        if (mFreeCount > 0) {
+            id = mFreeIds[--mFreeCount];
+        } else {
+            if (mSessionLimit == mCapacity) {
+                grow(Math.multiplyExact(mCapacity, 2));
+            }
+            id = mSessionLimit++;
+        }
+        reset(id);
+        mOpen[id] = true;
+        mFrameCount[id] = frameCount;
+        mStartFrame[id] = startFrame;
+        return id;
+    }
+
+    public void closeSession(int sessionId) {
+        checkSession(sessionId);
+        mOpen[sessionId] = false;
+        // Don't keep a wide delay line alive until the id is reused
+        mWideElementHolder[sessionId] = null;
+        mFreeIds[mFreeCount++] = sessionId;
+    }
+
+    /**
+     * Evaluates the filters of stepAll with the given kernel, such as
+     * the Vector API kernel VectorSessionFilterKernel on a server JVM,
+     * or with the plain scalar loop when null (the default). Every
+     * kernel gives the same results.
+     */
+    public void setFilterKernel(SessionFilterKernel kernel) {
+        this.mFilterKernel = kernel;
+    }
+
+    /**
+     * @return number of sessions holding their own delay line because
+     *         they calibrated wider than DELAY_STRIDE
+     */
+    int getWideDelayLineCount() {
+        int count = 0;
+        for (int s = 0; s < mSessionLimit; s++) {
+            if (mWideElementHolder[s] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean isOpen(int sessionId) {
+        return sessionId >= 0 && sessionId < mSessionLimit && mOpen[sessionId];
+    }
+
+    public void updateFrameCount(int sessionId, int frameCount) {
+        checkSession(sessionId);
+        if (frameCount < 0) {
+            throw new IllegalArgumentException();
+        }
+        mFrameCount[sessionId] = frameCount;
+    }
+
+    /**
+     * @return the frame count the next frame of the session will be
+     *         processed at
+     */
+    public int getFrameCount(int sessionId) {
+        checkSession(sessionId);
+        return mFrameCount[sessionId];
+    }
+
+    /**
+     * Advances the peak/trough detector of a batch of sessions by
+     * one frame each. Equivalent to calling detectPeakTrough on the
+     * AnemiaDetection object of every listed session.
+     *
+     * @param sessionIds sessions to advance, each at most once per call
+     * @param rAvg       average red value of the new frame of each session
+     * @param count      number of sessions in the batch
+     * @param results    receives three values per session, laid out
+     *                   as results[3 * i .. 3 * i + 2] in the same
+     *                   format as AnemiaDetection.detectPeakTrough
+     */
+    public void step(int[] sessionIds, double[] rAvg, int count, double[] results) {
+        if (count < 0 || sessionIds.length < count || rAvg.length < count
+                || results.length / 3 < count) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < count; i++) {
+            int id = sessionIds[i];
+            checkSession(id);
+            detect(id, rAvg[i], results, 3 * i);
+            mFrameCount[id]++;
+        }
+    }
+
+    /**
+     * Runs the data quality check of a batch of sessions for one
+     * frame each. Equivalent to calling checkDataQuality on the
+     * AnemiaDetection object of every listed session.
+     *
+     * @param output receives the 0 - 4 verdict of each session
+     */
+    public void checkDataQuality(int[] sessionIds, double[] rVal, double[] gVal, double[] bVal,
+                                 int count, int confidence, int[] output) {
+        if (count < 0 || sessionIds.length < count || rVal.length < count || gVal.length < count
+                || bVal.length < count || output.length < count
+                || !mParams.isValidConfidence(confidence)) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < count; i++) {
+            int id = sessionIds[i];
+            checkSession(id);
+            output[i] = checkDataQuality(id, rVal[i], gVal[i], bVal[i], confidence);
+            mFrameCount[id]++;
+        }
+    }
+
+    /**
+     * Advances the peak/trough detector of every open session by
+     * one frame. Session i takes rAvg[i] and writes its outcome to
+     * results[3 * i .. 3 * i + 2]; entries of closed sessions are
+     * ignored and their results set to 0.
+     *
+     * The filter difference equations of all sessions are first
+     * evaluated in one dense, branch free pass over the state
+     * arrays, by the SessionFilterKernel if one is set and by a
+     * scalar loop otherwise. A second pass then runs the window
+     * logic per session. The outcome is identical to step().
+     *
+     * @param rAvg    average red value of the new frame of each
+     *                session, indexed by session id
+     * @param results receives three values per session id
+     */
+    public void stepAll(double[] rAvg, double[] results) {
+        final int limit = mSessionLimit;
+        if (rAvg.length < limit || results.length / 3 < limit) {
+            throw new IllegalArgumentException();
+        }
+        if (mLpfCandidate.length < limit) {
+            mLpfCandidate = new double[mCapacity];
+            mHpfCandidate = new double[mCapacity];
+        }
+        filterAll(rAvg, limit);
+        final int garbageFrames = mParams.getGarbageFrames();
+        for (int s = 0; s < limit; s++) {
+            if (!mOpen[s]) {
+                results[3 * s] = 0;
+                results[3 * s + 1] = 0;
+                results[3 * s + 2] = 0;
+                continue;
+            }
+            final int frame = mFrameCount[s];
+            if (frame > garbageFrames + mStartFrame[s] + 2) {
+                mLpfOutput[s] = mLpfCandidate[s];
+                mHpfOutput[s] = mHpfCandidate[s];
+                mPrevLpfInput[s] = mLpfCandidate[s];
+                detectWindow(s, rAvg[s], mHpfCandidate[s], frame, results, 3 * s);
+            } else {
+                detect(s, rAvg[s], results, 3 * s);
+            }
+            mFrameCount[s]++;
+        }
+    }
+
+    /**
+     * Steady state low pass and high pass filter output of every
+     * session for the next frame. Same difference equations as
+     * AnemiaDetection.lowPassFilter and highPassFilter; sessions
+     * still warming up get values that are simply not used.
+     */
+    private void filterAll(double[] rAvg, int limit) {
+        final double lpfSmoothing = mParams.getLowPassSmoothing();
+        final double hpfGain = mParams.getHighPassGain();
+        final SessionFilterKernel kernel = mFilterKernel;
+        if (kernel != null) {
+            kernel.filter(rAvg, mLpfOutput, mHpfOutput, mPrevLpfInput, mLpfCandidate, mHpfCandidate,
+                          limit, lpfSmoothing, hpfGain);
+            return;
+        }
+        final double[] lpfOutput = mLpfOutput;
+        final double[] hpfOutput = mHpfOutput;
+        final double[] prevLpfInput = mPrevLpfInput;
+        final double[] lpfCandidate = mLpfCandidate;
+        final double[] hpfCandidate = mHpfCandidate;
+        for (int s = 0; s < limit; s++) {
+            final double lpf = lpfOutput[s] + (rAvg[s] - lpfOutput[s]) / lpfSmoothing;
+            lpfCandidate[s] = lpf;
+            hpfCandidate[s] = hpfGain * (hpfOutput[s] + lpf - prevLpfInput[s]);
+        }
+    }
+
+    private int detect(int s, double rAvg, double[] result, int out) {
+        result[out] = 0;
+        result[out + 1] = 0;
+        result[out + 2] = 0;
+        final int frame = mFrameCount[s];
+        final int startFrame = mStartFrame[s];
+        final int garbageFrames = mParams.getGarbageFrames();
+        if (frame <= garbageFrames + startFrame) {
+            return 0;
+        }
+        if (frame == garbageFrames + startFrame + 1) {
+            mLpfOutput[s] = rAvg;
+            return 0;
+        }
+        final double lpf = mLpfOutput[s] + (rAvg - mLpfOutput[s]) / mParams.getLowPassSmoothing();
+        mLpfOutput[s] = lpf;
+        if (frame == garbageFrames + startFrame + 2) {
+            mHpfOutput[s] = 0;
+            mPrevLpfInput[s] = lpf;
+            return 0;
+        }
+        final double hpf = mParams.getHighPassGain() * (mHpfOutput[s] + lpf - mPrevLpfInput[s]);
+        mHpfOutput[s] = hpf;
+        mPrevLpfInput[s] = lpf;
+        return detectWindow(s, rAvg, hpf, frame, result, out);
+    }
+
+    /**
+     * Peak/trough test and window update of one session once its
+     * filters are running.
+     */
+    private int detectWindow(int s, double rAvg, double hpf, int frame, double[] result, int out) {
+        result[out] = 0;
+        result[out + 1] = 0;
+        result[out + 2] = 0;
+        int type = 0;
+        final int base = s * DETECTOR_BUFFER_SIZE;
+        final int start = mWindowStart[s];
+        if (frame > mParams.getGarbageFrames() + DETECTOR_BUFFER_SIZE + mStartFrame[s] + 2 &&
+                mWindowCount[s] == DETECTOR_BUFFER_SIZE) {
+            final double f0 = mFilteredData[base + windowIndex(start, 0)];
+            final double f1 = mFilteredData[base + windowIndex(start, 1)];
+            final double f2 = mFilteredData[base + windowIndex(start, 2)];
+            final double f3 = mFilteredData[base + windowIndex(start, 3)];
+            final double f4 = mFilteredData[base + windowIndex(start, 4)];
+            if (f2 > f1 && f2 > f3 && f1 > f0 && f3 > f4) {
+                type = PEAK;
+            } else if (f2 < f1 && f2 < f3 && f1 < f0 && f3 < f4) {
+                type = TROUGH;
+            }
+            if (type != 0) {
+                result[out] = type;
+                result[out + 1] = frame - MAPPING;
+                result[out + 2] = mOriginalData[base + windowIndex(start, 2)];
+            }
+        }
+        if (mWindowCount[s] < DETECTOR_BUFFER_SIZE) {
+            int index = base + windowIndex(start, mWindowCount[s]);
+            mOriginalData[index] = rAvg;
+            mFilteredData[index] = hpf;
+            mWindowCount[s]++;
+        } else {
+            mOriginalData[base + start] = rAvg;
+            mFilteredData[base + start] = hpf;
+            mWindowStart[s] = windowIndex(start, 1);
+        }
+        return type;
+    }
+
+    private int checkDataQuality(int s, double rVal, double gVal, double bVal, int confidence) {
+        if (rVal < 0 || gVal < 0 || bVal < 0) {
+            throw new IllegalArgumentException();
+        }
+        int output = 0;
+        final int calibrationPeaks = mParams.getCalibrationPeaks();
+        if (mPeakCount[s] < calibrationPeaks || mTroughCount[s] < calibrationPeaks) {
+            final double[] result = mScratch;
+            int type = detect(s, rVal, result, 0);
+            if (type == PEAK) {
+                mPeakHold[s] += result[2];
+                mPeakFrame[s] += result[1];
+                mPeakCount[s]++;
+            } else if (type == TROUGH) {
+                mTroughHold[s] += result[2];
+                mTroughFrame[s] += result[1];
+                mTroughCount[s]++;
+            }
+        } else if (!mAlreadyExecuted[s]) {
+            mCalcDiff[s] = ((mPeakHold[s] / mPeakCount[s]) - (mTroughHold[s] / mTroughCount[s]))
+                    + mParams.getErrorTolerance();
+            mSignalWidth[s] = Math.min((int) Math.abs((((mPeakFrame[s] / mPeakCount[s])
+                    - (mTroughFrame[s] / mTroughCount[s]))) + mParams.getErrorTolerance()), MAX_SIGNAL_WIDTH);
+            int capacity = Math.max(mSignalWidth[s], 1);
+            mWideElementHolder[s] = capacity > DELAY_STRIDE ? new double[capacity] : null;
+            mElementCapacity[s] = capacity;
+            mElementStart[s] = 0;
+            mElementCount[s] = 0;
+            mAlreadyExecuted[s] = true;
+        } else {
+            // Narrow sessions share the pool, DELAY_STRIDE slots each
+            final double[] holder = mWideElementHolder[s] != null ? mWideElementHolder[s] : mElementHolder;
+            final int base = mWideElementHolder[s] != null ? 0 : s * DELAY_STRIDE;
+            if (mElementCount[s] < mElementCapacity[s]) {
+                holder[base + mElementCount[s]] = rVal;
+                mElementCount[s]++;
+            } else {
+                final int slot = base + mElementStart[s];
+                final double difference = Math.abs(rVal - holder[slot]);
+                holder[slot] = rVal;
+                mElementStart[s] = mElementStart[s] + 1 == mElementCapacity[s] ? 0 : mElementStart[s] + 1;
+                final int buckets = s * MAX_ERROR_ALLOTMENT;
+                mConfidence[buckets + AnemiaDetection.classifyFrame(difference, mCalcDiff[s], gVal, bVal, mParams)]++;
+                if (mFrameCount[s] % mParams.getDataSize() == 0) {
+                    output = AnemiaDetection.confidenceCheck(mConfidence, buckets, confidence);
+                    Arrays.fill(mConfidence, buckets, buckets + MAX_ERROR_ALLOTMENT, 0);
+                }
+            }
+        }
+        return output;
+    }
+
+    private static int windowIndex(int start, int position) {
+        int index = start + position;
+        return index < DETECTOR_BUFFER_SIZE ? index : index - DETECTOR_BUFFER_SIZE;
+    }
+
+    private void checkSession(int sessionId) {
+        if (sessionId < 0 || sessionId >= mSessionLimit || !mOpen[sessionId]) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private void reset(int s) {
+        mAlreadyExecuted[s] = false;
+        mLpfOutput[s] = 0;
+        mHpfOutput[s] = 0;
+        mPrevLpfInput[s] = 0;
+        mWindowStart[s] = 0;
+        mWindowCount[s] = 0;
+        mPeakHold[s] = 0;
+        mTroughHold[s] = 0;
+        mCalcDiff[s] = 0;
+        mPeakCount[s] = 0;
+        mTroughCount[s] = 0;
+        mPeakFrame[s] = 0;
+        mTroughFrame[s] = 0;
+        mSignalWidth[s] = 0;
+        mElementStart[s] = 0;
+        mElementCount[s] = 0;
+        mElementCapacity[s] = 0;
+        mWideElementHolder[s] = null;
+        Arrays.fill(mConfidence, s * MAX_ERROR_ALLOTMENT, (s + 1) * MAX_ERROR_ALLOTMENT, 0);
+    }
+
+    private void grow(int capacity) {
+        mOpen            = Arrays.copyOf(mOpen, capacity);
+        mAlreadyExecuted = Arrays.copyOf(mAlreadyExecuted, capacity);
+        mFreeIds         = Arrays.copyOf(mFreeIds, capacity);
+        mFrameCount      = Arrays.copyOf(mFrameCount, capacity);
+        mStartFrame      = Arrays.copyOf(mStartFrame, capacity);
+        mLpfOutput       = Arrays.copyOf(mLpfOutput, capacity);
+        mHpfOutput       = Arrays.copyOf(mHpfOutput, capacity);
+        mPrevLpfInput    = Arrays.copyOf(mPrevLpfInput, capacity);
+        mFilteredData    = Arrays.copyOf(mFilteredData, Math.multiplyExact(capacity, DETECTOR_BUFFER_SIZE));
+        mOriginalData    = Arrays.copyOf(mOriginalData, Math.multiplyExact(capacity, DETECTOR_BUFFER_SIZE));
+        mWindowStart     = Arrays.copyOf(mWindowStart, capacity);
+        mWindowCount     = Arrays.copyOf(mWindowCount, capacity);
+        mPeakHold        = Arrays.copyOf(mPeakHold, capacity);
+        mTroughHold      = Arrays.copyOf(mTroughHold, capacity);
+        mCalcDiff        = Arrays.copyOf(mCalcDiff, capacity);
+        mPeakCount       = Arrays.copyOf(mPeakCount, capacity);
+        mTroughCount     = Arrays.copyOf(mTroughCount, capacity);
+        mPeakFrame       = Arrays.copyOf(mPeakFrame, capacity);
+        mTroughFrame     = Arrays.copyOf(mTroughFrame, capacity);
+        mSignalWidth     = Arrays.copyOf(mSignalWidth, capacity);
+        mElementHolder   = Arrays.copyOf(mElementHolder, Math.multiplyExact(capacity, DELAY_STRIDE));
+        mWideElementHolder = Arrays.copyOf(mWideElementHolder, capacity);
+        mElementStart    = Arrays.copyOf(mElementStart, capacity);
+        mElementCount    = Arrays.copyOf(mElementCount, capacity);
+        mElementCapacity = Arrays.copyOf(mElementCapacity, capacity);
+        mConfidence      = Arrays.copyOf(mConfidence, Math.multiplyExact(capacity, MAX_ERROR_ALLOTMENT));
+        mCapacity        = capacity;
+    }
+}
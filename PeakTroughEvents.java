@@ -0,0 +1,116 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Arrays;
+
+/**
+ * The PeakTroughEvents class is a growable list of peak and
+ * trough points stored in parallel primitive arrays. It is filled
+ * by AnemiaDetection.detectPeakTroughs and can be cleared and
+ * reused between traces so that replaying a recording does not
+ * create an object per event.
+ *
+ * Event i is described by:
+ *      getType(i)  - 1 for a peak point, 2 for a trough point
+ *      getFrame(i) - the frame count of the point
+ *      getValue(i) - the r value of the point
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class PeakTroughEvents {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private byte[] mTypes;
+    private int[] mFrames;
+    private double[] mValues;
+    private int mSize;
+
+    public PeakTroughEvents() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PeakTroughEvents(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mTypes  = new byte[initialCapacity];
+        this.mFrames = new int[initialCapacity];
+        this.mValues = new double[initialCapacity];
+        this.mSize   = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getType(int index) {
+        checkIndex(index);
+        return mTypes[index];
+    }
+
+    public int getFrame(int index) {
+        checkIndex(index);
+        return mFrames[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    /**
+     * Returns the backing array of event types. Only the first
+     * size() entries are valid and the array is replaced when
+     * the list grows, so it must not be kept across additions.
+     */
+    public byte[] getTypes() {
+        return mTypes;
+    }
+
+    /**
+     * Returns the backing array of event frames. Same rules as
+     * getTypes() apply.
+     */
+    public int[] getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Returns the backing array of event r values. Same rules as
+     * getTypes() apply.
+     */
+    public double[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Removes all events while keeping the allocated capacity.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    void add(int type, int frame, double value) {
+        if (mSize == mTypes.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, mSize + (mSize >> 1));
+            mTypes  = Arrays.copyOf(mTypes, capacity);
+            mFrames = Arrays.copyOf(mFrames, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+        mTypes[mSize]  = (byte) type;
+        mFrames[mSize] = frame;
+        mValues[mSize] = value;
+        mSize++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The PeakTroughListener interface is told about peak and trough
+ * points of an AnemiaDetection object as early as they can be seen,
+ * for real time feedback. Attach an implementation with
+ * AnemiaDetection.setPeakTroughListener.
+ *
+ * detectPeakTrough reports a point MAPPING (3) frames after it,
+ * when the two samples after it have been checked. A listener is
+ * told about a tentative point 1 frame after it, as soon as the
+ * filtered signal turns. The point is confirmed once the run after
+ * it is long enough, or retracted when the run breaks first.
+ * detectPeakTrough reports every confirmed point on the next frame,
+ * and every tentative point is either confirmed or retracted,
+ * except the last one of a stream.
+ *
+ * Calls are made on the thread that calls the detector, in the
+ * middle of the frame, so implementations should be quick.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public interface PeakTroughListener {
+
+    /**
+     * The filtered signal has just turned at a frame.
+     *
+     * @param type  1 for a peak point, 2 for a trough point
+     * @param frame frame count of the point
+     * @param rVal  its red value
+     */
+    void onTentative(int type, int frame, double rVal);
+
+    /**
+     * A tentative point has a long enough run after it.
+     *
+     * @param type  1 for a peak point, 2 for a trough point
+     * @param frame frame count of the point
+     * @param rVal  its red value
+     */
+    void onConfirmed(int type, int frame, double rVal);
+
+    /**
+     * A tentative point turned out not to be a point.
+     *
+     * @param type  1 for a peak point, 2 for a trough point
+     * @param frame frame count of the point
+     */
+    void onRetracted(int type, int frame);
+}
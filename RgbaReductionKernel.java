@@ -0,0 +1,39 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The RgbaReductionKernel interface adds up the pixels of an
+ * RGBA_8888 frame for FrameReducer. Attach an implementation with
+ * FrameReducer.setRgbaKernel; without one FrameReducer uses its own
+ * portable packed-long reduction.
+ *
+ * A kernel adds the red, green and blue sums, the pixel count and the
+ * number of saturated pixels (at least one of R, G or B at 255) of
+ * the region to the FrameReducer sums array. All of these are
+ * integers, so every kernel gives exactly the same result. Strips of
+ * one frame may be reduced concurrently, so kernels must be
+ * stateless.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public interface RgbaReductionKernel {
+
+    /**
+     * Adds the sums of columns [left, right) of rows [rowFrom, rowTo)
+     * to sums.
+     *
+     * @param frame     buffer holding the frame, read with absolute gets
+     * @param rowStride distance in bytes between the starts of two rows
+     * @param sums      FrameReducer sums, of which RED_SUM, GREEN_SUM,
+     *                  BLUE_SUM, PIXEL_COUNT and SATURATED_COUNT are
+     *                  added to
+     */
+    void accumulate(ByteBuffer frame, int rowStride, int left, int right,
+                    int rowFrom, int rowTo, long[] sums);
+}
@@ -0,0 +1,39 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The SessionFilterKernel interface evaluates the lowPassFilter and
+ * highPassFilter difference equations of many sessions at once, for
+ * MultiSessionDetector.stepAll. For every session s below count:
+ *
+ *      lpfOut[s] = lpf[s] + (rAvg[s] - lpf[s]) / lowPassSmoothing
+ *      hpfOut[s] = highPassGain * ((hpf[s] + lpfOut[s]) - prevLpf[s])
+ *
+ * Implementations must evaluate the operations in exactly this order,
+ * must divide rather than multiply by a reciprocal and must not fuse
+ * a multiply and an add, so every kernel gives bit
+ * identical results to the scalar loop MultiSessionDetector falls
+ * back to. Kernels are stateless.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public interface SessionFilterKernel {
+
+    /**
+     * @param rAvg         average red value of the new frame of each session
+     * @param lpf          low pass output of the previous frame
+     * @param hpf          high pass output of the previous frame
+     * @param prevLpf      low pass output the high pass filter saw last
+     * @param lpfOut       receives the new low pass output
+     * @param hpfOut       receives the new high pass output
+     * @param count        number of sessions, from index 0
+     * @param lowPassSmoothing DetectorParameters.getLowPassSmoothing
+     * @param highPassGain     DetectorParameters.getHighPassGain
+     */
+    void filter(double[] rAvg, double[] lpf, double[] hpf, double[] prevLpf,
+                double[] lpfOut, double[] hpfOut, int count, double lowPassSmoothing, double highPassGain);
+}
@@ -0,0 +1,430 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The SessionServer class runs the detection for phones that stream
+ * their per-frame RGB averages over TCP. Every connection is a
+ * session with its own pair of AnemiaDetection objects, one for
+ * checkDataQuality and one for detectPeakTrough, so the two keep
+ * separate filter state as they do on the phone.
+ *
+ * Connections are spread over a few event loop threads, each
+ * multiplexing its sessions with a Selector. A session only costs
+ * its detectors and two small buffers, no thread, so one JVM can
+ * hold as many sessions as it has file descriptors for.
+ * VirtualThreadSessionServer (jvm/, JDK 21) serves the same protocol
+ * with one virtual thread per connection instead.
+ *
+ * All messages are big endian and start with a one byte type:
+ *
+ *      HELLO  (client) 1, confidence (byte), startFrame (int)
+ *      FRAME  (client) 2, frame count (int), r, g, b (float)
+ *      RESULT (server) 3, frame count (int), verdict (byte),
+ *                      type (byte), event frame (int), event r (float)
+ *
+ * HELLO opens the session and must come first. The server answers
+ * every FRAME with one RESULT: verdict is the checkDataQuality
+ * outcome of the frame and type, event frame and event r are the
+ * three values of detectPeakTrough (all 0 if the frame is NOT a
+ * peak NOR trough). A malformed message closes the connection.
+ *
+ * When a client does not read its results the server stops reading
+ * its frames, so a slow client cannot make the server buffer without
+ * bound.
+ *
+ * A failed accept, typically for running out of file descriptors,
+ * only stops accepting for ACCEPT_BACKOFF_MILLIS; the sessions already
+ * connected keep being served. A connection that cannot be set up is
+ * closed on its own.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class SessionServer implements Closeable {
+
+    static final byte MSG_HELLO = 1;
+    static final byte MSG_FRAME = 2;
+    static final byte MSG_RESULT = 3;
+    static final int HELLO_SIZE = 6;
+    static final int FRAME_SIZE = 17;
+    static final int RESULT_SIZE = 15;
+
+    private static final int BUFFER_SIZE = 512;
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final InetSocketAddress mRequestedAddress;
+    private final EventLoop[] mLoops;
+    private ServerSocketChannel mServerChannel;
+    private volatile boolean mClosed;
+    private volatile long mAcceptFailures;
+    private int mNextLoop;
+
+    /**
+     * @param address address to listen on, port 0 for any free port
+     * @param loops   number of event loop threads
+     */
+    public SessionServer(InetSocketAddress address, int loops) {
+        if (address == null || loops < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.mRequestedAddress = address;
+        this.mLoops            = new EventLoop[loops];
+    }
+
+    /**
+     * Binds the listening socket and starts the event loops.
+     */
+    public synchronized void start() throws IOException {
+        if (mServerChannel != null) {
+            throw new IllegalStateException();
+        }
+        for (int i = 0; i < mLoops.length; i++) {
+            mLoops[i] = new EventLoop(Selector.open());
+        }
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.bind(mRequestedAddress, 4096);
+        mServerChannel.configureBlocking(false);
+        mServerChannel.register(mLoops[0].mSelector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < mLoops.length; i++) {
+            Thread thread = new Thread(mLoops[i], "SessionServer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) mServerChannel.getLocalAddress();
+    }
+
+    /**
+     * @return number of connected sessions
+     */
+    public int getSessionCount() {
+        int count = 0;
+        for (EventLoop loop : mLoops) {
+            count += loop.mSessions;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of frames processed since the server started
+     */
+    public long getFrameCount() {
+        long count = 0;
+        for (EventLoop loop : mLoops) {
+            count += loop.mFrames;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of connections the server failed to accept or
+     *         set up
+     */
+    public long getAcceptFailureCount() {
+        return mAcceptFailures;
+    }
+
+    /**
+     * Stops accepting connections and closes every session.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mClosed = true;
+        if (mServerChannel != null) {
+            mServerChannel.close();
+        }
+        for (EventLoop loop : mLoops) {
+            if (loop != null) {
+                loop.mSelector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Accepts the pending connections and hands them to the event
+     * loops in turn.
+     *
+     * @return false if accepting failed and should be retried later
+     */
+    private boolean accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = mServerChannel.accept();
+            } catch (IOException e) {
+                if (!mClosed) {
+                    acceptFailed(e);
+                }
+                return false;
+            }
+            if (channel == null) {
+                return true;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                acceptFailed(e);
+                closeQuietly(channel);
+                continue;
+            }
+            EventLoop loop = mLoops[mNextLoop];
+            mNextLoop = (mNextLoop + 1) % mLoops.length;
+            loop.mPending.add(channel);
+            if (loop != mLoops[0]) {
+                loop.mSelector.wakeup();
+            }
+        }
+    }
+
+    private void acceptFailed(IOException e) {
+        mAcceptFailures++;
+        System.err.println("SessionServer: accept failed: " + e.getMessage());
+    }
+
+    /**
+     * State and protocol handling of one connection, shared with the
+     * thread per connection server in jvm/.
+     */
+    static final class Session {
+
+        final SocketChannel mChannel;
+        final ByteBuffer mIn;
+        final ByteBuffer mOut;
+        private final double[] mResult;
+        private AnemiaDetection mQuality;
+        private AnemiaDetection mEvents;
+        private int mConfidence;
+        private int mStartFrame;
+
+        Session(SocketChannel channel) {
+            this.mChannel = channel;
+            this.mIn      = ByteBuffer.allocate(BUFFER_SIZE);
+            this.mOut     = ByteBuffer.allocate(BUFFER_SIZE);
+            this.mResult  = new double[3];
+        }
+
+        /**
+         * Handles the complete messages in the input buffer for as
+         * long as the output buffer has room for their results.
+         *
+         * @return number of frames handled
+         * @throws IllegalArgumentException on a malformed message
+         */
+        int process() {
+            ByteBuffer in = mIn;
+            ByteBuffer out = mOut;
+            int frames = 0;
+            in.flip();
+            while (in.hasRemaining()) {
+                byte type = in.get(in.position());
+                if (type == MSG_HELLO) {
+                    if (in.remaining() < HELLO_SIZE) {
+                        break;
+                    }
+                    if (mQuality != null) {
+                        throw new IllegalArgumentException();
+                    }
+                    in.get();
+                    int confidence = in.get();
+                    int startFrame = in.getInt();
+                    if (confidence > AnemiaDetection.DATA_SIZE - 1 || confidence < 0) {
+                        throw new IllegalArgumentException();
+                    }
+                    mConfidence = confidence;
+                    mStartFrame = startFrame;
+                    mQuality    = new AnemiaDetection(1);
+                    mEvents     = new AnemiaDetection(1);
+                } else if (type == MSG_FRAME) {
+                    if (in.remaining() < FRAME_SIZE || out.remaining() < RESULT_SIZE) {
+                        break;
+                    }
+                    if (mQuality == null) {
+                        throw new IllegalArgumentException();
+                    }
+                    in.get();
+                    int frame = in.getInt();
+                    double rVal = in.getFloat();
+                    double gVal = in.getFloat();
+                    double bVal = in.getFloat();
+                    mQuality.updateFrameCount(frame);
+                    int verdict = mQuality.checkDataQuality(rVal, gVal, bVal, mConfidence, mStartFrame);
+                    mEvents.updateFrameCount(frame);
+                    mEvents.detectPeakTrough(rVal, mStartFrame, mResult);
+                    out.put(MSG_RESULT);
+                    out.putInt(frame);
+                    out.put((byte) verdict);
+                    out.put((byte) mResult[0]);
+                    out.putInt((int) mResult[1]);
+                    out.putFloat((float) mResult[2]);
+                    frames++;
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+            in.compact();
+            return frames;
+        }
+    }
+
+    /**
+     * Serves the sessions registered with one selector.
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector mSelector;
+        private final ConcurrentLinkedQueue<SocketChannel> mPending = new ConcurrentLinkedQueue<>();
+        private volatile int mSessions;
+        private volatile long mFrames;
+
+        EventLoop(Selector selector) {
+            this.mSelector = selector;
+        }
+
+        @Override
+        public void run() {
+            // Accept key while accepting is suspended after a failure
+            SelectionKey suspended = null;
+            long resumeMillis = 0;
+            try {
+                while (!mClosed) {
+                    if (suspended == null) {
+                        mSelector.select();
+                    } else {
+                        long wait = resumeMillis - System.currentTimeMillis();
+                        if (wait > 0) {
+                            mSelector.select(wait);
+                        }
+                        if (System.currentTimeMillis() >= resumeMillis && suspended.isValid()) {
+                            suspended.interestOps(SelectionKey.OP_ACCEPT);
+                            suspended = null;
+                        }
+                    }
+                    register();
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            if (!accept()) {
+                                key.interestOps(0);
+                                suspended = key;
+                                resumeMillis = System.currentTimeMillis() + ACCEPT_BACKOFF_MILLIS;
+                            }
+                            register();
+                            continue;
+                        }
+                        Session session = (Session) key.attachment();
+                        try {
+                            if (key.isWritable()) {
+                                flush(key, session);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key, session);
+                            }
+                        } catch (IOException | IllegalArgumentException e) {
+                            // Broken connection or malformed stream
+                            closeSession(key, session);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // Server shutting down
+            } finally {
+                for (SelectionKey key : mSelector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(mSelector);
+                mSessions = 0;
+            }
+        }
+
+        private void register() {
+            SocketChannel channel;
+            while ((channel = mPending.poll()) != null) {
+                try {
+                    channel.register(mSelector, SelectionKey.OP_READ, new Session(channel));
+                    mSessions++;
+                } catch (ClosedChannelException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void read(SelectionKey key, Session session) throws IOException {
+            if (session.mChannel.read(session.mIn) < 0) {
+                closeSession(key, session);
+                return;
+            }
+            process(session);
+            flush(key, session);
+        }
+
+        private void process(Session session) {
+            mFrames += session.process();
+        }
+
+        /**
+         * Writes pending results. Reading is suspended while results
+         * are left over and resumed, after handling the frames that
+         * are still buffered, once they are all written.
+         */
+        private void flush(SelectionKey key, Session session) throws IOException {
+            ByteBuffer out = session.mOut;
+            while (true) {
+                out.flip();
+                session.mChannel.write(out);
+                out.compact();
+                if (out.position() > 0) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                int buffered = session.mIn.position();
+                process(session);
+                if (out.position() == 0 || session.mIn.position() == buffered) {
+                    break;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void closeSession(SelectionKey key, Session session) {
+            key.cancel();
+            closeQuietly(session.mChannel);
+            mSessions--;
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
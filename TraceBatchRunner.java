@@ -0,0 +1,347 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The TraceBatchRunner class re-scores a directory of recorded
+ * sessions in parallel. Every trace file is replayed through its own
+ * detectors on a ForkJoinPool; the work is split recursively down to
+ * single traces so idle workers steal the remaining traces and long
+ * recordings do not hold up the batch. Per trace outcomes are merged
+ * into one Summary in file name order, so the result does not depend
+ * on scheduling.
+ *
+ * A trace file holds one frame per line with the average red, green
+ * and blue values separated by commas or whitespace:
+ *
+ *      212.4,1.3,0.9
+ *
+ * Blank lines, lines starting with '#' and a non numeric header line
+ * are skipped. The first frame of a trace has frame count 1. Negative
+ * channel values are rejected.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class TraceBatchRunner {
+
+    private final ForkJoinPool mPool;
+    private final int mConfidence;
+    private final int mStartFrame;
+
+    /**
+     * @param pool       the pool the traces are processed on
+     * @param confidence Accuracy level passed to checkDataQuality
+     *                   (1 = 10% ... 9 = 90%)
+     * @param startFrame The first frame the detectors start running on
+     */
+    public TraceBatchRunner(ForkJoinPool pool, int confidence, int startFrame) {
+        if (pool == null || confidence > AnemiaDetection.DATA_SIZE - 1 || confidence < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mPool       = pool;
+        this.mConfidence = confidence;
+        this.mStartFrame = startFrame;
+    }
+
+    /**
+     * Processes every regular file of a directory as a trace.
+     */
+    public Summary run(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return run(files);
+    }
+
+    /**
+     * Processes the given trace files.
+     */
+    public Summary run(List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            return new Summary(Collections.<TraceResult>emptyList());
+        }
+        Path[] paths = files.toArray(new Path[files.size()]);
+        TraceResult[] results = new TraceResult[paths.length];
+        try {
+            mPool.invoke(new TraceTask(paths, results, 0, paths.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Summary(Arrays.asList(results));
+    }
+
+    /**
+     * Replays a single recorded trace.
+     *
+     * @param name  label of the trace in the summary
+     * @param red   average red value of every frame
+     * @param green average green value of every frame
+     * @param blue  average blue value of every frame
+     * @param count number of frames
+     */
+    public TraceResult process(String name, double[] red, double[] green, double[] blue, int count) {
+        if (count < 0 || red.length < count || green.length < count || blue.length < count) {
+            throw new IllegalArgumentException();
+        }
+        TraceResult result = new TraceResult(name, count);
+
+        AnemiaDetection detector = new AnemiaDetection(1);
+        PeakTroughEvents events = detector.detectPeakTroughs(red, 0, count, mStartFrame);
+        double[] point = new double[3];
+        for (int i = 0; i < events.size(); i++) {
+            if (events.getType(i) == AnemiaDetection.PEAK) {
+                result.mPeaks++;
+            } else {
+                result.mTroughs++;
+            }
+            point[0] = events.getType(i);
+            point[1] = events.getFrame(i);
+            point[2] = events.getValue(i);
+            double range = detector.findAcRange(point);
+            if (range != 0) {
+                result.mAcRangeSum += range;
+                result.mAcRangeCount++;
+            }
+        }
+
+        AnemiaDetection quality = new AnemiaDetection(1);
+        for (int i = 0; i < count; i++) {
+            quality.updateFrameCount(i + 1);
+            result.mVerdicts[quality.checkDataQuality(red[i], green[i], blue[i], mConfidence, mStartFrame)]++;
+        }
+        return result;
+    }
+
+    private TraceResult process(Path file) throws IOException {
+        double[][] channels = readTrace(file);
+        return process(file.getFileName().toString(), channels[0], channels[1], channels[2], channels[0].length);
+    }
+
+    /**
+     * Reads a trace file (see the class comment).
+     *
+     * @return the red, green and blue values of every frame
+     */
+    static double[][] readTrace(Path file) throws IOException {
+        double[][] channels = new double[3][1024];
+        int count = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] values = line.split("[,\\s]+");
+                if (values.length < 3) {
+                    throw new IOException(file + ": expected r, g and b on line " + lineNumber);
+                }
+                double r;
+                double g;
+                double b;
+                try {
+                    r = Double.parseDouble(values[0]);
+                    g = Double.parseDouble(values[1]);
+                    b = Double.parseDouble(values[2]);
+                } catch (NumberFormatException e) {
+                    if (count == 0) {
+                        continue; // header
+                    }
+                    throw new IOException(file + ": line " + lineNumber + ": " + e.getMessage(), e);
+                }
+                if (r < 0 || g < 0 || b < 0) {
+                    throw new IOException(file + ": negative channel value on line " + lineNumber);
+                }
+                if (count == channels[0].length) {
+                    for (int c = 0; c < 3; c++) {
+                        channels[c] = Arrays.copyOf(channels[c], count * 2);
+                    }
+                }
+                channels[0][count] = r;
+                channels[1][count] = g;
+                channels[2][count] = b;
+                count++;
+            }
+        }
+        for (int c = 0; c < 3; c++) {
+            channels[c] = Arrays.copyOf(channels[c], count);
+        }
+        return channels;
+    }
+
+    /**
+     * Splits the file range in halves until a single trace is left.
+     */
+    private final class TraceTask extends RecursiveTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path[] mFiles;
+        private final TraceResult[] mResults;
+        private final int mFrom;
+        private final int mTo;
+
+        TraceTask(Path[] files, TraceResult[] results, int from, int to) {
+            this.mFiles   = files;
+            this.mResults = results;
+            this.mFrom    = from;
+            this.mTo      = to;
+        }
+
+        @Override
+        protected Void compute() {
+            if (mTo - mFrom == 1) {
+                try {
+                    mResults[mFrom] = process(mFiles[mFrom]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new TraceTask(mFiles, mResults, mFrom, middle),
+                      new TraceTask(mFiles, mResults, middle, mTo));
+            return null;
+        }
+    }
+
+    /**
+     * Outcome of replaying one trace.
+     */
+    public static final class TraceResult {
+
+        private final String mName;
+        private final int mFrames;
+        private final int[] mVerdicts;
+        private int mPeaks;
+        private int mTroughs;
+        private int mAcRangeCount;
+        private double mAcRangeSum;
+
+        TraceResult(String name, int frames) {
+            this.mName     = name;
+            this.mFrames   = frames;
+            this.mVerdicts = new int[5];
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getFrames() {
+            return mFrames;
+        }
+
+        public int getPeaks() {
+            return mPeaks;
+        }
+
+        public int getTroughs() {
+            return mTroughs;
+        }
+
+        /**
+         * @param verdict a checkDataQuality result (0 - 4)
+         * @return how many frames produced that result
+         */
+        public int getVerdictCount(int verdict) {
+            return mVerdicts[verdict];
+        }
+
+        /**
+         * @return number of peak/trough pairs measured by findAcRange
+         */
+        public int getAcRangeCount() {
+            return mAcRangeCount;
+        }
+
+        /**
+         * @return average findAcRange amplitude, 0 if none was measured
+         */
+        public double getMeanAcRange() {
+            return mAcRangeCount == 0 ? 0 : mAcRangeSum / mAcRangeCount;
+        }
+    }
+
+    /**
+     * Merged outcome of a batch, with traces in file name order.
+     */
+    public static final class Summary {
+
+        private final List<TraceResult> mTraces;
+        private final long[] mVerdicts;
+        private long mFrames;
+        private long mPeaks;
+        private long mTroughs;
+        private long mAcRangeCount;
+        private double mAcRangeSum;
+
+        Summary(List<TraceResult> traces) {
+            this.mTraces   = Collections.unmodifiableList(traces);
+            this.mVerdicts = new long[5];
+            for (TraceResult trace : traces) {
+                mFrames += trace.mFrames;
+                mPeaks += trace.mPeaks;
+                mTroughs += trace.mTroughs;
+                mAcRangeCount += trace.mAcRangeCount;
+                mAcRangeSum += trace.mAcRangeSum;
+                for (int v = 0; v < mVerdicts.length; v++) {
+                    mVerdicts[v] += trace.mVerdicts[v];
+                }
+            }
+        }
+
+        public List<TraceResult> getTraces() {
+            return mTraces;
+        }
+
+        public long getFrames() {
+            return mFrames;
+        }
+
+        public long getPeaks() {
+            return mPeaks;
+        }
+
+        public long getTroughs() {
+            return mTroughs;
+        }
+
+        /**
+         * @param verdict a checkDataQuality result (0 - 4)
+         * @return how many frames of all traces produced that result
+         */
+        public long getVerdictCount(int verdict) {
+            return mVerdicts[verdict];
+        }
+
+        public double getMeanAcRange() {
+            return mAcRangeCount == 0 ? 0 : mAcRangeSum / mAcRangeCount;
+        }
+    }
+}
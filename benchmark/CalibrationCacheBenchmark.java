@@ -0,0 +1,104 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Locale;
+
+/**
+ * Time to the first checkDataQuality verdict with and without a
+ * CalibrationCache. Every simulated user records a first session,
+ * which calibrates from scratch and stores its thresholds, and then
+ * a second session that is run twice: once calibrating from scratch
+ * and once started from the cache. Frames are converted to seconds
+ * at the synthetic trace frame rate.
+ *
+ * Also reports how often the verdicts of the cached session agree
+ * with the uncached one once both have produced verdicts, and how
+ * often revalidation changed the cached signal width.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.CalibrationCacheBenchmark
+ */
+public final class CalibrationCacheBenchmark {
+
+    private static final int USERS = 200;
+    private static final int FRAMES = 900;
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+
+    private CalibrationCacheBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        CalibrationCache cache = new CalibrationCache(USERS, 30L * 24 * 60 * 60 * 1000);
+        for (SyntheticTrace.Scenario scenario
+                : new SyntheticTrace.Scenario[] {SyntheticTrace.Scenario.CLEAN, SyntheticTrace.Scenario.NOISY}) {
+            long coldFrames = 0;
+            long warmFrames = 0;
+            long agreeing = 0;
+            long compared = 0;
+            int widthChanged = 0;
+            int sessions = 0;
+            for (int user = 0; user < USERS; user++) {
+                String key = scenario + "/user-" + user + "/device";
+                SyntheticTrace first = SyntheticTrace.generate(scenario, FRAMES, 2 * user);
+                AnemiaDetection detector = new AnemiaDetection(1);
+                int[] verdicts = new int[FRAMES];
+                replay(detector, first, verdicts);
+                if (!cache.store(key, detector)) {
+                    continue;
+                }
+
+                SyntheticTrace second = SyntheticTrace.generate(scenario, FRAMES, 2 * user + 1);
+                int[] cold = new int[FRAMES];
+                int coldFirst = replay(new AnemiaDetection(1), second, cold);
+                AnemiaDetection warmDetector = new AnemiaDetection(1);
+                int cachedWidth = cache.get(key).getSignalWidth();
+                cache.apply(key, warmDetector);
+                int[] warm = new int[FRAMES];
+                int warmFirst = replay(warmDetector, second, warm);
+                if (coldFirst < 0 || warmFirst < 0) {
+                    continue;
+                }
+                sessions++;
+                coldFrames += coldFirst;
+                warmFrames += warmFirst;
+                if (warmDetector.getSignalWidth() != cachedWidth) {
+                    widthChanged++;
+                }
+                for (int f = Math.max(coldFirst, warmFirst); f < FRAMES; f++) {
+                    if (cold[f] != 0 || warm[f] != 0) {
+                        compared++;
+                        if (cold[f] == warm[f]) {
+                            agreeing++;
+                        }
+                    }
+                }
+            }
+            System.out.println(String.format(Locale.US,
+                    "%-6s %d sessions: first verdict after %.2f s without cache, %.2f s with cache; "
+                    + "verdicts agree %.1f%%, signal width revised in %d sessions",
+                    scenario, sessions,
+                    coldFrames / (double) sessions / SyntheticTrace.FRAME_RATE,
+                    warmFrames / (double) sessions / SyntheticTrace.FRAME_RATE,
+                    100.0 * agreeing / Math.max(compared, 1), widthChanged));
+        }
+        System.out.println("cache hits " + cache.getHitCount() + ", misses " + cache.getMissCount());
+    }
+
+    /**
+     * Runs checkDataQuality over a trace.
+     *
+     * @return index of the first frame with a verdict, -1 if none
+     */
+    private static int replay(AnemiaDetection detector, SyntheticTrace trace, int[] verdicts) {
+        int first = -1;
+        for (int i = 0; i < trace.length(); i++) {
+            detector.updateFrameCount(i + 1);
+            verdicts[i] = detector.checkDataQuality(trace.red[i], trace.green[i], trace.blue[i],
+                                                    CONFIDENCE, START_FRAME);
+            if (verdicts[i] != 0 && first < 0) {
+                first = i;
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,62 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Locale;
+
+/**
+ * Counts the peaks detectPeakTroughs finds on synthetic traces with
+ * the first order lowPassFilter / highPassFilter pair and with
+ * BiquadFilterChain band passes around the pulse band. The true rate
+ * is SyntheticTrace.HEART_RATE_HZ: extra peaks are noise or the
+ * dicrotic wave mistaken for a beat. ConditioningBenchmark (jmh/)
+ * measures what each stage costs.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.ConditioningReport
+ */
+public final class ConditioningReport {
+
+    private static final int TRACES = 50;
+    private static final int TRACE_FRAMES = 1800;
+    private static final int START_FRAME = 1;
+
+    private ConditioningReport() {
+    }
+
+    public static void main(String[] args) {
+        final BiquadFilterChain[] chains = {
+                BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 2),
+                BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 4),
+                BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 2.5, 4)
+        };
+        final String[] names = {"0.7-4 Hz order 2", "0.7-4 Hz order 4", "0.7-2.5 Hz order 4"};
+
+        double expected = SyntheticTrace.HEART_RATE_HZ * TRACE_FRAMES / SyntheticTrace.FRAME_RATE;
+        for (SyntheticTrace.Scenario scenario : new SyntheticTrace.Scenario[] {
+                SyntheticTrace.Scenario.CLEAN, SyntheticTrace.Scenario.NOISY,
+                SyntheticTrace.Scenario.PARTIAL_COVER}) {
+            StringBuilder line = new StringBuilder(String.format(Locale.US,
+                    "%-13s peaks per trace (true %.0f): first order %.1f", scenario, expected,
+                    peaksPerTrace(scenario, null)));
+            for (int c = 0; c < chains.length; c++) {
+                line.append(String.format(Locale.US, ", %s %.1f", names[c], peaksPerTrace(scenario, chains[c])));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static double peaksPerTrace(SyntheticTrace.Scenario scenario, BiquadFilterChain chain) {
+        long peaks = 0;
+        for (int t = 0; t < TRACES; t++) {
+            SyntheticTrace trace = SyntheticTrace.generate(scenario, TRACE_FRAMES, 100 + t);
+            AnemiaDetection detector = new AnemiaDetection(1);
+            detector.setConditioningFilter(chain == null ? null : chain.copy());
+            PeakTroughEvents events = detector.detectPeakTroughs(trace.red, 0, TRACE_FRAMES, START_FRAME);
+            for (int i = 0; i < events.size(); i++) {
+                if (events.getType(i) == AnemiaDetection.PEAK) {
+                    peaks++;
+                }
+            }
+        }
+        return peaks / (double) TRACES;
+    }
+}
@@ -0,0 +1,221 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Verifies FixedPointDetector against AnemiaDetection on a corpus of
+ * recorded traces (files in the TraceBatchRunner format, or
+ * directories of them). Without paths a synthetic corpus is used.
+ *
+ * Every red average is turned into an integer red sum over a VGA
+ * frame, the way FrameReducer delivers it. The double detector gets
+ * sum / pixels and the fixed point detector gets the sum and pixel
+ * count. Per trace the tool checks that the high pass outputs never
+ * differ by more than FixedPointDetector.getFilterErrorBound for the
+ * swing seen on that trace. It then compares the peak and trough
+ * points and the cost per frame of both detectors. The timing only
+ * holds for the JVM it runs on; on a desktop JIT the fixed point
+ * detector is slower than the double one. Exits with status 1 if
+ * the bound is exceeded anywhere.
+ *
+ * The synthetic corpus only shows the tool works: its error and
+ * point figures say nothing about real camera noise. Results are
+ * labelled with the corpus they came from, and only figures from
+ * recorded traces should be quoted.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.FixedPointVerifier [--bits n] [trace files or directories]
+ */
+public final class FixedPointVerifier {
+
+    private static final int PIXELS = 640 * 480;
+    private static final int START_FRAME = 1;
+    private static final int SYNTHETIC_TRACES = 25;
+    private static final int SYNTHETIC_FRAMES = 1800;
+    private static final int TIMING_ROUNDS = 5;
+
+    private final int mFractionBits;
+    private final boolean mSynthetic;
+    private long mFrames;
+    private int mTraces;
+    private int mBoundExceeded;
+    private double mMaxError;
+    private double mMaxBound;
+    private double mWorstRatio;
+    private long mDoubleEvents;
+    private long mFixedEvents;
+    private long mMatchedEvents;
+    private double mMaxValueError;
+
+    private FixedPointVerifier(int fractionBits, boolean synthetic) {
+        this.mFractionBits = fractionBits;
+        this.mSynthetic    = synthetic;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int bits = FixedPointDetector.DEFAULT_FRACTION_BITS;
+        List<Path> files = new ArrayList<Path>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--bits".equals(args[i]) && i + 1 < args.length) {
+                bits = Integer.parseInt(args[++i]);
+            } else {
+                addTraces(Paths.get(args[i]), files);
+            }
+        }
+        List<double[]> corpus = new ArrayList<double[]>();
+        if (files.isEmpty()) {
+            System.out.println("No traces given, using a SYNTHETIC corpus (not recorded data)");
+            for (SyntheticTrace.Scenario scenario : SyntheticTrace.Scenario.values()) {
+                for (int t = 0; t < SYNTHETIC_TRACES; t++) {
+                    corpus.add(SyntheticTrace.generate(scenario, SYNTHETIC_FRAMES, 1000 + t).red);
+                }
+            }
+        } else {
+            for (Path file : files) {
+                corpus.add(TraceBatchRunner.readTrace(file)[0]);
+            }
+        }
+
+        FixedPointVerifier verifier = new FixedPointVerifier(bits, files.isEmpty());
+        long[][] sums = new long[corpus.size()][];
+        for (int t = 0; t < corpus.size(); t++) {
+            sums[t] = toSums(corpus.get(t));
+            verifier.verify(sums[t]);
+        }
+        verifier.report();
+        verifier.time(sums);
+        if (verifier.mBoundExceeded > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void verify(long[] sums) {
+        AnemiaDetection reference = new AnemiaDetection(1);
+        FixedPointDetector fixed = new FixedPointDetector(1, DetectorParameters.DEFAULT, mFractionBits);
+        double[] point = new double[3];
+        int[] fixedPoint = new int[3];
+        List<Long> referencePoints = new ArrayList<Long>();
+        List<Long> fixedPoints = new ArrayList<Long>();
+        double error = 0;
+        double swing = 0;
+        for (int f = 0; f < sums.length; f++) {
+            double rAvg = sums[f] / (double) PIXELS;
+            reference.updateFrameCount(f + 1);
+            int type = reference.detectPeakTrough(rAvg, START_FRAME, point);
+            fixed.updateFrameCount(f + 1);
+            int fixedType = fixed.detectPeakTrough(sums[f], PIXELS, START_FRAME, fixedPoint);
+            if (f + 1 > START_FRAME + 2) {
+                error = Math.max(error, Math.abs(fixed.toDouble(fixed.getHpfOutput()) - reference.getHpfOutput()));
+                swing = Math.max(swing, Math.max(Math.abs(rAvg - reference.getLpfOutput()),
+                                                 Math.abs(reference.getHpfOutput())));
+            }
+            if (type != 0) {
+                referencePoints.add(key(type, (int) point[1]));
+            }
+            if (fixedType != 0) {
+                fixedPoints.add(key(fixedType, fixedPoint[1]));
+                if (type == fixedType && (int) point[1] == fixedPoint[1]) {
+                    mMaxValueError = Math.max(mMaxValueError, Math.abs(fixed.toDouble(fixedPoint[2]) - point[2]));
+                }
+            }
+        }
+        double bound = fixed.getFilterErrorBound(swing);
+        if (error > bound) {
+            mBoundExceeded++;
+        }
+        mTraces++;
+        mFrames += sums.length;
+        mMaxError = Math.max(mMaxError, error);
+        mMaxBound = Math.max(mMaxBound, bound);
+        mWorstRatio = Math.max(mWorstRatio, error / bound);
+        mDoubleEvents += referencePoints.size();
+        mFixedEvents += fixedPoints.size();
+        fixedPoints.retainAll(referencePoints);
+        mMatchedEvents += fixedPoints.size();
+    }
+
+    private void report() {
+        System.out.println(String.format(Locale.US, "%s corpus, %d fraction bits, %d traces, %d frames",
+                                         mSynthetic ? "synthetic" : "recorded",
+                mFractionBits, mTraces, mFrames));
+        System.out.println(String.format(Locale.US,
+                "high pass error: max %.3g RGB units, largest bound %.3g, worst error / bound %.3f, "
+                + "traces over the bound %d", mMaxError, mMaxBound, mWorstRatio, mBoundExceeded));
+        System.out.println(String.format(Locale.US,
+                "points: double %d, fixed %d, identical %d (%.3f%%), red value error max %.3g",
+                mDoubleEvents, mFixedEvents, mMatchedEvents,
+                100.0 * mMatchedEvents / Math.max(1, Math.max(mDoubleEvents, mFixedEvents)), mMaxValueError));
+    }
+
+    private void time(long[][] sums) {
+        double[] point = new double[3];
+        int[] fixedPoint = new int[3];
+        long doubleNanos = 0;
+        long fixedNanos = 0;
+        long sink = 0;
+        for (int round = 0; round < TIMING_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long[] trace : sums) {
+                AnemiaDetection detector = new AnemiaDetection(1);
+                for (int f = 0; f < trace.length; f++) {
+                    detector.updateFrameCount(f + 1);
+                    sink += detector.detectPeakTrough(trace[f] / (double) PIXELS, START_FRAME, point);
+                }
+            }
+            long middle = System.nanoTime();
+            for (long[] trace : sums) {
+                FixedPointDetector detector = new FixedPointDetector(1, DetectorParameters.DEFAULT, mFractionBits);
+                for (int f = 0; f < trace.length; f++) {
+                    detector.updateFrameCount(f + 1);
+                    sink += detector.detectPeakTrough(trace[f], PIXELS, START_FRAME, fixedPoint);
+                }
+            }
+            long end = System.nanoTime();
+            if (round > 0) {
+                doubleNanos += middle - start;
+                fixedNanos += end - middle;
+            }
+        }
+        double frames = (double) mFrames * (TIMING_ROUNDS - 1);
+        System.out.println(String.format(Locale.US,
+                "per frame on this JVM: double %.1f ns, fixed point %.1f ns (%d)",
+                doubleNanos / frames, fixedNanos / frames, sink & 1));
+    }
+
+    private static long key(int type, int frame) {
+        return ((long) frame << 2) | type;
+    }
+
+    private static long[] toSums(double[] red) {
+        long[] sums = new long[red.length];
+        for (int i = 0; i < red.length; i++) {
+            sums[i] = Math.round(Math.min(255, Math.max(0, red[i])) * PIXELS);
+        }
+        return sums;
+    }
+
+    private static void addTraces(Path path, List<Path> files) throws IOException {
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+        List<Path> found = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    found.add(file);
+                }
+            }
+        }
+        Collections.sort(found);
+        files.addAll(found);
+    }
+}
@@ -0,0 +1,137 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * End to end latency of peak and trough events: frames between a
+ * point and the frame whose detectPeakTrough call tells about it,
+ * and the same in milliseconds at SyntheticTrace.FRAME_RATE.
+ * Confirmed only is what detectPeakTrough returns; tentative and
+ * confirmed are the calls a PeakTroughListener gets. The time the
+ * call itself takes is measured by PredictiveLatencyBenchmark
+ * (jmh/).
+ *
+ * Also counts tentative points that were retracted, and checks that
+ * the confirmed points are exactly the detectPeakTrough points and
+ * that each of them was announced as tentative first.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.PredictiveLatencyReport
+ */
+public final class PredictiveLatencyReport {
+
+    private static final int TRACES = 50;
+    private static final int TRACE_FRAMES = 1800;
+    private static final int START_FRAME = 1;
+
+    private PredictiveLatencyReport() {
+    }
+
+    public static void main(String[] args) {
+        for (SyntheticTrace.Scenario scenario : new SyntheticTrace.Scenario[] {
+                SyntheticTrace.Scenario.CLEAN, SyntheticTrace.Scenario.NOISY,
+                SyntheticTrace.Scenario.PARTIAL_COVER}) {
+            Latencies latencies = new Latencies();
+            int mismatches = 0;
+            for (int t = 0; t < TRACES; t++) {
+                mismatches += latencies.run(SyntheticTrace.generate(scenario, TRACE_FRAMES, 300 + t).red);
+            }
+            System.out.println(String.format(Locale.US,
+                    "%-13s %d points, %d tentative, %d retracted (%.1f%%), %d not announced, %d mismatches",
+                    scenario, latencies.mPoints, latencies.mTentatives, latencies.mRetracted,
+                    100.0 * latencies.mRetracted / Math.max(1, latencies.mTentatives),
+                    latencies.mNotAnnounced, mismatches));
+            print("confirmed only", latencies.mPointDelay, latencies.mPoints);
+            print("confirmed", latencies.mConfirmedDelay, latencies.mPoints);
+            print("tentative", latencies.mTentativeDelay, latencies.mTentatives);
+        }
+    }
+
+    private static void print(String mode, long frames, long events) {
+        double mean = frames / (double) Math.max(1, events);
+        System.out.println(String.format(Locale.US, "    %-15s %.2f frames, %.1f ms", mode, mean,
+                                         mean * 1000 / SyntheticTrace.FRAME_RATE));
+    }
+
+    /**
+     * Collects the events of every trace run through it.
+     */
+    private static final class Latencies implements PeakTroughListener {
+
+        private int mFrame;
+        private long mPoints;
+        private long mTentatives;
+        private long mRetracted;
+        private long mNotAnnounced;
+        private long mPointDelay;
+        private long mConfirmedDelay;
+        private long mTentativeDelay;
+        private final Set<Long> mOpen = new HashSet<Long>();
+        private final Set<Long> mConfirmed = new HashSet<Long>();
+
+        /**
+         * @return points found by only one of detectPeakTrough and
+         *         the listener
+         */
+        int run(double[] red) {
+            AnemiaDetection detector = new AnemiaDetection(1);
+            detector.setPeakTroughListener(this);
+            double[] result = new double[3];
+            Set<Long> points = new HashSet<Long>();
+            mOpen.clear();
+            mConfirmed.clear();
+            for (int f = 0; f < red.length; f++) {
+                mFrame = f + 1;
+                detector.updateFrameCount(mFrame);
+                int type = detector.detectPeakTrough(red[f], START_FRAME, result);
+                if (type != 0) {
+                    mPoints++;
+                    mPointDelay += mFrame - (int) result[1];
+                    points.add(key(type, (int) result[1]));
+                }
+            }
+            int mismatches = 0;
+            for (Long point : points) {
+                if (!mConfirmed.contains(point)) {
+                    mismatches++;
+                }
+            }
+            for (Long point : mConfirmed) {
+                // detectPeakTrough would report a point confirmed on
+                // the last frame after the end of the trace
+                if (!points.contains(point) && (point >> 2) < red.length - AnemiaDetection.MAPPING + 1) {
+                    mismatches++;
+                }
+            }
+            return mismatches;
+        }
+
+        @Override
+        public void onTentative(int type, int frame, double rVal) {
+            mTentatives++;
+            mTentativeDelay += mFrame - frame;
+            mOpen.add(key(type, frame));
+        }
+
+        @Override
+        public void onConfirmed(int type, int frame, double rVal) {
+            mConfirmedDelay += mFrame - frame;
+            mConfirmed.add(key(type, frame));
+            if (!mOpen.remove(key(type, frame))) {
+                mNotAnnounced++;
+            }
+        }
+
+        @Override
+        public void onRetracted(int type, int frame) {
+            mRetracted++;
+            mOpen.remove(key(type, frame));
+        }
+
+        private static long key(int type, int frame) {
+            return ((long) frame << 2) | type;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Reduces raw frame dumps on a workstation and feeds them, in the
+ * order given, through checkDataQuality.
+ *
+ * Usage:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.RawFrameTool \
+ *        rgba|nv21 width height frame0.raw [frame1.raw ...]
+ *
+ * RGBA dumps are expected without row padding (row stride = 4 * width).
+ */
+public final class RawFrameTool {
+
+    private RawFrameTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("usage: RawFrameTool rgba|nv21 width height frame.raw...");
+            System.exit(2);
+        }
+        String format = args[0];
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        FrameReducer reducer = new FrameReducer();
+        AnemiaDetection detector = new AnemiaDetection(1);
+        for (int i = 3; i < args.length; i++) {
+            ByteBuffer frame = FrameReducer.loadRawFrame(Paths.get(args[i]));
+            if ("rgba".equals(format)) {
+                reducer.reduceRgba(frame, width, height, width * 4);
+            } else if ("nv21".equals(format)) {
+                reducer.reduceNv21(frame, width, height);
+            } else {
+                throw new IllegalArgumentException("unknown format " + format);
+            }
+            detector.updateFrameCount(i - 2);
+            int verdict = reducer.feed(detector, 5, 0);
+            System.out.println(String.format(Locale.US, "%s r=%.4f g=%.4f b=%.4f verdict=%d",
+                    args[i], reducer.getRedAverage(), reducer.getGreenAverage(),
+                    reducer.getBlueAverage(), verdict));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Accuracy of sampled frame reduction. Reduces the same RGBA frame
+ * at several sample steps, with and without a centred region of
+ * interest, and prints the red mean, its deviation from the exact
+ * (step 1) mean of the same region and the standard error the
+ * reducer reports (square root of getRedMeanError).
+ * SamplingBenchmark (jmh/) measures what each step costs.
+ *
+ * Run with a synthetic 1080p frame:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.SamplingReport
+ * or with a recorded RGBA frame dump:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.SamplingReport width height frame.raw
+ */
+public final class SamplingReport {
+
+    private static final int[] STEPS = {1, 2, 4, 8, 16, 32};
+
+    private SamplingReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        final int width;
+        final int height;
+        final ByteBuffer frame;
+        if (args.length == 3) {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+            frame = FrameReducer.loadRawFrame(Paths.get(args[2]));
+        } else {
+            width = 1920;
+            height = 1080;
+            frame = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+            fillVignettedFrame(frame, width, height);
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            double reference = 0;
+            for (final int step : STEPS) {
+                final FrameReducer reducer = new FrameReducer();
+                reducer.setSampleStep(step);
+                String label = "step " + step;
+                if (pass == 1) {
+                    reducer.setRegionOfInterest(width / 4, height / 4, 3 * width / 4, 3 * height / 4);
+                    label += ", centre ROI";
+                }
+                reducer.reduceRgba(frame, width, height, width * 4);
+                if (step == 1) {
+                    reference = reducer.getRedAverage();
+                }
+                System.out.println(String.format(Locale.US,
+                        "%-18s red mean %.4f  |error| %.4f  reported std. error %.4f  (%d px)",
+                        label, reducer.getRedAverage(), Math.abs(reducer.getRedAverage() - reference),
+                        Math.sqrt(reducer.getRedMeanError()), reducer.getPixelCount()));
+            }
+        }
+    }
+
+    /**
+     * Fingertip frame whose brightness falls off towards the edges,
+     * as it does with the flash next to the lens.
+     */
+    static void fillVignettedFrame(ByteBuffer frame, int width, int height) {
+        java.util.Random random = new java.util.Random(5);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double dx = (col - width / 2.0) / width;
+                double dy = (row - height / 2.0) / height;
+                double falloff = 1 - 1.2 * (dx * dx + dy * dy);
+                int index = 4 * (row * width + col);
+                frame.put(index, (byte) Math.max(0, Math.min(255, (int) (250 * falloff + 12 * random.nextGaussian()))));
+                frame.put(index + 1, (byte) random.nextInt(6));
+                frame.put(index + 2, (byte) random.nextInt(6));
+                frame.put(index + 3, (byte) 255);
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Loopback load generator for SessionServer. Opens a number of
+ * sessions from one thread, and then streams a synthetic PPG trace
+ * on every session at a fixed frame rate, one frame per session per
+ * tick. Every RESULT is checked against local AnemiaDetection
+ * objects fed with the same (float rounded) values, except on
+ * sessions that had to skip a frame because the server fell behind
+ * and their send buffer was full. The time from sending a session's
+ * latest frame to receiving its result is recorded.
+ *
+ * Without a host the generator starts a server in the same JVM.
+ * Each TCP connection from a single source address to the server
+ * port needs its own ephemeral port, so sessions are spread over
+ * the source addresses 127.0.0.1, 127.0.0.2, ... (Linux routes all
+ * of 127/8 to loopback). Both sides need a file descriptor per
+ * session: for 50000 sessions in one JVM raise the limit
+ * (ulimit -n) above 100000, or run the server in its own JVM, e.g.
+ * VirtualThreadSessionServer with its main.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.SessionLoadGenerator [sessions [frames [fps [host port]]]]
+ */
+public final class SessionLoadGenerator {
+
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+    private static final int SESSIONS_PER_SOURCE = 20000;
+    private static final int OFFSETS = 64;
+
+    private final int mSessions;
+    private final int mFrames;
+    private final SyntheticTrace mTrace;
+    private final int[][] mExpected;
+
+    private final SocketChannel[] mChannels;
+    private final ByteBuffer[] mOut;
+    private final ByteBuffer[] mIn;
+    private final int[] mSent;
+    private final int[] mReceived;
+    private final boolean[] mSkipped;
+    private final long[] mSendTime;
+    private final long[] mLatencies;
+    private int mLatencyCount;
+    private long mMismatches;
+    private long mResults;
+    private int mConnected;
+
+    private SessionLoadGenerator(int sessions, int frames) {
+        this.mSessions  = sessions;
+        this.mFrames    = frames;
+        this.mTrace     = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, frames + OFFSETS, 21);
+        this.mExpected  = expectedResults();
+        this.mChannels  = new SocketChannel[sessions];
+        this.mOut       = new ByteBuffer[sessions];
+        this.mIn        = new ByteBuffer[sessions];
+        this.mSent      = new int[sessions];
+        this.mReceived  = new int[sessions];
+        this.mSkipped   = new boolean[sessions];
+        this.mSendTime  = new long[sessions];
+        this.mLatencies = new long[sessions * frames];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        double fps = args.length > 2 ? Double.parseDouble(args[2]) : 30;
+
+        SessionServer server = null;
+        InetSocketAddress address;
+        if (args.length > 4) {
+            address = new InetSocketAddress(args[3], Integer.parseInt(args[4]));
+        } else {
+            server = new SessionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                                       Runtime.getRuntime().availableProcessors());
+            server.start();
+            address = server.getAddress();
+        }
+        try {
+            new SessionLoadGenerator(sessions, frames).run(address, fps, server);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void run(InetSocketAddress address, double fps, SessionServer server) throws IOException {
+        Selector selector = Selector.open();
+        long start = System.nanoTime();
+        for (int s = 0; s < mSessions; s++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.bind(new InetSocketAddress(sourceAddress(s / SESSIONS_PER_SOURCE), 0));
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, s);
+            mChannels[s] = channel;
+            mOut[s] = ByteBuffer.allocate(256);
+            mIn[s] = ByteBuffer.allocate(256);
+            mOut[s].put(SessionServer.MSG_HELLO).put((byte) CONFIDENCE).putInt(START_FRAME);
+            if ((s & 1023) == 1023) {
+                poll(selector, 0);
+            }
+        }
+        while (mConnected < mSessions) {
+            poll(selector, 10);
+        }
+        System.out.println(String.format(Locale.US, "%d sessions connected in %.1f s", mSessions,
+                (System.nanoTime() - start) / 1e9));
+        if (server != null) {
+            System.out.println("server sessions: " + server.getSessionCount());
+        }
+
+        final long tick = (long) (1e9 / fps);
+        long nextTick = System.nanoTime();
+        start = nextTick;
+        int frame = 0;
+        long slow = 0;
+        while (frame < mFrames || !done()) {
+            long now = System.nanoTime();
+            if (frame < mFrames && now >= nextTick) {
+                for (int s = 0; s < mSessions; s++) {
+                    if (mOut[s].remaining() < SessionServer.FRAME_SIZE) {
+                        mSkipped[s] = true;
+                        slow++;
+                        continue;
+                    }
+                    int sample = frame + s % OFFSETS;
+                    mOut[s].put(SessionServer.MSG_FRAME).putInt(frame + 1)
+                           .putFloat((float) mTrace.red[sample])
+                           .putFloat((float) mTrace.green[sample])
+                           .putFloat((float) mTrace.blue[sample]);
+                    mSent[s] = frame + 1;
+                    mSendTime[s] = now;
+                    write(selector, s);
+                }
+                frame++;
+                nextTick += tick;
+            }
+            poll(selector, Math.max(1, (nextTick - System.nanoTime()) / 1000000));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = Arrays.copyOf(mLatencies, mLatencyCount);
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.US,
+                "%d results in %.1f s (%.0f frames/s), mismatches %d, frames skipped by a full buffer %d",
+                mResults, seconds, mResults / seconds, mMismatches, slow));
+        if (latencies.length > 0) {
+            System.out.println(String.format(Locale.US, "latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6,
+                    latencies[latencies.length - 1] / 1e6));
+        }
+        for (SocketChannel channel : mChannels) {
+            channel.close();
+        }
+        selector.close();
+    }
+
+    private boolean done() {
+        for (int s = 0; s < mSessions; s++) {
+            if (mReceived[s] < mSent[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void poll(Selector selector, long timeoutMillis) throws IOException {
+        if (timeoutMillis == 0) {
+            selector.selectNow();
+        } else {
+            selector.select(timeoutMillis);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            int s = (Integer) key.attachment();
+            if (key.isConnectable()) {
+                mChannels[s].finishConnect();
+                mConnected++;
+                key.interestOps(SelectionKey.OP_READ);
+                write(selector, s);
+                continue;
+            }
+            if (key.isWritable()) {
+                write(selector, s);
+            }
+            if (key.isReadable()) {
+                read(s);
+            }
+        }
+    }
+
+    private void write(Selector selector, int s) throws IOException {
+        SelectionKey key = mChannels[s].keyFor(selector);
+        if (!mChannels[s].isConnected()) {
+            return;
+        }
+        ByteBuffer out = mOut[s];
+        out.flip();
+        mChannels[s].write(out);
+        out.compact();
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void read(int s) throws IOException {
+        ByteBuffer in = mIn[s];
+        if (mChannels[s].read(in) < 0) {
+            throw new IOException("session " + s + " closed by the server");
+        }
+        in.flip();
+        while (in.remaining() >= SessionServer.RESULT_SIZE) {
+            if (in.get() != SessionServer.MSG_RESULT) {
+                throw new IOException("unexpected message on session " + s);
+            }
+            int frame = in.getInt();
+            int verdict = in.get();
+            int type = in.get();
+            int eventFrame = in.getInt();
+            float eventValue = in.getFloat();
+            int[] expected = mExpected[s % OFFSETS];
+            int index = 3 * (frame - 1);
+            if (frame <= mReceived[s]) {
+                throw new IOException("results out of order on session " + s);
+            }
+            if (!mSkipped[s] && (verdict != expected[index] || type != expected[index + 1]
+                    || (type != 0 && eventFrame != expected[index + 2]))) {
+                mMismatches++;
+            }
+            mReceived[s] = frame;
+            mResults++;
+            if (frame == mSent[s]) {
+                mLatencies[mLatencyCount++] = System.nanoTime() - mSendTime[s];
+            }
+            // The event value is the float r value of the event frame
+            if (!mSkipped[s] && type != 0 && eventValue != (float) mTrace.red[eventFrame - 1 + s % OFFSETS]) {
+                mMismatches++;
+            }
+        }
+        in.compact();
+    }
+
+    /**
+     * Verdict, event type and event frame of every frame for each
+     * offset into the trace, from local detectors.
+     */
+    private int[][] expectedResults() {
+        int[][] expected = new int[OFFSETS][3 * mFrames];
+        double[] result = new double[3];
+        for (int offset = 0; offset < OFFSETS; offset++) {
+            AnemiaDetection quality = new AnemiaDetection(1);
+            AnemiaDetection events = new AnemiaDetection(1);
+            for (int f = 0; f < mFrames; f++) {
+                double rVal = (float) mTrace.red[f + offset];
+                double gVal = (float) mTrace.green[f + offset];
+                double bVal = (float) mTrace.blue[f + offset];
+                quality.updateFrameCount(f + 1);
+                expected[offset][3 * f] = quality.checkDataQuality(rVal, gVal, bVal, CONFIDENCE, START_FRAME);
+                events.updateFrameCount(f + 1);
+                expected[offset][3 * f + 1] = events.detectPeakTrough(rVal, START_FRAME, result);
+                expected[offset][3 * f + 2] = (int) result[1];
+            }
+        }
+        return expected;
+    }
+
+    private static InetAddress sourceAddress(int index) throws IOException {
+        return InetAddress.getByAddress(new byte[] {127, 0, 0, (byte) (1 + index)});
+    }
+}
@@ -0,0 +1,89 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Random;
+
+/**
+ * Synthetic per-frame channel averages that resemble what the
+ * camera delivers while a finger rests on the lens with the flash
+ * on. The red channel carries a PPG waveform (systolic peak plus a
+ * dicrotic notch) at a 72 bpm heart rate sampled at 30 fps.
+ */
+final class SyntheticTrace {
+
+    enum Scenario {
+        /** Finger fully covers lens, little noise. */
+        CLEAN,
+        /** Finger fully covers lens, sensor noise and baseline wander. */
+        NOISY,
+        /** No finger, the camera sees the room. */
+        FINGER_OFF,
+        /** Finger covers part of the lens, green and blue leak in. */
+        PARTIAL_COVER
+    }
+
+    static final double FRAME_RATE = 30;
+    static final double HEART_RATE_HZ = 1.2;
+
+    final Scenario scenario;
+    final double[] red;
+    final double[] green;
+    final double[] blue;
+
+    private SyntheticTrace(Scenario scenario, int length) {
+        this.scenario = scenario;
+        this.red = new double[length];
+        this.green = new double[length];
+        this.blue = new double[length];
+    }
+
+    int length() {
+        return red.length;
+    }
+
+    static SyntheticTrace generate(Scenario scenario, int length, long seed) {
+        SyntheticTrace trace = new SyntheticTrace(scenario, length);
+        Random random = new Random(seed);
+        for (int i = 0; i < length; i++) {
+            double t = i / FRAME_RATE;
+            double pulse = ppg(t);
+            double wander = Math.sin(2 * Math.PI * 0.1 * t);
+            switch (scenario) {
+                case CLEAN:
+                    trace.red[i] = 200 + 1.5 * pulse + 0.05 * random.nextGaussian();
+                    trace.green[i] = 1 + 0.2 * random.nextDouble();
+                    trace.blue[i] = 1 + 0.2 * random.nextDouble();
+                    break;
+                case NOISY:
+                    trace.red[i] = 200 + 1.5 * pulse + 2 * wander + 0.6 * random.nextGaussian();
+                    trace.green[i] = 2 + random.nextDouble();
+                    trace.blue[i] = 2 + random.nextDouble();
+                    break;
+                case FINGER_OFF:
+                    trace.red[i] = 120 + 8 * random.nextGaussian();
+                    trace.green[i] = 110 + 8 * random.nextGaussian();
+                    trace.blue[i] = 100 + 8 * random.nextGaussian();
+                    break;
+                case PARTIAL_COVER:
+                    trace.red[i] = 180 + 0.7 * pulse + wander + 0.4 * random.nextGaussian();
+                    trace.green[i] = 25 + 3 * random.nextDouble();
+                    trace.blue[i] = 30 + 3 * random.nextDouble();
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+            trace.red[i] = Math.max(0, trace.red[i]);
+            trace.green[i] = Math.max(0, trace.green[i]);
+            trace.blue[i] = Math.max(0, trace.blue[i]);
+        }
+        return trace;
+    }
+
+    /**
+     * Normalised PPG shape: a systolic peak followed by a smaller
+     * diastolic wave, roughly in [-1, 1].
+     */
+    private static double ppg(double t) {
+        double phase = 2 * Math.PI * HEART_RATE_HZ * t;
+        return Math.sin(phase) + 0.35 * Math.sin(2 * phase - 0.8) + 0.1 * Math.sin(3 * phase - 1.6);
+    }
+}
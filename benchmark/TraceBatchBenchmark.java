@@ -0,0 +1,77 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes a directory of synthetic recorded sessions with skewed
+ * lengths (a few very long recordings among many short ones) and
+ * times TraceBatchRunner on it with 1, 2, 4 ... up to the number
+ * of available processors.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.TraceBatchBenchmark [traces]
+ */
+public final class TraceBatchBenchmark {
+
+    private TraceBatchBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int traces = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path directory = Files.createTempDirectory("traces");
+        Random random = new Random(3);
+        SyntheticTrace.Scenario[] scenarios = SyntheticTrace.Scenario.values();
+        for (int t = 0; t < traces; t++) {
+            int length = t % 20 == 0 ? 60000 : 1800 + random.nextInt(3600);
+            SyntheticTrace trace = SyntheticTrace.generate(scenarios[t % scenarios.length], length, t);
+            Path file = directory.resolve(String.format(Locale.US, "trace-%04d.csv", t));
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("r,g,b\n");
+                for (int i = 0; i < length; i++) {
+                    writer.write(String.format(Locale.US, "%.4f,%.4f,%.4f%n",
+                            trace.red[i], trace.green[i], trace.blue[i]));
+                }
+            }
+        }
+
+        TraceBatchRunner.Summary reference = null;
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, processors)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            TraceBatchRunner runner = new TraceBatchRunner(pool, 5, 0);
+            runner.run(directory); // warm up
+            long start = System.nanoTime();
+            TraceBatchRunner.Summary summary = runner.run(directory);
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+            System.out.println(String.format(Locale.US,
+                    "parallelism %2d: %8.1f ms, %d frames, %d peaks, %d troughs, verdicts 1-4 %d/%d/%d/%d",
+                    parallelism, elapsed / 1e6, summary.getFrames(), summary.getPeaks(), summary.getTroughs(),
+                    summary.getVerdictCount(1), summary.getVerdictCount(2),
+                    summary.getVerdictCount(3), summary.getVerdictCount(4)));
+            if (reference != null && (reference.getPeaks() != summary.getPeaks()
+                    || reference.getMeanAcRange() != summary.getMeanAcRange())) {
+                throw new AssertionError("summary depends on parallelism");
+            }
+            reference = summary;
+            if (parallelism == processors) {
+                break;
+            }
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,62 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-frame cost of the confidence classification
+ * stage of checkDataQuality once calibration has finished, i.e.
+ * the path that runs for every frame of a session.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main ClassificationBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+
+    private static final int TRACE_LENGTH = 4096;
+    private static final int CONFIDENCE = 5;
+    private static final double[] GREEN = {2, 2, 20, 70};
+
+    private double[] mTrace;
+    private AnemiaDetection mDetector;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mTrace = new double[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            mTrace[i] = 150 + 2 * Math.sin(2 * Math.PI * i / 25.0) + 0.2 * Math.sin(i * 1.7);
+        }
+        mDetector = new AnemiaDetection(1);
+        for (int frame = 1; frame <= TRACE_LENGTH; frame++) {
+            mDetector.updateFrameCount(frame);
+            mDetector.checkDataQuality(mTrace[frame - 1], 2, 2, CONFIDENCE, 0);
+        }
+        mFrame = TRACE_LENGTH;
+    }
+
+    @Benchmark
+    public int checkDataQuality() {
+        mFrame++;
+        mDetector.updateFrameCount(mFrame);
+        double g = GREEN[(mFrame >> 6) & 3];
+        return mDetector.checkDataQuality(mTrace[mFrame & (TRACE_LENGTH - 1)], g, g, CONFIDENCE, 0);
+    }
+}
@@ -0,0 +1,123 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the first order lowPassFilter / highPassFilter pair of
+ * AnemiaDetection with BiquadFilterChain band passes around the
+ * pulse band: the cost per sample of the filters alone, per sample
+ * and in bulk, and of detectPeakTroughs with each conditioning
+ * stage. Every operation is one sample. ConditioningReport counts
+ * the peaks each stage finds.
+ *
+ * filter is "first-order" or low cut - high cut in Hz / order of a
+ * band pass chain.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main ConditioningBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditioningBenchmark {
+
+    private static final int SAMPLES = 4096;
+    private static final int START_FRAME = 1;
+
+    @Param({"first-order", "0.7-4/2", "0.7-4/4", "0.7-2.5/4"})
+    public String filter;
+
+    private double[] mRed;
+    private double[] mBlock;
+    private BiquadFilterChain mChain;
+    private PeakTroughEvents mEvents;
+    private double mLowPassSmoothing;
+    private double mHighPassGain;
+    private double mLpf;
+    private double mHpf;
+    private double mPrevLpf;
+    private int mSample;
+
+    @Setup
+    public void setUp() {
+        mRed = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, SAMPLES, 5).red;
+        mBlock = new double[SAMPLES];
+        mEvents = new PeakTroughEvents();
+        mChain = chain(filter);
+        if (mChain != null) {
+            mChain.reset(mRed[0]);
+        }
+        mLowPassSmoothing = DetectorParameters.DEFAULT.getLowPassSmoothing();
+        mHighPassGain = DetectorParameters.DEFAULT.getHighPassGain();
+        mLpf = mRed[0];
+        mPrevLpf = mRed[0];
+    }
+
+    /**
+     * @return the band pass described by name, null for first-order
+     */
+    static BiquadFilterChain chain(String name) {
+        if ("first-order".equals(name)) {
+            return null;
+        }
+        String[] band = name.split("[-/]");
+        return BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, Double.parseDouble(band[0]),
+                                          Double.parseDouble(band[1]), Integer.parseInt(band[2]));
+    }
+
+    @Benchmark
+    public double processSample() {
+        final double input = mRed[mSample++ & (SAMPLES - 1)];
+        if (mChain != null) {
+            return mChain.process(input);
+        }
+        return firstOrder(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double processBlock() {
+        System.arraycopy(mRed, 0, mBlock, 0, SAMPLES);
+        if (mChain != null) {
+            mChain.process(mBlock, 0, SAMPLES);
+        } else {
+            for (int i = 0; i < SAMPLES; i++) {
+                mBlock[i] = firstOrder(mBlock[i]);
+            }
+        }
+        return mBlock[SAMPLES - 1];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int detectPeakTroughs() {
+        AnemiaDetection detector = new AnemiaDetection(1);
+        detector.setConditioningFilter(mChain == null ? null : mChain.copy());
+        mEvents.clear();
+        return detector.detectPeakTroughs(mRed, 0, SAMPLES, START_FRAME, mEvents);
+    }
+
+    private double firstOrder(double input) {
+        mLpf = mLpf + (input - mLpf) / mLowPassSmoothing;
+        mHpf = mHighPassGain * (mHpf + mLpf - mPrevLpf);
+        mPrevLpf = mLpf;
+        return mHpf;
+    }
+}
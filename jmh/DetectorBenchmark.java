@@ -0,0 +1,136 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost and allocation rate of every public AnemiaDetection
+ * method on each synthetic trace scenario, plus the full lifecycle of
+ * checkDataQuality from a fresh detector through calibration into
+ * steady state (a new detector every SESSION_FRAMES frames). Every
+ * operation is one frame; the gc profiler reports the allocation as
+ * gc.alloc.rate.norm in bytes per frame.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main DetectorBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectorBenchmark {
+
+    private static final int TRACE_LENGTH = 8192;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+    private static final int SESSION_FRAMES = 600;
+    private static final int CONFIDENCE = 5;
+
+    @Param({"CLEAN", "NOISY", "FINGER_OFF", "PARTIAL_COVER"})
+    public String scenario;
+
+    private SyntheticTrace mTrace;
+    private AnemiaDetection mDetector;
+    private AnemiaDetection mQuality;
+    private AnemiaDetection mBulk;
+    private AnemiaDetection mLifecycle;
+    private PeakTroughEvents mEvents;
+    private double[] mResult;
+    private double[][] mAcInputs;
+    private int mFrame;
+    private int mQualityFrame;
+    private int mBulkFrame;
+    private int mLifecycleFrame;
+    private int mLifecycleOffset;
+
+    @Setup
+    public void setUp() {
+        mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.valueOf(scenario), TRACE_LENGTH, 42);
+        mDetector = new AnemiaDetection(1);
+        mQuality = new AnemiaDetection(1);
+        mBulk = new AnemiaDetection(1);
+        mEvents = new PeakTroughEvents(TRACE_LENGTH);
+        mResult = new double[3];
+        mFrame = 1;
+        mBulkFrame = 1;
+        mLifecycleFrame = SESSION_FRAMES;
+        // Inputs of findAcRange: the detector output of every frame
+        PeakTroughEvents events = new AnemiaDetection(1).detectPeakTroughs(mTrace.red, 0, TRACE_LENGTH, 0);
+        mAcInputs = new double[TRACE_LENGTH][3];
+        for (int i = 0; i < events.size(); i++) {
+            int frame = events.getFrame(i) & TRACE_MASK;
+            mAcInputs[frame][0] = events.getType(i);
+            mAcInputs[frame][1] = events.getFrame(i);
+            mAcInputs[frame][2] = events.getValue(i);
+        }
+    }
+
+    @Benchmark
+    public double detectPeakTrough() {
+        mDetector.updateFrameCount(++mFrame);
+        return mDetector.detectPeakTrough(mTrace.red[mFrame & TRACE_MASK], 0)[0];
+    }
+
+    @Benchmark
+    public int detectPeakTroughInto() {
+        mDetector.updateFrameCount(++mFrame);
+        return mDetector.detectPeakTrough(mTrace.red[mFrame & TRACE_MASK], 0, mResult);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_LENGTH)
+    public int detectPeakTroughs() {
+        mEvents.clear();
+        mBulk.updateFrameCount(mBulkFrame);
+        mBulkFrame += TRACE_LENGTH;
+        return mBulk.detectPeakTroughs(mTrace.red, 0, TRACE_LENGTH, 0, mEvents);
+    }
+
+    @Benchmark
+    public int checkDataQuality() {
+        int index = ++mQualityFrame & TRACE_MASK;
+        mQuality.updateFrameCount(mQualityFrame);
+        return mQuality.checkDataQuality(mTrace.red[index], mTrace.green[index], mTrace.blue[index],
+                                         CONFIDENCE, 0);
+    }
+
+    @Benchmark
+    public int checkDataQuality2() {
+        int index = ++mQualityFrame & TRACE_MASK;
+        mQuality.updateFrameCount(mQualityFrame);
+        return mQuality.checkDataQuality2(mTrace.red[index], mTrace.green[index], mTrace.blue[index],
+                                          CONFIDENCE);
+    }
+
+    @Benchmark
+    public double findAcRange() {
+        return mDetector.findAcRange(mAcInputs[++mFrame & TRACE_MASK]);
+    }
+
+    @Benchmark
+    public int lifecycle() {
+        if (mLifecycleFrame == SESSION_FRAMES) {
+            mLifecycle = new AnemiaDetection(1);
+            mLifecycleFrame = 0;
+            mLifecycleOffset = (mLifecycleOffset + 997) & TRACE_MASK;
+        }
+        int index = (mLifecycleOffset + ++mLifecycleFrame) & TRACE_MASK;
+        mLifecycle.updateFrameCount(mLifecycleFrame);
+        return mLifecycle.checkDataQuality(mTrace.red[index], mTrace.green[index], mTrace.blue[index],
+                                           CONFIDENCE, 0);
+    }
+}
@@ -0,0 +1,116 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of reducing a 1920x1080 camera frame to channel
+ * averages: a straightforward per-byte scalar loop against the
+ * packed two-pixels-per-long RGBA path of FrameReducer, plus the
+ * NV21 path for reference. Every operation reduces one whole frame.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main FrameReducerBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameReducerBenchmark {
+
+    static final int WIDTH = 1920;
+    static final int HEIGHT = 1080;
+
+    private ByteBuffer mRgba;
+    private ByteBuffer mNv21;
+    private FrameReducer mReducer;
+
+    @Setup
+    public void setUp() {
+        mRgba = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4).order(ByteOrder.nativeOrder());
+        mNv21 = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+        fillFingerFrame(mRgba, mNv21);
+        mReducer = new FrameReducer();
+    }
+
+    @Benchmark
+    public double scalarRgba() {
+        return scalarRgba(mRgba, WIDTH, HEIGHT, WIDTH * 4);
+    }
+
+    @Benchmark
+    public double reduceRgba() {
+        mReducer.reduceRgba(mRgba, WIDTH, HEIGHT, WIDTH * 4);
+        return mReducer.getRedAverage() + mReducer.getSaturatedCount();
+    }
+
+    @Benchmark
+    public double reduceNv21() {
+        mReducer.reduceNv21(mNv21, WIDTH, HEIGHT);
+        return mReducer.getRedAverage();
+    }
+
+    /**
+     * The loop an integrator would typically write: one byte read
+     * per channel and one comparison set per pixel.
+     */
+    static double scalarRgba(ByteBuffer frame, int width, int height, int rowStride) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        int saturated = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int index = row * rowStride + col * 4;
+                int r = frame.get(index) & 0xff;
+                int g = frame.get(index + 1) & 0xff;
+                int b = frame.get(index + 2) & 0xff;
+                red += r;
+                green += g;
+                blue += b;
+                if (r == 255 || g == 255 || b == 255) {
+                    saturated++;
+                }
+            }
+        }
+        double pixels = (double) width * height;
+        return red / pixels + green / pixels + blue / pixels + saturated;
+    }
+
+    /**
+     * A frame as seen through a fingertip with the flash on: bright,
+     * partly clipped red, little green and blue.
+     */
+    static void fillFingerFrame(ByteBuffer rgba, ByteBuffer nv21) {
+        Random random = new Random(11);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            rgba.put(4 * i, (byte) Math.min(255, 220 + random.nextInt(50)));
+            rgba.put(4 * i + 1, (byte) random.nextInt(8));
+            rgba.put(4 * i + 2, (byte) random.nextInt(8));
+            rgba.put(4 * i + 3, (byte) 255);
+        }
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            nv21.put(i, (byte) (70 + random.nextInt(20)));
+        }
+        for (int i = WIDTH * HEIGHT; i < nv21.capacity(); i += 2) {
+            nv21.put(i, (byte) (210 + random.nextInt(20)));
+            nv21.put(i + 1, (byte) (100 + random.nextInt(10)));
+        }
+    }
+}
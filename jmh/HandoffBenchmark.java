@@ -0,0 +1,114 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost on the camera thread of running detection inline against
+ * handing the frame averages to a DetectionWorker through a
+ * FrameSummaryQueue, for each overflow policy. Every invocation
+ * streams FRAMES frames through a new queue and worker; an
+ * operation is one frame. The dropped and processed counters show
+ * how many frames each policy lost (FrameSummaryQueueTest and
+ * DetectionWorkerTest check what it keeps).
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main HandoffBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandoffBenchmark {
+
+    private static final int FRAMES = 20000;
+    private static final int CAPACITY = 256;
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+
+    private SyntheticTrace mTrace;
+    private double[] mResult;
+
+    /**
+     * Overflow policy of the queue, only a parameter of queued().
+     */
+    @State(Scope.Thread)
+    public static class Policy {
+        @Param({"DROP_OLDEST", "DROP_NEWEST", "BLOCK"})
+        public FrameSummaryQueue.OverflowPolicy policy;
+    }
+
+    /**
+     * Frames dropped by the queue and processed by the worker.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long dropped;
+        public long processed;
+    }
+
+    @Setup
+    public void setUp() {
+        mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 9);
+        mResult = new double[3];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int inline() {
+        AnemiaDetection quality = new AnemiaDetection(1);
+        AnemiaDetection events = new AnemiaDetection(1);
+        int sum = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            quality.updateFrameCount(i + 1);
+            sum += quality.checkDataQuality(mTrace.red[i], mTrace.green[i], mTrace.blue[i],
+                                            CONFIDENCE, START_FRAME);
+            events.updateFrameCount(i + 1);
+            sum += events.detectPeakTrough(mTrace.red[i], START_FRAME, mResult);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int queued(Policy policy, Frames frames) throws InterruptedException {
+        FrameSummaryQueue queue = new FrameSummaryQueue(CAPACITY, policy.policy);
+        DetectionWorker worker = new DetectionWorker(queue, CONFIDENCE, START_FRAME, new DetectionWorker.Listener() {
+            @Override
+            public void onVerdict(long timestamp, int frame, int verdict) {
+            }
+
+            @Override
+            public void onPeakTrough(long timestamp, int type, int frame, double rVal) {
+            }
+        });
+        worker.start();
+        int queued = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            if (queue.offer(i, mTrace.red[i], mTrace.green[i], mTrace.blue[i])) {
+                queued++;
+            }
+        }
+        worker.stop();
+        frames.dropped += queue.getDroppedCount();
+        frames.processed += worker.getProcessedCount();
+        return queued;
+    }
+}
@@ -0,0 +1,87 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of checkDataQuality and detectPeakTrough without
+ * instrumentation and with a DetectorMetrics attached, on a
+ * synthetic trace. Every invocation replays the whole trace with new
+ * detectors; an operation is one frame. Setup checks that both runs
+ * produce the same verdicts and points.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main InstrumentationBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+    private static final int FRAMES = 20000;
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+
+    private SyntheticTrace mTrace;
+    private DetectorMetrics mMetrics;
+    private double[] mResult;
+
+    @Setup
+    public void setUp() {
+        mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 17);
+        mMetrics = new DetectorMetrics();
+        mResult = new double[3];
+        if (replay(null) != replay(mMetrics)) {
+            throw new AssertionError("instrumentation changed the detector output");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long plain() {
+        return replay(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long metrics() {
+        mMetrics.reset();
+        return replay(mMetrics);
+    }
+
+    /**
+     * @return a checksum of every verdict and point
+     */
+    private long replay(DetectorInstrumentation instrumentation) {
+        AnemiaDetection quality = new AnemiaDetection(1);
+        AnemiaDetection events = new AnemiaDetection(1);
+        quality.setInstrumentation(instrumentation);
+        events.setInstrumentation(instrumentation);
+        long checksum = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            quality.updateFrameCount(i + 1);
+            checksum = 31 * checksum + quality.checkDataQuality(mTrace.red[i], mTrace.green[i], mTrace.blue[i],
+                                                                CONFIDENCE, START_FRAME);
+            events.updateFrameCount(i + 1);
+            if (events.detectPeakTrough(mTrace.red[i], START_FRAME, mResult) != 0) {
+                checksum = 31 * checksum + (long) mResult[1];
+            }
+        }
+        return checksum;
+    }
+}
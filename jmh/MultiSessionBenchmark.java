@@ -0,0 +1,104 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares three ways of advancing the peak/trough detector of many
+ * concurrent sessions by one frame each:
+ *
+ *  - one AnemiaDetection object per session (scalar per-object path)
+ *  - MultiSessionDetector.step with an explicit list of session ids
+ *  - MultiSessionDetector.stepAll, whose filter stage runs as one
+ *    dense loop across all sessions
+ *
+ * Every operation advances all sessions by one frame; divide by
+ * sessions for the cost per session-frame.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main MultiSessionBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiSessionBenchmark {
+
+    private static final int TRACE_LENGTH = 4096;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"10000"})
+    public int sessions;
+
+    private double[] mTrace;
+    private AnemiaDetection[] mDetectors;
+    private MultiSessionDetector mEngine;
+    private int[] mIds;
+    private double[] mRed;
+    private double[] mResult;
+    private double[] mResults;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, TRACE_LENGTH, 7).red;
+        mDetectors = new AnemiaDetection[sessions];
+        mEngine = new MultiSessionDetector(sessions);
+        mIds = new int[sessions];
+        for (int s = 0; s < sessions; s++) {
+            mDetectors[s] = new AnemiaDetection(1);
+            mIds[s] = mEngine.openSession(1, 0);
+        }
+        mRed = new double[sessions];
+        mResult = new double[3];
+        mResults = new double[3 * sessions];
+        mFrame = 1;
+    }
+
+    @Benchmark
+    public double perSession() {
+        final int frame = mFrame++;
+        double sum = 0;
+        for (int s = 0; s < sessions; s++) {
+            AnemiaDetection detector = mDetectors[s];
+            detector.updateFrameCount(frame);
+            sum += detector.detectPeakTrough(mTrace[(frame + s) & TRACE_MASK], 0, mResult);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double step() {
+        nextFrame();
+        mEngine.step(mIds, mRed, sessions, mResults);
+        return mResults[0];
+    }
+
+    @Benchmark
+    public double stepAll() {
+        nextFrame();
+        mEngine.stepAll(mRed, mResults);
+        return mResults[0];
+    }
+
+    private void nextFrame() {
+        final int frame = mFrame++;
+        for (int s = 0; s < sessions; s++) {
+            mRed[s] = mTrace[(frame + s) & TRACE_MASK];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of reducing a 1920x1080 RGBA and NV21 frame in 1, 2,
+ * 4 and 8 strips on a fixed thread pool of the same size. Setup
+ * checks that every strip count produces exactly the averages of the
+ * sequential reducer; the speedup depends on the number of cores
+ * available.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main ParallelReducerBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelReducerBenchmark {
+
+    private static final int WIDTH = FrameReducerBenchmark.WIDTH;
+    private static final int HEIGHT = FrameReducerBenchmark.HEIGHT;
+
+    @Param({"1", "2", "4", "8"})
+    public int strips;
+
+    private ByteBuffer mRgba;
+    private ByteBuffer mNv21;
+    private ExecutorService mExecutor;
+    private FrameReducer mReducer;
+
+    @Setup
+    public void setUp() {
+        mRgba = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4).order(ByteOrder.nativeOrder());
+        mNv21 = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+        FrameReducerBenchmark.fillFingerFrame(mRgba, mNv21);
+
+        FrameReducer sequential = new FrameReducer();
+        sequential.reduceRgba(mRgba, WIDTH, HEIGHT, WIDTH * 4);
+        double[] rgbaReference = averages(sequential);
+        sequential.reduceNv21(mNv21, WIDTH, HEIGHT);
+        double[] nv21Reference = averages(sequential);
+
+        mExecutor = Executors.newFixedThreadPool(strips);
+        mReducer = new FrameReducer();
+        mReducer.setStripExecutor(mExecutor, strips);
+        mReducer.reduceRgba(mRgba, WIDTH, HEIGHT, WIDTH * 4);
+        check(mReducer, rgbaReference);
+        mReducer.reduceNv21(mNv21, WIDTH, HEIGHT);
+        check(mReducer, nv21Reference);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public double reduceRgba() {
+        mReducer.reduceRgba(mRgba, WIDTH, HEIGHT, WIDTH * 4);
+        return mReducer.getRedAverage();
+    }
+
+    @Benchmark
+    public double reduceNv21() {
+        mReducer.reduceNv21(mNv21, WIDTH, HEIGHT);
+        return mReducer.getRedAverage();
+    }
+
+    private static double[] averages(FrameReducer reducer) {
+        return new double[] {
+                reducer.getRedAverage(), reducer.getGreenAverage(), reducer.getBlueAverage(),
+                reducer.getRedMeanError(), reducer.getSaturatedCount()
+        };
+    }
+
+    private static void check(FrameReducer reducer, double[] reference) {
+        double[] actual = averages(reducer);
+        for (int i = 0; i < actual.length; i++) {
+            if (Double.doubleToLongBits(actual[i]) != Double.doubleToLongBits(reference[i])) {
+                throw new AssertionError("strip reduction differs from sequential reduction");
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-frame cost of detectPeakTrough and of the
+ * streaming filter stage with DetectorParameters. The filter stage
+ * is run twice: once the way the detector used to do it, dividing
+ * by the smoothing values and checking them on every sample, and
+ * once the way it does now, with the values checked once by
+ * DetectorParameters and the high pass gain precomputed. The full
+ * detector is run with the default tuning and with a tuning for a
+ * camera with a different response, to show that both cost the same.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main ParametersBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParametersBenchmark {
+
+    private static final int TRACE_LENGTH = 4096;
+    private static final int START_FRAME = 1;
+
+    private static final DetectorParameters TUNED = DetectorParameters.DEFAULT
+            .withLowPassSmoothing(4.5)
+            .withHighPassSmoothing(2.5)
+            .withMaxLightPartialCover(60);
+
+    private double[] mRed;
+    private double mLowPass;
+    private double mHighPass;
+    private double mHighPassGain;
+    private double mLpf;
+    private double mHpf;
+    private double mPrev;
+    private int mSample;
+    private AnemiaDetection mDefault;
+    private AnemiaDetection mTuned;
+    private double[] mResult;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mRed = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, TRACE_LENGTH, 3).red;
+        mLowPass = DetectorParameters.DEFAULT.getLowPassSmoothing();
+        mHighPass = DetectorParameters.DEFAULT.getHighPassSmoothing();
+        mHighPassGain = DetectorParameters.DEFAULT.getHighPassGain();
+        mLpf = mRed[0];
+        mPrev = mRed[0];
+        mDefault = new AnemiaDetection(1, DetectorParameters.DEFAULT);
+        mTuned = new AnemiaDetection(1, TUNED);
+        mResult = new double[3];
+        mFrame = 1;
+    }
+
+    @Benchmark
+    public double filtersDividePerSample() {
+        if (mLowPass <= 1 || mHighPass <= 1) {
+            throw new IllegalArgumentException();
+        }
+        mLpf = mLpf + (mRed[mSample++ & (TRACE_LENGTH - 1)] - mLpf) / mLowPass;
+        mHpf = (1 - (1 / mHighPass)) * (mHpf + mLpf - mPrev);
+        mPrev = mLpf;
+        return mHpf;
+    }
+
+    @Benchmark
+    public double filtersPrecomputedGains() {
+        mLpf = mLpf + (mRed[mSample++ & (TRACE_LENGTH - 1)] - mLpf) / mLowPass;
+        mHpf = mHighPassGain * (mHpf + mLpf - mPrev);
+        mPrev = mLpf;
+        return mHpf;
+    }
+
+    @Benchmark
+    public int detectPeakTroughDefault() {
+        return detect(mDefault);
+    }
+
+    @Benchmark
+    public int detectPeakTroughTuned() {
+        return detect(mTuned);
+    }
+
+    private int detect(AnemiaDetection detector) {
+        final int frame = mFrame++;
+        detector.updateFrameCount(frame);
+        return detector.detectPeakTrough(mRed[frame & (TRACE_LENGTH - 1)], START_FRAME, mResult);
+    }
+}
@@ -0,0 +1,103 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of MonotonicPeakDetector for several half widths,
+ * against checking the whole 2k + 1 sample window on every sample
+ * the way the five sample window of detectPeakTrough does.
+ * MonotonicPeakDetectorTest checks that both find the same points.
+ *
+ * The window check stops at the first step that fails on either
+ * side, so it only looks deep into the window close to a point; its
+ * worst case grows with k where the run lengths cost the same for
+ * every sample. Inputs are a noisy 30 fps signal and a smooth one,
+ * like a 1.2 Hz pulse filmed at 120 fps.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main PeakWindowBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeakWindowBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    @Param({"2", "4", "8", "16"})
+    public int k;
+
+    @Param({"noisy30fps", "smooth120fps"})
+    public String input;
+
+    private double[] mRed;
+    private double[] mFiltered;
+    private MonotonicPeakDetector mDetector;
+    private int mSample;
+
+    @Setup
+    public void setUp() {
+        mRed = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, SAMPLES, 9).red;
+        mFiltered = new double[SAMPLES];
+        if ("noisy30fps".equals(input)) {
+            // High pass output of a noisy trace, as the window sees it
+            BiquadFilterChain chain = BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 2);
+            chain.reset(mRed[0]);
+            for (int i = 0; i < SAMPLES; i++) {
+                mFiltered[i] = chain.process(mRed[i]);
+            }
+        } else {
+            for (int i = 0; i < SAMPLES; i++) {
+                mFiltered[i] = Math.sin(2 * Math.PI * SyntheticTrace.HEART_RATE_HZ * i / 120);
+            }
+        }
+        mDetector = new MonotonicPeakDetector(k, false);
+        mSample = 2 * k;
+    }
+
+    @Benchmark
+    public int monotonicRuns() {
+        final int j = mSample++ & (SAMPLES - 1);
+        return mDetector.add(mFiltered[j], mRed[j]);
+    }
+
+    @Benchmark
+    public boolean fullWindow() {
+        return isPoint(mFiltered, mSample++ - k, k);
+    }
+
+    /**
+     * Checks the 2k + 1 samples around center, indexes taken modulo
+     * the trace length.
+     */
+    private static boolean isPoint(double[] values, int center, int k) {
+        final double c = values[center & (SAMPLES - 1)];
+        final boolean peak = c > values[(center - 1) & (SAMPLES - 1)];
+        for (int j = 1; j <= k; j++) {
+            double before = values[(center - j + 1) & (SAMPLES - 1)];
+            double earlier = values[(center - j) & (SAMPLES - 1)];
+            double after = values[(center + j - 1) & (SAMPLES - 1)];
+            double later = values[(center + j) & (SAMPLES - 1)];
+            if (peak ? !(before > earlier && after > later) : !(before < earlier && after < later)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of detectPeakTrough on its own (confirmed points
+ * only) and with a PeakTroughListener, which adds the prediction of
+ * tentative points. The listener only counts events, so the timing
+ * shows the cost of the prediction rather than that of the
+ * listener. Every invocation runs a new detector over the trace; an
+ * operation is one frame. PredictiveLatencyReport gives the latency
+ * in frames each mode saves.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main PredictiveLatencyBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictiveLatencyBenchmark {
+
+    private static final int SAMPLES = 4096;
+    private static final int START_FRAME = 1;
+
+    private double[] mRed;
+    private double[] mResult;
+    private Counter mCounter;
+
+    @Setup
+    public void setUp() {
+        mRed = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, SAMPLES, 11).red;
+        mResult = new double[3];
+        mCounter = new Counter();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int confirmedOnly() {
+        return run(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int withListener() {
+        return run(mCounter) + (int) mCounter.mEvents;
+    }
+
+    private int run(PeakTroughListener listener) {
+        AnemiaDetection detector = new AnemiaDetection(1);
+        detector.setPeakTroughListener(listener);
+        int sum = 0;
+        for (int f = 0; f < SAMPLES; f++) {
+            detector.updateFrameCount(f + 1);
+            sum += detector.detectPeakTrough(mRed[f], START_FRAME, mResult);
+        }
+        return sum;
+    }
+
+    private static final class Counter implements PeakTroughListener {
+
+        private long mEvents;
+
+        @Override
+        public void onTentative(int type, int frame, double rVal) {
+            mEvents++;
+        }
+
+        @Override
+        public void onConfirmed(int type, int frame, double rVal) {
+            mEvents++;
+        }
+
+        @Override
+        public void onRetracted(int type, int frame) {
+            mEvents++;
+        }
+    }
+}
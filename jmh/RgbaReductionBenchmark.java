@@ -0,0 +1,72 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares FrameReducer's portable packed-long RGBA reduction with
+ * VectorRgbaReductionKernel on a 640x480 frame held in a direct
+ * buffer (as camera frames are) and in a heap buffer. Every
+ * operation reduces one whole frame.
+ *
+ * Run with:
+ *   javac --add-modules jdk.incubator.vector -cp jmh-core.jar:jmh-generator-annprocess.jar \
+ *       -d out *.java jvm/*.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main RgbaReductionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RgbaReductionBenchmark {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    private ByteBuffer mFrame;
+    private FrameReducer mPortable;
+    private FrameReducer mVector;
+
+    @Setup
+    public void setUp() {
+        int size = WIDTH * HEIGHT * 4;
+        mFrame = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        Random random = new Random(5);
+        for (int i = 0; i < size; i++) {
+            mFrame.put(i, (byte) (160 + random.nextInt(96)));
+        }
+        mPortable = new FrameReducer();
+        mVector = new FrameReducer();
+        mVector.setRgbaKernel(new VectorRgbaReductionKernel());
+    }
+
+    @Benchmark
+    public double portable() {
+        mPortable.reduceRgba(mFrame, WIDTH, HEIGHT, WIDTH * 4);
+        return mPortable.getRedAverage() + mPortable.getSaturatedCount();
+    }
+
+    @Benchmark
+    public double vector() {
+        mVector.reduceRgba(mFrame, WIDTH, HEIGHT, WIDTH * 4);
+        return mVector.getRedAverage() + mVector.getSaturatedCount();
+    }
+}
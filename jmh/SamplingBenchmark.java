@@ -0,0 +1,65 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per frame of sampled frame reduction: the same synthetic
+ * 1080p RGBA frame reduced at several sample steps, with and without
+ * a centred region of interest. SamplingReport gives the accuracy
+ * each step costs.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/*.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main SamplingBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int step;
+
+    @Param({"false", "true"})
+    public boolean centreRoi;
+
+    private ByteBuffer mFrame;
+    private FrameReducer mReducer;
+
+    @Setup
+    public void setUp() {
+        mFrame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4).order(ByteOrder.nativeOrder());
+        SamplingReport.fillVignettedFrame(mFrame, WIDTH, HEIGHT);
+        mReducer = new FrameReducer();
+        mReducer.setSampleStep(step);
+        if (centreRoi) {
+            mReducer.setRegionOfInterest(WIDTH / 4, HEIGHT / 4, 3 * WIDTH / 4, 3 * HEIGHT / 4);
+        }
+    }
+
+    @Benchmark
+    public double reduceRgba() {
+        mReducer.reduceRgba(mFrame, WIDTH, HEIGHT, WIDTH * 4);
+        return mReducer.getRedAverage();
+    }
+}
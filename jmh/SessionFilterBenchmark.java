@@ -0,0 +1,117 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar filter loop of MultiSessionDetector.stepAll
+ * with VectorSessionFilterKernel, on their own and as part of a
+ * whole stepAll call. Every operation advances all sessions by one
+ * frame.
+ *
+ * Run with:
+ *   javac --add-modules jdk.incubator.vector -cp jmh-core.jar:jmh-generator-annprocess.jar \
+ *       -d out *.java jvm/*.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main SessionFilterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SessionFilterBenchmark {
+
+    private static final int TRACE_LENGTH = 4096;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"1000", "10000"})
+    public int sessions;
+
+    private final SessionFilterKernel mVector = new VectorSessionFilterKernel();
+    private double[] mTrace;
+    private double[] mRed;
+    private double[] mLpf;
+    private double[] mHpf;
+    private double[] mPrevLpf;
+    private double[] mLpfOut;
+    private double[] mHpfOut;
+    private double[] mResults;
+    private MultiSessionDetector mScalarEngine;
+    private MultiSessionDetector mVectorEngine;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, TRACE_LENGTH, 7).red;
+        mRed = new double[sessions];
+        mLpf = new double[sessions];
+        mHpf = new double[sessions];
+        mPrevLpf = new double[sessions];
+        mLpfOut = new double[sessions];
+        mHpfOut = new double[sessions];
+        mResults = new double[3 * sessions];
+        for (int s = 0; s < sessions; s++) {
+            mRed[s] = mTrace[s & TRACE_MASK];
+            mLpf[s] = mRed[s];
+            mPrevLpf[s] = mRed[s];
+        }
+        mScalarEngine = new MultiSessionDetector(sessions);
+        mVectorEngine = new MultiSessionDetector(sessions);
+        mVectorEngine.setFilterKernel(mVector);
+        for (int s = 0; s < sessions; s++) {
+            mScalarEngine.openSession(1, 0);
+            mVectorEngine.openSession(1, 0);
+        }
+    }
+
+    @Benchmark
+    public double scalarFilter() {
+        final double lowPassSmoothing = DetectorParameters.DEFAULT.getLowPassSmoothing();
+        final double highPassGain = DetectorParameters.DEFAULT.getHighPassGain();
+        for (int s = 0; s < sessions; s++) {
+            final double lpf = mLpf[s] + (mRed[s] - mLpf[s]) / lowPassSmoothing;
+            mLpfOut[s] = lpf;
+            mHpfOut[s] = highPassGain * (mHpf[s] + lpf - mPrevLpf[s]);
+        }
+        return mHpfOut[0];
+    }
+
+    @Benchmark
+    public double vectorFilter() {
+        mVector.filter(mRed, mLpf, mHpf, mPrevLpf, mLpfOut, mHpfOut, sessions,
+                       DetectorParameters.DEFAULT.getLowPassSmoothing(),
+                       DetectorParameters.DEFAULT.getHighPassGain());
+        return mHpfOut[0];
+    }
+
+    @Benchmark
+    public double stepAllScalar() {
+        return stepAll(mScalarEngine);
+    }
+
+    @Benchmark
+    public double stepAllVector() {
+        return stepAll(mVectorEngine);
+    }
+
+    private double stepAll(MultiSessionDetector engine) {
+        final int frame = mFrame++;
+        for (int s = 0; s < sessions; s++) {
+            mRed[s] = mTrace[(frame + s) & TRACE_MASK];
+        }
+        engine.stepAll(mRed, mResults);
+        return mResults[0];
+    }
+}
@@ -0,0 +1,101 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write and to read back the snapshot of a calibrated
+ * AnemiaDetection. Setup first cuts a detector at many points of a
+ * synthetic trace, restores it into a fresh object and runs both to
+ * the end of the trace; every restored detector must produce the
+ * same verdicts and points as the original one.
+ *
+ * Run with:
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out *.java benchmark/SyntheticTrace.java jmh/*.java
+ *   java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar org.openjdk.jmh.Main SnapshotBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private static final int FRAMES = 3000;
+    private static final int CUT_STEP = 7;
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+
+    private ByteBuffer mBuffer;
+    private AnemiaDetection mCalibrated;
+    private AnemiaDetection mTarget;
+
+    @Setup
+    public void setUp() {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 11);
+        mBuffer = ByteBuffer.allocate(4096);
+        for (int cut = 0; cut < FRAMES; cut += CUT_STEP) {
+            AnemiaDetection original = new AnemiaDetection(1);
+            for (int i = 0; i < cut; i++) {
+                step(original, trace, i);
+            }
+            mBuffer.clear();
+            original.writeSnapshot(mBuffer);
+            mBuffer.flip();
+            AnemiaDetection restored = new AnemiaDetection(1);
+            restored.readSnapshot(mBuffer);
+            for (int i = cut; i < FRAMES; i++) {
+                if (step(original, trace, i) != step(restored, trace, i)) {
+                    throw new AssertionError("restored detector differs after frame " + cut);
+                }
+            }
+        }
+        mCalibrated = new AnemiaDetection(1);
+        for (int i = 0; i < FRAMES; i++) {
+            step(mCalibrated, trace, i);
+        }
+        mBuffer.clear();
+        mCalibrated.writeSnapshot(mBuffer);
+        mTarget = new AnemiaDetection(1);
+    }
+
+    @Benchmark
+    public int writeSnapshot() {
+        mBuffer.clear();
+        mCalibrated.writeSnapshot(mBuffer);
+        return mBuffer.position();
+    }
+
+    @Benchmark
+    public int readSnapshot() {
+        mBuffer.rewind();
+        mTarget.readSnapshot(mBuffer);
+        return mBuffer.position();
+    }
+
+    /**
+     * Runs frame i through both detector paths.
+     *
+     * @return a value derived from the verdict and point of the frame
+     */
+    private static long step(AnemiaDetection detector, SyntheticTrace trace, int i) {
+        detector.updateFrameCount(i + 1);
+        int verdict = detector.checkDataQuality(trace.red[i], trace.green[i], trace.blue[i],
+                                                CONFIDENCE, START_FRAME);
+        double[] point = detector.detectPeakTrough(trace.red[i], START_FRAME);
+        return ((long) verdict << 40) ^ ((long) point[0] << 32) ^ (long) point[1]
+                ^ Double.doubleToLongBits(point[2] + detector.findAcRange(point));
+    }
+}
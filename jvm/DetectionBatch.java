@@ -0,0 +1,100 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.Arrays;
+
+/**
+ * The DetectionBatch class holds the results a DetectionProcessor
+ * collected for a run of consecutive input frames: the quality
+ * verdicts (1 - 4, see AnemiaDetection.checkDataQuality) in frame
+ * order, and the peak and trough points found in the same frames.
+ * Frames without a verdict (0) are left out.
+ *
+ * A batch is not modified after it has been published.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class DetectionBatch {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] mVerdictFrames;
+    private byte[] mVerdicts;
+    private int mVerdictCount;
+    private final PeakTroughEvents mEvents;
+    private int mFrames;
+
+    DetectionBatch() {
+        this.mVerdictFrames = new int[DEFAULT_CAPACITY];
+        this.mVerdicts      = new byte[DEFAULT_CAPACITY];
+        this.mEvents        = new PeakTroughEvents(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return number of input frames the batch covers
+     */
+    public int getFrameCount() {
+        return mFrames;
+    }
+
+    public int getVerdictCount() {
+        return mVerdictCount;
+    }
+
+    /**
+     * @return frame count of the frame verdict i belongs to
+     */
+    public int getVerdictFrame(int index) {
+        checkIndex(index);
+        return mVerdictFrames[index];
+    }
+
+    /**
+     * @return checkDataQuality result (1 - 4) of verdict i
+     */
+    public int getVerdict(int index) {
+        checkIndex(index);
+        return mVerdicts[index];
+    }
+
+    /**
+     * @return the peak and trough points of the batch; must not be
+     *         cleared or added to
+     */
+    public PeakTroughEvents getEvents() {
+        return mEvents;
+    }
+
+    boolean isEmpty() {
+        return mVerdictCount == 0 && mEvents.size() == 0;
+    }
+
+    void addFrame() {
+        mFrames++;
+    }
+
+    void addVerdict(int frame, int verdict) {
+        if (mVerdictCount == mVerdicts.length) {
+            int capacity = mVerdictCount + (mVerdictCount >> 1) + 1;
+            mVerdictFrames = Arrays.copyOf(mVerdictFrames, capacity);
+            mVerdicts = Arrays.copyOf(mVerdicts, capacity);
+        }
+        mVerdictFrames[mVerdictCount] = frame;
+        mVerdicts[mVerdictCount] = (byte) verdict;
+        mVerdictCount++;
+    }
+
+    void addEvent(int type, int frame, double value) {
+        mEvents.add(type, frame, value);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mVerdictCount) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+}
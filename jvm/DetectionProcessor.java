@@ -0,0 +1,261 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DetectionProcessor class runs AnemiaDetection inside a
+ * java.util.concurrent.Flow pipeline. It consumes FrameSample items
+ * and publishes DetectionBatch items holding the quality verdicts
+ * and the peak and trough points of the frames.
+ *
+ * Results are collected into the current batch until the subscriber
+ * has demand for one. A fast subscriber therefore sees a batch per
+ * frame that produced a result; a slow one gets all results found
+ * since its last batch at once. Frames are requested from upstream
+ * so that at most maxPendingFrames frames with results wait for the
+ * subscriber, which bounds the batch without dropping anything.
+ * onComplete and onError from upstream are passed on after the
+ * pending batch has been delivered.
+ *
+ * Like on the phone, checkDataQuality and detectPeakTrough run on
+ * two detectors that keep separate filter state. One subscriber is
+ * supported.
+ *
+ * Needs java.util.concurrent.Flow (Java 9, Android API level 30).
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class DetectionProcessor implements Flow.Processor<FrameSample, DetectionBatch> {
+
+    private final int mConfidence;
+    private final int mStartFrame;
+    private final int mMaxPendingFrames;
+    private final AnemiaDetection mQuality;
+    private final AnemiaDetection mEvents;
+    private final double[] mResult;
+
+    private final AtomicLong mDemand = new AtomicLong();
+    private final AtomicInteger mWip = new AtomicInteger();
+    private final Object mLock = new Object();
+
+    // Guarded by mLock
+    private DetectionBatch mPending = new DetectionBatch();
+    private int mHeldFrames;
+
+    private volatile Flow.Subscription mUpstream;
+    private volatile Flow.Subscriber<? super DetectionBatch> mDownstream;
+    private volatile boolean mDone;
+    private volatile boolean mCancelled;
+    private volatile Throwable mError;
+    private boolean mTerminated;
+
+    /**
+     * @param confidence       Accuracy level passed to checkDataQuality
+     *                         (1 = 10% ... 9 = 90%)
+     * @param startFrame       The first frame the detectors start running on
+     * @param maxPendingFrames most frames with results held back for a
+     *                         slow subscriber
+     */
+    public DetectionProcessor(int confidence, int startFrame, int maxPendingFrames) {
+        if (confidence > AnemiaDetection.DATA_SIZE - 1 || confidence < 0 || maxPendingFrames < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.mConfidence       = confidence;
+        this.mStartFrame       = startFrame;
+        this.mMaxPendingFrames = maxPendingFrames;
+        this.mQuality          = new AnemiaDetection(1);
+        this.mEvents           = new AnemiaDetection(1);
+        this.mResult           = new double[3];
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DetectionBatch> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        synchronized (mLock) {
+            if (mDownstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("DetectionProcessor supports one subscriber"));
+                return;
+            }
+            mDownstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    // Fails at once: the results still pending are dropped
+                    synchronized (mLock) {
+                        mPending = new DetectionBatch();
+                        mHeldFrames = 0;
+                    }
+                    mError = new IllegalArgumentException("non-positive request " + n);
+                    cancelUpstream();
+                    mDone = true;
+                } else {
+                    addDemand(n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                mCancelled = true;
+                cancelUpstream();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (mUpstream != null || mDone) {
+            subscription.cancel();
+            return;
+        }
+        mUpstream = subscription;
+        if (mCancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(mMaxPendingFrames);
+    }
+
+    @Override
+    public void onNext(FrameSample sample) {
+        if (mDone || mCancelled) {
+            return;
+        }
+        final int frame = sample.getFrame();
+        final int verdict;
+        final int type;
+        try {
+            mQuality.updateFrameCount(frame);
+            verdict = mQuality.checkDataQuality(sample.getRed(), sample.getGreen(), sample.getBlue(),
+                                                mConfidence, mStartFrame);
+            mEvents.updateFrameCount(frame);
+            type = mEvents.detectPeakTrough(sample.getRed(), mStartFrame, mResult);
+        } catch (IllegalArgumentException e) {
+            cancelUpstream();
+            onError(e);
+            return;
+        }
+        boolean held;
+        synchronized (mLock) {
+            mPending.addFrame();
+            if (verdict != 0) {
+                mPending.addVerdict(frame, verdict);
+            }
+            if (type != 0) {
+                mPending.addEvent(type, (int) mResult[1], mResult[2]);
+            }
+            held = verdict != 0 || type != 0;
+            if (held) {
+                mHeldFrames++;
+            }
+        }
+        if (held) {
+            drain();
+        } else {
+            mUpstream.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (mDone) {
+            return;
+        }
+        mError = throwable;
+        mDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        mDone = true;
+        drain();
+    }
+
+    /**
+     * Hands the pending batch to the subscriber while it has demand
+     * and signals the end of the stream, or an upstream error, once
+     * nothing is pending.
+     * Only one thread at a time gets past the work counter, so the
+     * subscriber is never called concurrently.
+     */
+    private void drain() {
+        if (mWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super DetectionBatch> downstream = mDownstream;
+            while (downstream != null && !mCancelled && !mTerminated) {
+                DetectionBatch batch = null;
+                int released = 0;
+                boolean empty;
+                synchronized (mLock) {
+                    if (mDemand.get() > 0 && !mPending.isEmpty()) {
+                        batch = mPending;
+                        released = mHeldFrames;
+                        mPending = new DetectionBatch();
+                        mHeldFrames = 0;
+                    }
+                    empty = mPending.isEmpty();
+                }
+                if (batch == null) {
+                    if (mDone && empty) {
+                        mTerminated = true;
+                        Throwable error = mError;
+                        if (error != null) {
+                            downstream.onError(error);
+                        } else {
+                            downstream.onComplete();
+                        }
+                    }
+                    break;
+                }
+                mDemand.decrementAndGet();
+                downstream.onNext(batch);
+                Flow.Subscription upstream = mUpstream;
+                if (upstream != null && !mDone) {
+                    upstream.request(released);
+                }
+            }
+            missed = mWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void addDemand(long n) {
+        long current;
+        long next;
+        do {
+            current = mDemand.get();
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!mDemand.compareAndSet(current, next));
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription upstream = mUpstream;
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+}
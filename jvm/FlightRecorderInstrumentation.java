@@ -0,0 +1,208 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The FlightRecorderInstrumentation class reports detector work as
+ * JDK Flight Recorder events, so slow frames can be lined up with
+ * GC pauses and safepoints in the same recording:
+ *
+ *      ubicomp.anemia.Calibration - checkDataQuality fixed its
+ *                                   thresholds (mCalcDiff, mSignalWidth)
+ *      ubicomp.anemia.Verdict     - confidenceCheck turned DATA_SIZE
+ *                                   frames of buckets into a verdict
+ *      ubicomp.anemia.SlowFrame   - a detectPeakTrough or
+ *                                   checkDataQuality call took at least
+ *                                   the slow frame threshold
+ *
+ * Attach it with AnemiaDetection.setInstrumentation. Events that are
+ * disabled in the recording settings cost a flag check; the
+ * per-frame cost is otherwise a comparison against the threshold, so
+ * it can stay attached in production. Events are recorded without
+ * stack traces.
+ *
+ * The bucket counts of a verdict arrive in onConfidenceBuckets and
+ * are held in a pending VerdictEvent until the verdict itself
+ * arrives in onCheckDataQuality of the same call. Use one instance
+ * per detector, called only from that detector's thread.
+ *
+ * Needs jdk.jfr (OpenJDK 11, or 8u262 and later); not on Android.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class FlightRecorderInstrumentation implements DetectorInstrumentation {
+
+    /**
+     * Default slow frame threshold: a third of a frame at 30 fps.
+     */
+    public static final long DEFAULT_SLOW_FRAME_NANOS = 11000000;
+
+    private final String mSource;
+    private final long mSlowFrameNanos;
+    private VerdictEvent mPendingVerdict;
+
+    /**
+     * @param source         label of the stream the detector belongs
+     *                       to, recorded with every event; may be null
+     * @param slowFrameNanos calls taking at least this long are
+     *                       recorded as SlowFrame events
+     */
+    public FlightRecorderInstrumentation(String source, long slowFrameNanos) {
+        if (slowFrameNanos < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mSource         = source;
+        this.mSlowFrameNanos = slowFrameNanos;
+    }
+
+    public FlightRecorderInstrumentation(String source) {
+        this(source, DEFAULT_SLOW_FRAME_NANOS);
+    }
+
+    @Override
+    public void onDetectPeakTrough(int type, long nanos) {
+        if (nanos >= mSlowFrameNanos) {
+            commitSlowFrame("detectPeakTrough", 1, nanos);
+        }
+    }
+
+    @Override
+    public void onDetectPeakTroughs(PeakTroughEvents events, int from, int frames, long nanos) {
+        // A whole trace is expected to take longer than a frame
+    }
+
+    @Override
+    public void onCheckDataQuality(int verdict, long nanos) {
+        VerdictEvent event = mPendingVerdict;
+        if (event != null) {
+            mPendingVerdict = null;
+            event.verdict = verdict;
+            event.commit();
+        }
+        if (nanos >= mSlowFrameNanos) {
+            commitSlowFrame("checkDataQuality", 1, nanos);
+        }
+    }
+
+    @Override
+    public void onCalibrated(int frames, double calcDiff, int signalWidth) {
+        CalibrationEvent event = new CalibrationEvent();
+        if (event.isEnabled()) {
+            event.source = mSource;
+            event.frames = frames;
+            event.calcDiff = calcDiff;
+            event.signalWidth = signalWidth;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onConfidenceBuckets(int[] buckets) {
+        VerdictEvent event = new VerdictEvent();
+        if (event.isEnabled()) {
+            event.source = mSource;
+            event.onCamera = buckets[0];
+            event.partialCover = buckets[1];
+            event.shifted = buckets[2];
+            event.offCamera = buckets[3];
+            mPendingVerdict = event;
+        }
+    }
+
+    private void commitSlowFrame(String call, int frames, long nanos) {
+        SlowFrameEvent event = new SlowFrameEvent();
+        if (event.isEnabled()) {
+            event.source = mSource;
+            event.call = call;
+            event.frames = frames;
+            event.callDuration = nanos;
+            event.thresholdDuration = mSlowFrameNanos;
+            event.commit();
+        }
+    }
+
+    @Name("ubicomp.anemia.Calibration")
+    @Label("Anemia Detector Calibration")
+    @Description("checkDataQuality has seen enough peaks and troughs and fixed its thresholds")
+    @Category({"Anemia Detection"})
+    @StackTrace(false)
+    static final class CalibrationEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Frames To Calibrate")
+        int frames;
+
+        @Label("Calc Diff")
+        @Description("Largest red value change expected from the pulse")
+        double calcDiff;
+
+        @Label("Signal Width")
+        @Description("Frames between a peak and its trough")
+        int signalWidth;
+    }
+
+    @Name("ubicomp.anemia.Verdict")
+    @Label("Anemia Detector Verdict")
+    @Description("confidenceCheck result over the last DATA_SIZE frames")
+    @Category({"Anemia Detection"})
+    @StackTrace(false)
+    static final class VerdictEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Verdict")
+        @Description("0 no result, 1 on camera, 2 not covering, 3 shifted, 4 not on camera")
+        int verdict;
+
+        @Label("On Camera Frames")
+        int onCamera;
+
+        @Label("Partial Cover Frames")
+        int partialCover;
+
+        @Label("Shifted Frames")
+        int shifted;
+
+        @Label("Off Camera Frames")
+        int offCamera;
+    }
+
+    @Name("ubicomp.anemia.SlowFrame")
+    @Label("Anemia Detector Slow Frame")
+    @Description("A detector call took at least the slow frame threshold")
+    @Category({"Anemia Detection"})
+    @StackTrace(false)
+    static final class SlowFrameEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Call")
+        String call;
+
+        @Label("Frames")
+        int frames;
+
+        @Label("Call Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long callDuration;
+
+        @Label("Threshold")
+        @Timespan(Timespan.NANOSECONDS)
+        long thresholdDuration;
+    }
+}
@@ -0,0 +1,59 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+/**
+ * The FrameSample class carries the average red, green and blue
+ * values of one camera frame into a DetectionProcessor.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class FrameSample {
+
+    private final long mTimestamp;
+    private final int mFrame;
+    private final double mRed;
+    private final double mGreen;
+    private final double mBlue;
+
+    /**
+     * @param timestamp frame timestamp, in whatever unit the caller uses
+     * @param frame     frame count of the frame
+     * @param rVal      Average red value of the frame (0 - 255 RGB format)
+     * @param gVal      Average green value of the frame (0 - 255 RGB format)
+     * @param bVal      Average blue value of the frame (0 - 255 RGB format)
+     */
+    public FrameSample(long timestamp, int frame, double rVal, double gVal, double bVal) {
+        if (frame < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.mTimestamp = timestamp;
+        this.mFrame     = frame;
+        this.mRed       = rVal;
+        this.mGreen     = gVal;
+        this.mBlue      = bVal;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public int getFrame() {
+        return mFrame;
+    }
+
+    public double getRed() {
+        return mRed;
+    }
+
+    public double getGreen() {
+        return mGreen;
+    }
+
+    public double getBlue() {
+        return mBlue;
+    }
+}
@@ -0,0 +1,171 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorRgbaReductionKernel class reduces RGBA_8888 frames for
+ * FrameReducer with the Java Vector API, a whole vector of bytes
+ * (16 pixels with AVX-512, 8 with AVX2) at a time.
+ *
+ * Every byte vector is widened into two vectors of 16 bit lanes
+ * which are added to two lane accumulators. Since a vector holds a
+ * multiple of 4 bytes, lane i always holds channel i % 4. The lane
+ * accumulators are read out into the long channel totals at the end
+ * of every row, and every LANE_FLUSH_INTERVAL vectors of a longer
+ * row, before a lane can overflow, so the sums are exact. Keeping
+ * them inside the row lets C2 hold them in registers: carried from
+ * row to row they were boxed, some 12 bytes per pixel on JDK 17.
+ * Saturated pixels are found by comparing the color lanes with 255
+ * and counting the pixels, seen as int lanes, with any lane set.
+ * Pixels past the last full vector of a row are done with scalar
+ * code.
+ *
+ * Rows of heap buffers are read straight from their array; rows of
+ * direct buffers are first copied into a scratch array. The scratch
+ * arrays are kept per thread, since FrameReducer's strip workers call
+ * accumulate on one kernel at the same time, and are only replaced
+ * when a wider row comes along.
+ *
+ * Needs the jdk.incubator.vector module (JDK 16 or later, compile and
+ * run with --add-modules jdk.incubator.vector); not on Android.
+ * Keep FrameReducer's own reduction where isSupported is false.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class VectorRgbaReductionKernel implements RgbaReductionKernel {
+
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = BYTES.withLanes(short.class);
+    private static final int RGBA_PIXEL_STRIDE = 4;
+    private static final int LANE_FLUSH_INTERVAL = 256; // 256 * 255 < 2^16, read unsigned
+    private static final byte FULL = (byte) 255;
+
+    // Lanes holding R, G or B rather than A
+    private static final VectorMask<Byte> COLOR_LANES = colorLanes();
+
+    private final ThreadLocal<Scratch> mScratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * @return true if the CPU holds at least two pixels per vector
+     */
+    public static boolean isSupported() {
+        return BYTES.length() >= 2 * RGBA_PIXEL_STRIDE;
+    }
+
+    @Override
+    public void accumulate(ByteBuffer frame, int rowStride, int left, int right,
+                           int rowFrom, int rowTo, long[] sums) {
+        final int rowBytes = (right - left) * RGBA_PIXEL_STRIDE;
+        final int vectorBytes = BYTES.loopBound(rowBytes);
+        final boolean heap = frame.hasArray();
+        final Scratch state = mScratch.get();
+        final byte[] scratch = heap ? null : state.row(rowBytes);
+        final long[] totals = state.mTotals;
+        final short[] lanes = state.mLanes;
+        totals[0] = 0;
+        totals[1] = 0;
+        totals[2] = 0;
+        totals[3] = 0;
+        long saturated = 0;
+        for (int row = rowFrom; row < rowTo; row++) {
+            final int index = row * rowStride + left * RGBA_PIXEL_STRIDE;
+            final byte[] bytes;
+            final int start;
+            if (heap) {
+                bytes = frame.array();
+                start = frame.arrayOffset() + index;
+            } else {
+                frame.get(index, scratch, 0, rowBytes);
+                bytes = scratch;
+                start = 0;
+            }
+            for (int from = 0; from < vectorBytes; from += LANE_FLUSH_INTERVAL * BYTES.length()) {
+                final int to = Math.min(vectorBytes, from + LANE_FLUSH_INTERVAL * BYTES.length());
+                ShortVector low = ShortVector.zero(SHORTS);
+                ShortVector high = ShortVector.zero(SHORTS);
+                for (int offset = from; offset < to; offset += BYTES.length()) {
+                    ByteVector pixels = ByteVector.fromArray(BYTES, bytes, start + offset);
+                    low = low.add(widen(pixels, 0));
+                    high = high.add(widen(pixels, 1));
+                    VectorMask<Byte> full = pixels.eq(FULL).and(COLOR_LANES);
+                    saturated += ByteVector.zero(BYTES).blend((byte) 1, full)
+                            .reinterpretAsInts().compare(VectorOperators.NE, 0).trueCount();
+                }
+                flush(low, lanes, totals);
+                flush(high, lanes, totals);
+            }
+            for (int offset = vectorBytes; offset < rowBytes; offset += RGBA_PIXEL_STRIDE) {
+                int r = bytes[start + offset] & 0xff;
+                int g = bytes[start + offset + 1] & 0xff;
+                int b = bytes[start + offset + 2] & 0xff;
+                totals[0] += r;
+                totals[1] += g;
+                totals[2] += b;
+                if (r == 255 || g == 255 || b == 255) {
+                    saturated++;
+                }
+            }
+        }
+        sums[FrameReducer.RED_SUM] += totals[0];
+        sums[FrameReducer.GREEN_SUM] += totals[1];
+        sums[FrameReducer.BLUE_SUM] += totals[2];
+        sums[FrameReducer.PIXEL_COUNT] += (long) (right - left) * (rowTo - rowFrom);
+        sums[FrameReducer.SATURATED_COUNT] += saturated;
+    }
+
+    /**
+     * Zero extends one half of a byte vector to 16 bit lanes.
+     */
+    private static ShortVector widen(ByteVector pixels, int part) {
+        return ((ShortVector) pixels.convertShape(VectorOperators.B2S, SHORTS, part)).and((short) 0xff);
+    }
+
+    /**
+     * Adds the unsigned lanes of an accumulator to the channel totals.
+     */
+    private static void flush(ShortVector accumulator, short[] lanes, long[] totals) {
+        accumulator.intoArray(lanes, 0);
+        for (int i = 0; i < lanes.length; i++) {
+            totals[i & 3] += lanes[i] & 0xffff;
+        }
+    }
+
+    /**
+     * Arrays one thread reuses across calls.
+     */
+    private static final class Scratch {
+
+        private final long[] mTotals = new long[RGBA_PIXEL_STRIDE];
+        private final short[] mLanes = new short[SHORTS.length()];
+        private byte[] mRow = new byte[0];
+
+        /**
+         * @return a row copy array of at least rowBytes bytes
+         */
+        byte[] row(int rowBytes) {
+            if (mRow.length < rowBytes) {
+                mRow = new byte[rowBytes];
+            }
+            return mRow;
+        }
+    }
+
+    private static VectorMask<Byte> colorLanes() {
+        boolean[] color = new boolean[BYTES.length()];
+        for (int i = 0; i < color.length; i++) {
+            color[i] = (i & 3) != 3;
+        }
+        return VectorMask.fromArray(BYTES, color, 0);
+    }
+}
@@ -0,0 +1,65 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorSessionFilterKernel class evaluates the filters of
+ * MultiSessionDetector.stepAll with the Java Vector API, as many
+ * sessions per instruction as the preferred vector shape of the CPU
+ * holds doubles (4 with AVX2, 8 with AVX-512). Sessions past the
+ * last full vector are done with scalar code.
+ *
+ * The vector operations are the separate divisions, multiplies and
+ * adds of the scalar loop, applied lane by lane, so results are bit identical to
+ * it (see SessionFilterKernel). Where isSupported is false the CPU
+ * has no vector shape for doubles and the Vector API would fall
+ * back to slow Java code; keep MultiSessionDetector's scalar loop:
+ *
+ *      if (VectorSessionFilterKernel.isSupported()) {
+ *          engine.setFilterKernel(new VectorSessionFilterKernel());
+ *      }
+ *
+ * Needs the jdk.incubator.vector module (JDK 16 or later, compile and
+ * run with --add-modules jdk.incubator.vector); not on Android.
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class VectorSessionFilterKernel implements SessionFilterKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * @return true if the CPU holds more than one double per vector
+     */
+    public static boolean isSupported() {
+        return SPECIES.length() > 1;
+    }
+
+    @Override
+    public void filter(double[] rAvg, double[] lpf, double[] hpf, double[] prevLpf,
+                       double[] lpfOut, double[] hpfOut, int count, double lowPassSmoothing,
+                       double highPassGain) {
+        final int bound = SPECIES.loopBound(count);
+        int s = 0;
+        for (; s < bound; s += SPECIES.length()) {
+            DoubleVector low = DoubleVector.fromArray(SPECIES, lpf, s);
+            DoubleVector input = DoubleVector.fromArray(SPECIES, rAvg, s);
+            DoubleVector newLow = low.add(input.sub(low).div(lowPassSmoothing));
+            newLow.intoArray(lpfOut, s);
+            DoubleVector high = DoubleVector.fromArray(SPECIES, hpf, s);
+            DoubleVector previous = DoubleVector.fromArray(SPECIES, prevLpf, s);
+            high.add(newLow).sub(previous).mul(highPassGain).intoArray(hpfOut, s);
+        }
+        for (; s < count; s++) {
+            final double newLow = lpf[s] + (rAvg[s] - lpf[s]) / lowPassSmoothing;
+            lpfOut[s] = newLow;
+            hpfOut[s] = highPassGain * (hpf[s] + newLow - prevLpf[s]);
+        }
+    }
+}
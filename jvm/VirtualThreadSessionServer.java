@@ -0,0 +1,221 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The VirtualThreadSessionServer class speaks the protocol of
+ * SessionServer with one thread per connection and plain blocking
+ * channels instead of selector event loops. With virtual threads
+ * (virtualThreads()) a blocked connection costs no platform thread,
+ * so it holds as many sessions as the event loop server. Each
+ * connection thread reads, handles the complete messages and writes
+ * their results; a client that does not read its results blocks its
+ * own thread in write, which stops the server reading its frames.
+ *
+ * The message handling is SessionServer.Session, so both servers
+ * give the same results. As there, a failed accept, typically for
+ * running out of file descriptors, is retried after
+ * ACCEPT_BACKOFF_MILLIS; only closing the server stops accepting.
+ *
+ * Needs JDK 21 or later for virtual threads; not on Android. Thread
+ * builders are looked up at run time so the class still compiles
+ * with older JDKs, where any ThreadFactory can be passed instead.
+ *
+ * Run with:
+ *   java -cp out ubicomp.william.com.rgbchanneldatacollector.VirtualThreadSessionServer [port [virtual|platform]]
+ *
+ *  <!<!<! PROPERTY OF THE UNIVERSITY OF WASHINGTON
+ *            UBIQUITOUS COMPUTING LABORATORY !>!>!>
+ *
+ * @author William L. Li
+ * @version 1.4
+ */
+
+public final class VirtualThreadSessionServer implements Closeable {
+
+    private static final int REPORT_INTERVAL_MILLIS = 5000;
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final InetSocketAddress mRequestedAddress;
+    private final ThreadFactory mThreads;
+    private final Set<SocketChannel> mChannels = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger mSessions = new AtomicInteger();
+    private final LongAdder mFrames = new LongAdder();
+    private final LongAdder mAcceptFailures = new LongAdder();
+    private ServerSocketChannel mServerChannel;
+    private volatile boolean mClosed;
+
+    /**
+     * @param address address to listen on, port 0 for any free port
+     * @param threads creates the acceptor thread and one thread per
+     *                connection, normally virtualThreads()
+     */
+    public VirtualThreadSessionServer(InetSocketAddress address, ThreadFactory threads) {
+        if (address == null || threads == null) {
+            throw new IllegalArgumentException();
+        }
+        this.mRequestedAddress = address;
+        this.mThreads          = threads;
+    }
+
+    /**
+     * @return a factory of virtual threads
+     * @throws UnsupportedOperationException before JDK 21
+     */
+    public static ThreadFactory virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7000;
+        boolean virtual = args.length < 2 || "virtual".equals(args[1]);
+        ThreadFactory threads = virtual ? virtualThreads() : Executors.defaultThreadFactory();
+        VirtualThreadSessionServer server = new VirtualThreadSessionServer(new InetSocketAddress(port), threads);
+        server.start();
+        System.out.println("listening on " + server.getAddress() + (virtual ? " (virtual threads)" : ""));
+        long frames = 0;
+        while (true) {
+            Thread.sleep(REPORT_INTERVAL_MILLIS);
+            long total = server.getFrameCount();
+            System.out.println(String.format(Locale.US, "%d sessions, %.0f frames/s", server.getSessionCount(),
+                                             (total - frames) * 1000.0 / REPORT_INTERVAL_MILLIS));
+            frames = total;
+        }
+    }
+
+    /**
+     * Binds the listening socket and starts the acceptor thread.
+     */
+    public synchronized void start() throws IOException {
+        if (mServerChannel != null) {
+            throw new IllegalStateException();
+        }
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.bind(mRequestedAddress, 4096);
+        mThreads.newThread(this::acceptLoop).start();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) mServerChannel.getLocalAddress();
+    }
+
+    /**
+     * @return number of connected sessions
+     */
+    public int getSessionCount() {
+        return mSessions.get();
+    }
+
+    /**
+     * @return number of frames processed since the server started
+     */
+    public long getFrameCount() {
+        return mFrames.sum();
+    }
+
+    /**
+     * @return number of connections the server failed to accept or
+     *         set up
+     */
+    public long getAcceptFailureCount() {
+        return mAcceptFailures.sum();
+    }
+
+    /**
+     * Stops accepting connections and closes every session.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mClosed = true;
+        if (mServerChannel != null) {
+            mServerChannel.close();
+        }
+        for (SocketChannel channel : mChannels) {
+            SessionServer.closeQuietly(channel);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!mClosed && mServerChannel.isOpen()) {
+            final SocketChannel channel;
+            try {
+                channel = mServerChannel.accept();
+            } catch (IOException e) {
+                if (mClosed || !mServerChannel.isOpen()) {
+                    break; // Server shutting down
+                }
+                mAcceptFailures.increment();
+                System.err.println("VirtualThreadSessionServer: accept failed: " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            mChannels.add(channel);
+            mSessions.incrementAndGet();
+            try {
+                mThreads.newThread(() -> serve(channel)).start();
+            } catch (RuntimeException | OutOfMemoryError e) {
+                // No thread for this connection
+                mAcceptFailures.increment();
+                SessionServer.closeQuietly(channel);
+                mChannels.remove(channel);
+                mSessions.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Runs one connection until the client disconnects or sends a
+     * malformed message.
+     */
+    private void serve(SocketChannel channel) {
+        SessionServer.Session session = new SessionServer.Session(channel);
+        ByteBuffer out = session.mOut;
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            while (!mClosed && channel.read(session.mIn) >= 0) {
+                while (true) {
+                    mFrames.add(session.process());
+                    if (out.position() == 0) {
+                        break;
+                    }
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    out.clear();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Broken connection or malformed stream
+        } finally {
+            SessionServer.closeQuietly(channel);
+            mChannels.remove(channel);
+            mSessions.decrementAndGet();
+        }
+    }
+}
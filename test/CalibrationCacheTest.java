@@ -0,0 +1,94 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CalibrationCache must evict the least recently used calibration
+ * when full, stop handing out calibrations older than maxAgeMillis
+ * and count every lookup as either a hit or a miss.
+ */
+public class CalibrationCacheTest {
+
+    private static final long MAX_AGE = 1000;
+    private static final long NOW = 1000000;
+
+    @Test
+    public void evictsTheLeastRecentlyUsedCalibration() {
+        CalibrationCache cache = new CalibrationCache(3, MAX_AGE);
+        cache.put("a", 1, 10, NOW);
+        cache.put("b", 2, 20, NOW);
+        cache.put("c", 3, 30, NOW);
+        // A lookup makes "a" the most recently used
+        assertNotNull(cache.get("a", NOW));
+        cache.put("d", 4, 40, NOW);
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b", NOW));
+        assertEquals(1, cache.get("a", NOW).getCalcDiff(), 0);
+        assertEquals(30, cache.get("c", NOW).getSignalWidth());
+        assertEquals(4, cache.get("d", NOW).getCalcDiff(), 0);
+    }
+
+    @Test
+    public void replacingACalibrationKeepsOneEntry() {
+        CalibrationCache cache = new CalibrationCache(2, MAX_AGE);
+        cache.put("a", 1, 10, NOW);
+        cache.put("a", 5, 12, NOW + 10);
+        assertEquals(1, cache.size());
+        CalibrationCache.Calibration calibration = cache.get("a", NOW + 10);
+        assertEquals(5, calibration.getCalcDiff(), 0);
+        assertEquals(12, calibration.getSignalWidth());
+        assertEquals(NOW + 10, calibration.getStoredAt());
+    }
+
+    @Test
+    public void staleCalibrationsAreNotHandedOut() {
+        CalibrationCache cache = new CalibrationCache(4, MAX_AGE);
+        cache.put("a", 1, 10, NOW);
+        assertNotNull(cache.get("a", NOW + MAX_AGE));
+        assertNull(cache.get("a", NOW + MAX_AGE + 1));
+        // A stale calibration is removed when found
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a", NOW));
+    }
+
+    @Test
+    public void clockSetBackKeepsACalibrationLonger() {
+        CalibrationCache cache = new CalibrationCache(4, MAX_AGE);
+        cache.put("a", 1, 10, NOW);
+        assertNotNull(cache.get("a", NOW - 5 * MAX_AGE));
+        assertNotNull(cache.get("a", NOW + MAX_AGE));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        CalibrationCache cache = new CalibrationCache(4, MAX_AGE);
+        assertNull(cache.get("a", NOW));
+        cache.put("a", 1, 10, NOW);
+        cache.get("a", NOW);
+        cache.get("a", NOW + 1);
+        cache.get("b", NOW);
+        cache.get("a", NOW + MAX_AGE + 1);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void applyStartsADetectorOffWithTheCalibration() {
+        CalibrationCache cache = new CalibrationCache(4, Long.MAX_VALUE);
+        AnemiaDetection detector = new AnemiaDetection(1);
+        assertFalse(cache.apply("a", detector));
+        cache.put("a", 3.5, 12);
+        assertTrue(cache.apply("a", detector));
+        assertTrue(detector.isCalibrated());
+        assertEquals(3.5, detector.getCalcDiff(), 0);
+        assertEquals(12, detector.getSignalWidth());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+}
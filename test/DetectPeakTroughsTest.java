@@ -0,0 +1,149 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * detectPeakTroughs must find exactly the points that one
+ * detectPeakTrough call per frame finds, and leave the detector in
+ * the same state.
+ */
+public class DetectPeakTroughsTest {
+
+    private static final int FRAMES = 1800;
+
+    @Test
+    public void matchesPerFrameCalls() {
+        for (SyntheticTrace.Scenario scenario : SyntheticTrace.Scenario.values()) {
+            for (int startFrame : new int[] {1, 5, 40}) {
+                double[] red = SyntheticTrace.generate(scenario, FRAMES, 11).red;
+                AnemiaDetection bulk = new AnemiaDetection(1);
+                AnemiaDetection reference = new AnemiaDetection(1);
+                assertSameEvents(perFrame(reference, 1, red, 0, FRAMES, startFrame),
+                                 bulk.detectPeakTroughs(red, 0, FRAMES, startFrame));
+                assertEquals(reference.getHpfOutput(), bulk.getHpfOutput(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void matchesPerFrameCallsAcrossChunks() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 12).red;
+        AnemiaDetection bulk = new AnemiaDetection(3);
+        AnemiaDetection reference = new AnemiaDetection(3);
+        PeakTroughEvents events = new PeakTroughEvents();
+        int[] chunks = {1, 2, 7, 100, 3, 500};
+        int offset = 0;
+        for (int i = 0; offset < FRAMES; i++) {
+            int length = Math.min(chunks[i % chunks.length], FRAMES - offset);
+            if (offset > 0) {
+                // The first sample of a call is processed at the next frame
+                bulk.updateFrameCount(3 + offset);
+            }
+            bulk.detectPeakTroughs(red, offset, length, 1, events);
+            offset += length;
+        }
+        assertTrue(events.size() > 0);
+        assertSameEvents(perFrame(reference, 3, red, 0, FRAMES, 1), events);
+    }
+
+    @Test
+    public void matchesPerFrameCallsWithConditioningFilter() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 13).red;
+        AnemiaDetection bulk = new AnemiaDetection(1);
+        AnemiaDetection reference = new AnemiaDetection(1);
+        BiquadFilterChain chain = BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 4);
+        bulk.setConditioningFilter(chain.copy());
+        reference.setConditioningFilter(chain.copy());
+        assertSameEvents(perFrame(reference, 1, red, 0, FRAMES, 1),
+                         bulk.detectPeakTroughs(red, 0, FRAMES, 1));
+    }
+
+    @Test
+    public void matchesPerFrameCallsWithWiderPeakWindow() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.CLEAN, FRAMES, 14).red;
+        DetectorParameters params = DetectorParameters.DEFAULT.withPeakHalfWidth(4);
+        AnemiaDetection bulk = new AnemiaDetection(1, params);
+        AnemiaDetection reference = new AnemiaDetection(1, params);
+        assertSameEvents(perFrame(reference, 1, red, 0, FRAMES, 1),
+                         bulk.detectPeakTroughs(red, 0, FRAMES, 1));
+    }
+
+    @Test
+    public void removingTheConditioningFilterReseedsTheFirstOrderFilters() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 15).red;
+        int removedAt = 601;
+        AnemiaDetection detector = new AnemiaDetection(1);
+        detector.setConditioningFilter(BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 4));
+        perFrame(detector, 1, red, 0, removedAt - 1, 1);
+        detector.setConditioningFilter(null);
+        // Starts its filters at the frame the chain was removed at
+        AnemiaDetection fresh = new AnemiaDetection(removedAt);
+        double[] result = new double[3];
+        for (int f = removedAt; f <= FRAMES; f++) {
+            detector.updateFrameCount(f);
+            detector.detectPeakTrough(red[f - 1], 1, result);
+            fresh.updateFrameCount(f);
+            fresh.detectPeakTrough(red[f - 1], removedAt - 1, result);
+            if (f > removedAt) {
+                assertEquals("frame " + f, fresh.getHpfOutput(), detector.getHpfOutput(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void matchesPerFrameCallsAfterTheConditioningFilterIsRemoved() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 16).red;
+        BiquadFilterChain chain = BiquadFilterChain.bandPass(SyntheticTrace.FRAME_RATE, 0.7, 4, 4);
+        AnemiaDetection bulk = new AnemiaDetection(1);
+        AnemiaDetection reference = new AnemiaDetection(1);
+        bulk.setConditioningFilter(chain.copy());
+        reference.setConditioningFilter(chain.copy());
+        PeakTroughEvents events = bulk.detectPeakTroughs(red, 0, 600, 1);
+        PeakTroughEvents expected = perFrame(reference, 1, red, 0, 600, 1);
+        bulk.setConditioningFilter(null);
+        reference.setConditioningFilter(null);
+        bulk.updateFrameCount(601);
+        bulk.detectPeakTroughs(red, 600, FRAMES - 600, 1, events);
+        PeakTroughEvents after = perFrame(reference, 601, red, 600, FRAMES - 600, 1);
+        for (int i = 0; i < after.size(); i++) {
+            expected.add(after.getType(i), after.getFrame(i), after.getValue(i));
+        }
+        assertSameEvents(expected, events);
+        assertEquals(reference.getHpfOutput(), bulk.getHpfOutput(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsARangePastTheEnd() {
+        new AnemiaDetection(1).detectPeakTroughs(new double[10], 5, 6, 1);
+    }
+
+    /**
+     * One detectPeakTrough call per sample, advancing the frame count
+     * the way detectPeakTroughs does.
+     */
+    static PeakTroughEvents perFrame(AnemiaDetection detector, int firstFrame, double[] red,
+                                     int offset, int length, int startFrame) {
+        PeakTroughEvents events = new PeakTroughEvents();
+        double[] result = new double[3];
+        for (int i = 0; i < length; i++) {
+            detector.updateFrameCount(firstFrame + i);
+            int type = detector.detectPeakTrough(red[offset + i], startFrame, result);
+            if (type != 0) {
+                events.add(type, (int) result[1], result[2]);
+            }
+        }
+        return events;
+    }
+
+    static void assertSameEvents(PeakTroughEvents expected, PeakTroughEvents actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getType(i), actual.getType(i));
+            assertEquals(expected.getFrame(i), actual.getFrame(i));
+            assertEquals(expected.getValue(i), actual.getValue(i), 0);
+        }
+    }
+}
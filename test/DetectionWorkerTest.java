@@ -0,0 +1,134 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A DetectionWorker must give the results of running the detectors
+ * inline on the frames it receives, process everything queued before
+ * stop, and seed its filters even when the queue dropped the frames
+ * they are normally seeded from.
+ */
+public class DetectionWorkerTest {
+
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+    private static final int FRAMES = 3000;
+
+    @Test
+    public void matchesInlineDetectionWithoutDrops() throws InterruptedException {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 31);
+        FrameSummaryQueue queue = new FrameSummaryQueue(64, FrameSummaryQueue.OverflowPolicy.BLOCK);
+        Recorder recorder = new Recorder();
+        DetectionWorker worker = new DetectionWorker(queue, CONFIDENCE, START_FRAME, recorder);
+        worker.start();
+        for (int i = 0; i < FRAMES; i++) {
+            queue.offer(i, trace.red[i], trace.green[i], trace.blue[i]);
+        }
+        worker.stop();
+        assertEquals(FRAMES, worker.getProcessedCount());
+
+        AnemiaDetection quality = new AnemiaDetection(1);
+        AnemiaDetection events = new AnemiaDetection(1);
+        double[] result = new double[3];
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < FRAMES; i++) {
+            quality.updateFrameCount(i + 1);
+            int verdict = quality.checkDataQuality(trace.red[i], trace.green[i], trace.blue[i],
+                                                   CONFIDENCE, START_FRAME);
+            assertEquals("frame " + (i + 1), verdict, (int) recorder.mVerdicts.get(i)[2]);
+            assertEquals(i, recorder.mVerdicts.get(i)[0], 0);
+            events.updateFrameCount(i + 1);
+            if (events.detectPeakTrough(trace.red[i], START_FRAME, result) != 0) {
+                points.add(result.clone());
+            }
+        }
+        assertTrue(points.size() > 0);
+        assertPoints(points, recorder.mPoints);
+    }
+
+    @Test
+    public void stopProcessesFramesQueuedBeforeStart() throws InterruptedException {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.CLEAN, 100, 32);
+        FrameSummaryQueue queue = new FrameSummaryQueue(128, FrameSummaryQueue.OverflowPolicy.BLOCK);
+        Recorder recorder = new Recorder();
+        DetectionWorker worker = new DetectionWorker(queue, CONFIDENCE, START_FRAME, recorder);
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i, trace.red[i], trace.green[i], trace.blue[i]);
+        }
+        worker.start();
+        worker.stop();
+        assertEquals(100, worker.getProcessedCount());
+        assertEquals(100, recorder.mVerdicts.size());
+        assertEquals(0, queue.size());
+        assertFalse(queue.offer(100, 0, 0, 0));
+    }
+
+    @Test
+    public void seedsTheFiltersFromTheFirstDeliveredFrame() throws InterruptedException {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 33);
+        int capacity = 1024;
+        FrameSummaryQueue queue = new FrameSummaryQueue(capacity, FrameSummaryQueue.OverflowPolicy.DROP_OLDEST);
+        Recorder recorder = new Recorder();
+        DetectionWorker worker = new DetectionWorker(queue, CONFIDENCE, START_FRAME, recorder);
+        // Fill the ring before the worker runs, so the first
+        // FRAMES - capacity frames are dropped
+        for (int i = 0; i < FRAMES; i++) {
+            queue.offer(i, trace.red[i], trace.green[i], trace.blue[i]);
+        }
+        worker.start();
+        worker.stop();
+        assertEquals(FRAMES - capacity, queue.getDroppedCount());
+        assertEquals(capacity, worker.getProcessedCount());
+
+        // A detector that starts on the first delivered frame
+        int firstFrame = FRAMES - capacity + 1;
+        AnemiaDetection events = new AnemiaDetection(1);
+        int startFrame = firstFrame - events.getParameters().getGarbageFrames() - 1;
+        double[] result = new double[3];
+        List<double[]> points = new ArrayList<>();
+        for (int frame = firstFrame; frame <= FRAMES; frame++) {
+            events.updateFrameCount(frame);
+            if (events.detectPeakTrough(trace.red[frame - 1], startFrame, result) != 0) {
+                points.add(result.clone());
+            }
+        }
+        assertTrue(points.size() > 0);
+        assertPoints(points, recorder.mPoints);
+    }
+
+    private static void assertPoints(List<double[]> expected, List<double[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], actual.get(i)[0], 0);
+            assertEquals(expected.get(i)[1], actual.get(i)[1], 0);
+            assertEquals(expected.get(i)[2], actual.get(i)[2], 0);
+        }
+    }
+
+    /**
+     * Keeps every verdict (timestamp, frame, verdict) and point
+     * (type, frame, r value) the worker reports.
+     */
+    private static final class Recorder implements DetectionWorker.Listener {
+
+        final List<double[]> mVerdicts = new ArrayList<>();
+        final List<double[]> mPoints = new ArrayList<>();
+
+        @Override
+        public void onVerdict(long timestamp, int frame, int verdict) {
+            mVerdicts.add(new double[] {timestamp, frame, verdict});
+        }
+
+        @Override
+        public void onPeakTrough(long timestamp, int type, int frame, double rVal) {
+            mPoints.add(new double[] {type, frame, rVal});
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The DetectorMetrics histogram must place every long value in the
+ * log-linear bucket whose range holds it, each bucket within 1/16 of
+ * its values, and report percentiles as the top of the right bucket.
+ * Both quality checks must report to an attached DetectorMetrics.
+ */
+public class DetectorMetricsTest {
+
+    private static final int BUCKETS = 976;
+    private static final int CONFIDENCE = 5;
+
+    @Test
+    public void bucketsTileTheLongRange() {
+        long next = 0;
+        int bucket = 0;
+        // Every value up to Long.MAX_VALUE, bucket by bucket
+        while (true) {
+            long highest = DetectorMetrics.Histogram.highestValueOf(bucket);
+            assertEquals("lowest of " + bucket, bucket, DetectorMetrics.Histogram.bucketOf(next));
+            assertEquals("highest of " + bucket, bucket, DetectorMetrics.Histogram.bucketOf(highest));
+            if (bucket >= 16) {
+                assertTrue("width of " + bucket, (highest - next + 1) * 16 <= next);
+            }
+            if (highest == Long.MAX_VALUE) {
+                break;
+            }
+            next = highest + 1;
+            bucket++;
+        }
+        assertTrue(bucket < BUCKETS);
+    }
+
+    @Test
+    public void smallValuesGetABucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, DetectorMetrics.Histogram.bucketOf(value));
+            assertEquals(value, DetectorMetrics.Histogram.highestValueOf(value));
+        }
+        assertEquals(16, DetectorMetrics.Histogram.bucketOf(16));
+        assertEquals(31, DetectorMetrics.Histogram.bucketOf(31));
+        assertEquals(32, DetectorMetrics.Histogram.bucketOf(32));
+        assertEquals(32, DetectorMetrics.Histogram.bucketOf(33));
+        assertEquals(33, DetectorMetrics.Histogram.bucketOf(34));
+    }
+
+    @Test
+    public void percentilesReportTheTopOfTheirBucket() {
+        DetectorMetrics.Histogram histogram = new DetectorMetrics().getDetectNanos();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        // 500 lies in [496, 511], 990 in [960, 991]
+        assertEquals(511, histogram.getValueAtPercentile(50));
+        assertEquals(991, histogram.getValueAtPercentile(99));
+        // Capped by the largest value seen
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        for (double percentile = 1; percentile <= 100; percentile++) {
+            long exact = (long) Math.ceil(10 * percentile);
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + "%: " + reported, reported >= exact && reported - exact <= exact / 16);
+        }
+        try {
+            histogram.getValueAtPercentile(100.5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        DetectorMetrics.Histogram histogram = new DetectorMetrics().getDetectNanos();
+        histogram.record(-5);
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(0, histogram.getMax());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void bothQualityChecksReportTheirVerdicts() {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, 600, 17);
+        DetectorMetrics first = new DetectorMetrics();
+        DetectorMetrics second = new DetectorMetrics();
+        AnemiaDetection quality = new AnemiaDetection(1);
+        AnemiaDetection quality2 = new AnemiaDetection(1);
+        quality.setInstrumentation(first);
+        quality2.setInstrumentation(second);
+        int verdicts = 0;
+        for (int i = 0; i < trace.red.length; i++) {
+            quality.updateFrameCount(i + 1);
+            quality.checkDataQuality(trace.red[i], trace.green[i], trace.blue[i], CONFIDENCE, 1);
+            quality2.updateFrameCount(i + 1);
+            if (quality2.checkDataQuality2(trace.red[i], trace.green[i], trace.blue[i], CONFIDENCE) != 0) {
+                verdicts++;
+            }
+        }
+        for (DetectorMetrics metrics : new DetectorMetrics[] {first, second}) {
+            assertEquals(trace.red.length, metrics.getQualityNanos().getCount());
+            long total = 0;
+            for (int verdict = 0; verdict <= 4; verdict++) {
+                total += metrics.getVerdictCount(verdict);
+            }
+            assertEquals(trace.red.length, total);
+        }
+        assertTrue(verdicts > 0);
+        assertEquals(trace.red.length - verdicts, second.getVerdictCount(0));
+        long bucketed = 0;
+        for (int bucket = 0; bucket < AnemiaDetection.MAX_ERROR_ALLOTMENT; bucket++) {
+            bucketed += second.getBucketCount(bucket);
+        }
+        // The first window starts once the delay line is full
+        assertTrue(bucketed > (verdicts - 1) * (long) AnemiaDetection.DATA_SIZE);
+        assertTrue(bucketed <= verdicts * (long) AnemiaDetection.DATA_SIZE);
+    }
+}
@@ -0,0 +1,112 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * DetectorParameters must hold the detector constants by default,
+ * change one value at a time, and leave the filter outputs of the
+ * detectors bit identical to the division form they used before.
+ */
+public class DetectorParametersTest {
+
+    @Test
+    public void defaultHoldsTheDetectorConstants() {
+        DetectorParameters params = DetectorParameters.DEFAULT;
+        assertEquals(AnemiaDetection.LOW_PASS_SMOOTHING, params.getLowPassSmoothing(), 0);
+        assertEquals(AnemiaDetection.HIGH_PASS_SMOOTHING, params.getHighPassSmoothing(), 0);
+        assertEquals(AnemiaDetection.GARBAGE_FRAMES, params.getGarbageFrames());
+        assertEquals(AnemiaDetection.DATA_SIZE, params.getDataSize());
+        assertEquals(AnemiaDetection.AVERAGE, params.getCalibrationPeaks());
+        assertEquals(AnemiaDetection.DETECTOR_BUFFER_SIZE / 2, params.getPeakHalfWidth());
+        assertEquals(1 / AnemiaDetection.LOW_PASS_SMOOTHING, params.getLowPassGain(), 0);
+        assertEquals(1 - 1 / AnemiaDetection.HIGH_PASS_SMOOTHING, params.getHighPassGain(), 0);
+    }
+
+    @Test
+    public void withChangesOneValueAndItsGain() {
+        DetectorParameters tuned = DetectorParameters.DEFAULT.withLowPassSmoothing(4.5);
+        assertEquals(4.5, tuned.getLowPassSmoothing(), 0);
+        assertEquals(1 / 4.5, tuned.getLowPassGain(), 0);
+        assertEquals(DetectorParameters.DEFAULT.getHighPassGain(), tuned.getHighPassGain(), 0);
+        assertEquals(DetectorParameters.DEFAULT.getDataSize(), tuned.getDataSize());
+        assertEquals(AnemiaDetection.LOW_PASS_SMOOTHING, DetectorParameters.DEFAULT.getLowPassSmoothing(), 0);
+    }
+
+    @Test
+    public void rejectsInvalidValues() {
+        DetectorParameters params = DetectorParameters.DEFAULT;
+        assertRejected(params, 1, 0);
+        assertRejected(params, Double.NaN, 0);
+        assertRejected(params, Double.POSITIVE_INFINITY, 0);
+        assertRejected(params, 0, 1);
+        assertRejected(params, 0, 0.5);
+        try {
+            params.withDataSize(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // At least one frame per verdict
+        }
+        try {
+            params.withPeakHalfWidth(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // At least one sample on each side
+        }
+    }
+
+    /**
+     * The detectors must divide by the low pass smoothing, as they did
+     * before DetectorParameters, so both the per frame and the bulk
+     * path give bit identical filter outputs.
+     */
+    @Test
+    public void filtersMatchTheDivisionFormBitForBit() {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, 5000, 71);
+        double lowPass = DetectorParameters.DEFAULT.getLowPassSmoothing();
+        double highPass = DetectorParameters.DEFAULT.getHighPassSmoothing();
+        int seedFrame = AnemiaDetection.GARBAGE_FRAMES + 2;
+        AnemiaDetection detector = new AnemiaDetection(1);
+        double[] result = new double[3];
+        double lpf = 0;
+        double hpf = 0;
+        double prevLpf = 0;
+        for (int i = 0; i < trace.red.length; i++) {
+            int frame = i + 1;
+            detector.updateFrameCount(frame);
+            detector.detectPeakTrough(trace.red[i], 1, result);
+            if (frame < seedFrame) {
+                continue;
+            }
+            if (frame == seedFrame) {
+                lpf = trace.red[i];
+                continue;
+            }
+            lpf = lpf + (trace.red[i] - lpf) / lowPass;
+            hpf = frame == seedFrame + 1 ? 0 : (1 - (1 / highPass)) * (hpf + lpf - prevLpf);
+            prevLpf = lpf;
+            assertEquals("frame " + frame, lpf, detector.getLpfOutput(), 0);
+            assertEquals("frame " + frame, hpf, detector.getHpfOutput(), 0);
+        }
+
+        AnemiaDetection bulk = new AnemiaDetection(1);
+        bulk.detectPeakTroughs(trace.red, 0, trace.red.length, 1);
+        assertEquals(lpf, bulk.getLpfOutput(), 0);
+        assertEquals(hpf, bulk.getHpfOutput(), 0);
+    }
+
+    private static void assertRejected(DetectorParameters params, double lowPass, double highPass) {
+        try {
+            if (highPass == 0) {
+                params.withLowPassSmoothing(lowPass);
+            } else {
+                params.withHighPassSmoothing(highPass);
+            }
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Smoothing must be finite and above 1
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * FixedPointDetector must round averages to nearest, refuse formats
+ * whose values would overflow an int, and follow
+ * AnemiaDetection.detectPeakTrough: the high pass outputs within
+ * getFilterErrorBound and the same peak and trough points, apart from
+ * rare near ties that the bound allows to come out differently.
+ */
+public class FixedPointDetectorTest {
+
+    private static final int PIXELS = 640 * 480;
+    private static final int START_FRAME = 1;
+    private static final int FRAMES = 1800;
+    private static final int TRACES = 5;
+
+    @Test
+    public void rejectsFractionBitsOutsideTheGuard() {
+        for (int bits : new int[] {0, FixedPointDetector.MAX_FRACTION_BITS + 1}) {
+            try {
+                new FixedPointDetector(1, DetectorParameters.DEFAULT, bits);
+                fail("fraction bits " + bits);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(1, new FixedPointDetector(1, DetectorParameters.DEFAULT, 1).getFractionBits());
+    }
+
+    @Test
+    public void fullScaleInputDoesNotOverflowAtMaxFractionBits() {
+        // A 0 / 255 square wave gives the largest filter inputs there are
+        double[] red = new double[600];
+        for (int i = 0; i < red.length; i++) {
+            red[i] = (i / 6) % 2 == 0 ? 255 : 0;
+        }
+        int[] points = compare(red, FixedPointDetector.MAX_FRACTION_BITS);
+        assertTrue(points[0] > 0);
+        assertEquals(0, points[1]);
+
+        FixedPointDetector detector = new FixedPointDetector(1, DetectorParameters.DEFAULT,
+                                                             FixedPointDetector.MAX_FRACTION_BITS);
+        assertEquals(255 << FixedPointDetector.MAX_FRACTION_BITS, detector.average(255L * PIXELS, PIXELS));
+        assertEquals(255 << FixedPointDetector.MAX_FRACTION_BITS, detector.toFixed(255));
+    }
+
+    @Test
+    public void averageRoundsToNearest() {
+        FixedPointDetector detector = new FixedPointDetector(1);
+        // 1/3, 2/3 and 1/2 of 65536
+        assertEquals(21845, detector.average(1, 3));
+        assertEquals(43691, detector.average(2, 3));
+        assertEquals(32768, detector.average(1, 2));
+        assertEquals(0, detector.average(0, PIXELS));
+
+        Random random = new Random(23);
+        for (int bits : new int[] {1, 8, FixedPointDetector.DEFAULT_FRACTION_BITS,
+                                   FixedPointDetector.MAX_FRACTION_BITS}) {
+            FixedPointDetector fixed = new FixedPointDetector(1, DetectorParameters.DEFAULT, bits);
+            for (int i = 0; i < 10000; i++) {
+                int pixels = 1 + random.nextInt(PIXELS);
+                long sum = (long) (random.nextDouble() * 255 * pixels);
+                long expected = Math.round(sum * (double) (1L << bits) / pixels);
+                assertEquals(sum + " / " + pixels, expected, fixed.average(sum, pixels));
+            }
+        }
+    }
+
+    @Test
+    public void averageRejectsImpossibleSums() {
+        FixedPointDetector detector = new FixedPointDetector(1);
+        long[][] arguments = {{-1, 4}, {255 * 4 + 1, 4}, {0, 0}};
+        for (long[] argument : arguments) {
+            try {
+                detector.average(argument[0], (int) argument[1]);
+                fail(argument[0] + " / " + argument[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void agreesWithDetectPeakTroughWithinTheErrorBound() {
+        int defaultPoints = 0;
+        int defaultMismatches = 0;
+        for (SyntheticTrace.Scenario scenario : SyntheticTrace.Scenario.values()) {
+            for (int t = 0; t < TRACES; t++) {
+                double[] red = SyntheticTrace.generate(scenario, FRAMES, 1000 + t).red;
+                int[] points = compare(red, FixedPointDetector.DEFAULT_FRACTION_BITS);
+                defaultPoints += points[0];
+                defaultMismatches += points[1];
+                assertEquals(scenario + " " + t, 0, compare(red, FixedPointDetector.MAX_FRACTION_BITS)[1]);
+            }
+        }
+        assertTrue(defaultPoints > 0);
+        // Q16.16 may only flip the odd near tie
+        assertTrue(defaultMismatches + " of " + defaultPoints, defaultMismatches * 1000 <= defaultPoints);
+    }
+
+    /**
+     * Runs a red trace, as integer sums over a VGA frame, through both
+     * detectors the way FixedPointVerifier does. Checks the high pass
+     * outputs against getFilterErrorBound for the swing of the trace
+     * and the red value of every point both detectors found.
+     *
+     * @return number of points of AnemiaDetection, and number of
+     *         points found by only one of the detectors
+     */
+    private static int[] compare(double[] red, int bits) {
+        AnemiaDetection reference = new AnemiaDetection(1);
+        FixedPointDetector fixed = new FixedPointDetector(1, DetectorParameters.DEFAULT, bits);
+        double[] point = new double[3];
+        int[] fixedPoint = new int[3];
+        List<Long> referencePoints = new ArrayList<>();
+        List<Long> fixedPoints = new ArrayList<>();
+        double error = 0;
+        double swing = 0;
+        for (int f = 0; f < red.length; f++) {
+            long sum = Math.round(Math.min(255, Math.max(0, red[f])) * PIXELS);
+            double rAvg = sum / (double) PIXELS;
+            reference.updateFrameCount(f + 1);
+            int type = reference.detectPeakTrough(rAvg, START_FRAME, point);
+            fixed.updateFrameCount(f + 1);
+            int fixedType = fixed.detectPeakTrough(sum, PIXELS, START_FRAME, fixedPoint);
+            if (f + 1 > START_FRAME + 2) {
+                error = Math.max(error, Math.abs(fixed.toDouble(fixed.getHpfOutput()) - reference.getHpfOutput()));
+                swing = Math.max(swing, Math.max(Math.abs(rAvg - reference.getLpfOutput()),
+                                                 Math.abs(reference.getHpfOutput())));
+            }
+            if (type != 0) {
+                referencePoints.add(((long) point[1] << 2) | type);
+            }
+            if (fixedType != 0) {
+                fixedPoints.add(((long) fixedPoint[1] << 2) | fixedType);
+                if (type == fixedType && (int) point[1] == fixedPoint[1]) {
+                    assertEquals(point[2], fixed.toDouble(fixedPoint[2]), 0.5 / (1 << bits) + 1e-12);
+                }
+            }
+        }
+        double bound = fixed.getFilterErrorBound(swing);
+        assertTrue("error " + error + " bound " + bound, error <= bound);
+        List<Long> onlyFixed = new ArrayList<>(fixedPoints);
+        onlyFixed.removeAll(referencePoints);
+        List<Long> onlyReference = new ArrayList<>(referencePoints);
+        onlyReference.removeAll(fixedPoints);
+        return new int[] {referencePoints.size(), onlyFixed.size() + onlyReference.size()};
+    }
+}
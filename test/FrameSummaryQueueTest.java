@@ -0,0 +1,195 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every overflow policy of FrameSummaryQueue must keep the frames it
+ * promises, in order, and count what it drops; with one producer and
+ * one consumer thread no frame may be handed over twice, torn or
+ * out of order.
+ */
+public class FrameSummaryQueueTest {
+
+    private static final int CAPACITY = 4;
+    private static final int CONCURRENT_FRAMES = 200000;
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new FrameSummaryQueue(5, FrameSummaryQueue.OverflowPolicy.BLOCK).getCapacity());
+        assertEquals(8, new FrameSummaryQueue(8, FrameSummaryQueue.OverflowPolicy.BLOCK).getCapacity());
+        assertEquals(1, new FrameSummaryQueue(1, FrameSummaryQueue.OverflowPolicy.BLOCK).getCapacity());
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestFrames() {
+        FrameSummaryQueue queue = new FrameSummaryQueue(CAPACITY, FrameSummaryQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(100 + i, i, i, i));
+        }
+        assertEquals(6, queue.getDroppedCount());
+        assertEquals(CAPACITY, queue.getMaxDepth());
+        assertEquals(CAPACITY, queue.size());
+        assertSequences(drainAll(queue), 6, 7, 8, 9);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void dropNewestKeepsTheOldestFrames() {
+        FrameSummaryQueue queue = new FrameSummaryQueue(CAPACITY, FrameSummaryQueue.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i < CAPACITY, queue.offer(100 + i, i, i, i));
+        }
+        assertEquals(6, queue.getDroppedCount());
+        assertEquals(CAPACITY, queue.getMaxDepth());
+        assertSequences(drainAll(queue), 0, 1, 2, 3);
+        // Dropped frames still take a sequence number
+        assertTrue(queue.offer(110, 10, 10, 10));
+        assertSequences(drainAll(queue), 10);
+    }
+
+    @Test
+    public void blockWaitsForTheConsumer() throws InterruptedException {
+        final FrameSummaryQueue queue = new FrameSummaryQueue(CAPACITY, FrameSummaryQueue.OverflowPolicy.BLOCK);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    queue.offer(100 + i, i, i, i);
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(CAPACITY, queue.size());
+        List<double[]> frames = new ArrayList<>();
+        while (frames.size() < 6) {
+            drain(queue, frames);
+        }
+        producer.join();
+        assertSequences(frames, 0, 1, 2, 3, 4, 5);
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(CAPACITY, queue.getMaxDepth());
+    }
+
+    @Test
+    public void closeReleasesABlockedProducer() throws InterruptedException {
+        final FrameSummaryQueue queue = new FrameSummaryQueue(CAPACITY, FrameSummaryQueue.OverflowPolicy.BLOCK);
+        final boolean[] accepted = new boolean[1];
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(100 + i, i, i, i);
+        }
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accepted[0] = queue.offer(CAPACITY, 0, 0, 0);
+            }
+        });
+        producer.start();
+        producer.join(100);
+        queue.close();
+        producer.join();
+        assertFalse(accepted[0]);
+        assertFalse(queue.offer(0, 0, 0, 0));
+        // Frames queued before close can still be drained
+        assertSequences(drainAll(queue), 0, 1, 2, 3);
+    }
+
+    @Test
+    public void blockHandsOverEveryFrameInOrder() throws InterruptedException {
+        assertConcurrentHandOff(FrameSummaryQueue.OverflowPolicy.BLOCK);
+    }
+
+    @Test
+    public void dropOldestHandsOverFramesInOrderUnderContention() throws InterruptedException {
+        assertConcurrentHandOff(FrameSummaryQueue.OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Test
+    public void dropNewestHandsOverFramesInOrderUnderContention() throws InterruptedException {
+        assertConcurrentHandOff(FrameSummaryQueue.OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Runs a producer thread against the consuming test thread and
+     * checks that every frame arrives whole, at most once and in
+     * sequence order, and that delivered plus dropped frames account
+     * for all offered frames.
+     */
+    private static void assertConcurrentHandOff(FrameSummaryQueue.OverflowPolicy policy)
+            throws InterruptedException {
+        final FrameSummaryQueue queue = new FrameSummaryQueue(16, policy);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < CONCURRENT_FRAMES; i++) {
+                    queue.offer(i, i, i + 0.5, -i);
+                }
+                queue.close();
+            }
+        });
+        final long[] received = new long[1];
+        final long[] last = {-1};
+        FrameSummaryQueue.FrameHandler handler = new FrameSummaryQueue.FrameHandler() {
+            @Override
+            public void onFrame(long sequence, long timestamp, double rVal, double gVal, double bVal) {
+                assertTrue("sequence " + sequence + " after " + last[0], sequence > last[0]);
+                assertEquals(sequence, timestamp);
+                assertEquals(sequence, rVal, 0);
+                assertEquals(sequence + 0.5, gVal, 0);
+                assertEquals(-sequence, bVal, 0);
+                last[0] = sequence;
+                received[0]++;
+            }
+        };
+        producer.start();
+        while (true) {
+            if (queue.drain(handler, 7) == 0) {
+                if (queue.isClosed() && queue.drain(handler, Integer.MAX_VALUE) == 0) {
+                    break;
+                }
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertEquals(CONCURRENT_FRAMES, received[0] + queue.getDroppedCount());
+        assertTrue(queue.getMaxDepth() <= queue.getCapacity());
+        if (policy == FrameSummaryQueue.OverflowPolicy.BLOCK) {
+            assertEquals(0, queue.getDroppedCount());
+        }
+    }
+
+    private static List<double[]> drainAll(FrameSummaryQueue queue) {
+        List<double[]> frames = new ArrayList<>();
+        drain(queue, frames);
+        return frames;
+    }
+
+    /**
+     * Appends sequence, timestamp and red value of the queued frames.
+     */
+    private static void drain(FrameSummaryQueue queue, final List<double[]> frames) {
+        queue.drain(new FrameSummaryQueue.FrameHandler() {
+            @Override
+            public void onFrame(long sequence, long timestamp, double rVal, double gVal, double bVal) {
+                frames.add(new double[] {sequence, timestamp, rVal});
+            }
+        }, Integer.MAX_VALUE);
+    }
+
+    private static void assertSequences(List<double[]> frames, int... sequences) {
+        assertEquals(sequences.length, frames.size());
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(sequences[i], frames.get(i)[0], 0);
+            assertEquals(100 + sequences[i], frames.get(i)[1], 0);
+            assertEquals(sequences[i], frames.get(i)[2], 0);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MonotonicPeakDetector must find exactly the points a brute force
+ * window of 2k + 1 samples finds, and for k = 2 with the legacy
+ * delay the points of AnemiaDetection.detectPeakTrough.
+ */
+public class MonotonicPeakDetectorTest {
+
+    private static final int SAMPLES = 5000;
+
+    @Test
+    public void matchesABruteForceWindow() {
+        Random random = new Random(81);
+        double[] smooth = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, SAMPLES, 82).red;
+        double[] ties = new double[SAMPLES];
+        double[] walk = new double[SAMPLES];
+        for (int n = 0; n < SAMPLES; n++) {
+            ties[n] = random.nextInt(4);
+            walk[n] = (n > 0 ? walk[n - 1] : 0) + random.nextGaussian();
+        }
+        for (int k = 1; k <= 7; k++) {
+            for (boolean legacy : new boolean[] {false, true}) {
+                int points = 0;
+                for (double[] filtered : new double[][] {smooth, ties, walk}) {
+                    points += assertMatchesBruteForce(k, legacy, filtered);
+                }
+                assertTrue("k " + k, points > 0);
+            }
+        }
+    }
+
+    @Test
+    public void matchesDetectPeakTroughForHalfWidthTwo() {
+        double[] red = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, SAMPLES, 83).red;
+        AnemiaDetection detector = new AnemiaDetection(1);
+        MonotonicPeakDetector window = new MonotonicPeakDetector(2, true);
+        double[] result = new double[3];
+        int points = 0;
+        for (int n = 0; n < SAMPLES; n++) {
+            detector.updateFrameCount(n + 1);
+            int type = detector.detectPeakTrough(red[n], 1, result);
+            // detectPeakTrough starts its window on the fourth frame
+            if (n + 1 > 3) {
+                assertEquals("frame " + (n + 1), type, window.add(detector.getHpfOutput(), red[n]));
+                if (type != 0) {
+                    assertEquals(result[2], window.getPointValue(), 0);
+                    points++;
+                }
+            }
+        }
+        assertTrue(points > 0);
+    }
+
+    /**
+     * @return number of points found
+     */
+    private static int assertMatchesBruteForce(int k, boolean legacy, double[] filtered) {
+        MonotonicPeakDetector detector = new MonotonicPeakDetector(k, legacy);
+        assertEquals(legacy ? k + 1 : k, detector.getDelay());
+        int points = 0;
+        for (int n = 0; n < filtered.length; n++) {
+            double original = 1000 + n;
+            int type = detector.add(filtered[n], original);
+            int center = n - detector.getDelay();
+            int expected = center - k >= 0 ? bruteForce(filtered, center, k) : 0;
+            assertEquals("k " + k + " legacy " + legacy + " sample " + n, expected, type);
+            if (type != 0) {
+                assertEquals(1000 + center, detector.getPointValue(), 0);
+                points++;
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return 1 if the k samples on both sides of center fall
+     *         strictly away from it, 2 if they rise strictly away
+     *         from it, 0 otherwise
+     */
+    private static int bruteForce(double[] f, int center, int k) {
+        boolean peak = true;
+        boolean trough = true;
+        for (int i = 1; i <= k; i++) {
+            peak &= f[center - i] < f[center - i + 1] && f[center + i] < f[center + i - 1];
+            trough &= f[center - i] > f[center - i + 1] && f[center + i] > f[center + i - 1];
+        }
+        return peak ? AnemiaDetection.PEAK : trough ? AnemiaDetection.TROUGH : 0;
+    }
+}
@@ -0,0 +1,196 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every session of a MultiSessionDetector must behave exactly like
+ * its own AnemiaDetection object.
+ */
+public class MultiSessionDetectorTest {
+
+    private static final int CONFIDENCE = 5;
+    private static final int FRAMES = 1200;
+    private static final int SESSIONS = 13;
+
+    @Test
+    public void stepMatchesPerObjectDetectors() {
+        double[][] red = traces(SESSIONS, 21);
+        MultiSessionDetector engine = new MultiSessionDetector(4);
+        AnemiaDetection[] detectors = new AnemiaDetection[SESSIONS];
+        int[] ids = new int[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            ids[i] = engine.openSession(1, i % 3);
+            detectors[i] = new AnemiaDetection(1);
+        }
+        double[] rAvg = new double[SESSIONS];
+        double[] results = new double[3 * SESSIONS];
+        double[] expected = new double[3];
+        int points = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            for (int i = 0; i < SESSIONS; i++) {
+                rAvg[i] = red[i][f];
+            }
+            engine.step(ids, rAvg, SESSIONS, results);
+            for (int i = 0; i < SESSIONS; i++) {
+                detectors[i].updateFrameCount(f + 1);
+                int type = detectors[i].detectPeakTrough(rAvg[i], i % 3, expected);
+                assertArrayEquals("session " + i + " frame " + (f + 1), expected,
+                                  Arrays.copyOfRange(results, 3 * i, 3 * i + 3), 0);
+                if (type != 0) {
+                    points++;
+                }
+            }
+        }
+        assertTrue(points > 0);
+    }
+
+    @Test
+    public void stepAllMatchesStepAcrossClosedAndReopenedSessions() {
+        assertStepAllMatchesStep(null);
+    }
+
+    @Test
+    public void stepAllEvaluatesTheFiltersWithTheKernel() {
+        final int[] calls = new int[1];
+        assertStepAllMatchesStep(new SessionFilterKernel() {
+            @Override
+            public void filter(double[] rAvg, double[] lpf, double[] hpf, double[] prevLpf,
+                               double[] lpfOut, double[] hpfOut, int count,
+                               double lowPassSmoothing, double highPassGain) {
+                calls[0]++;
+                for (int s = 0; s < count; s++) {
+                    lpfOut[s] = lpf[s] + (rAvg[s] - lpf[s]) / lowPassSmoothing;
+                    hpfOut[s] = highPassGain * (hpf[s] + lpfOut[s] - prevLpf[s]);
+                }
+            }
+        });
+        assertEquals(FRAMES, calls[0]);
+    }
+
+    /**
+     * Runs the same sessions through stepAll, with the given kernel,
+     * and through step, closing and reopening some on the way.
+     */
+    static void assertStepAllMatchesStep(SessionFilterKernel kernel) {
+        double[][] red = traces(SESSIONS, 22);
+        MultiSessionDetector bulk = new MultiSessionDetector(4);
+        MultiSessionDetector reference = new MultiSessionDetector(4);
+        bulk.setFilterKernel(kernel);
+        for (int i = 0; i < SESSIONS; i++) {
+            assertEquals(i, bulk.openSession(1, 0));
+            reference.openSession(1, 0);
+        }
+        double[] rAvg = new double[SESSIONS];
+        double[] results = new double[3 * SESSIONS];
+        double[] expected = new double[3];
+        int[] id = new int[1];
+        int points = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            if (f == 300) {
+                bulk.closeSession(4);
+                reference.closeSession(4);
+                bulk.closeSession(9);
+                reference.closeSession(9);
+            } else if (f == 500) {
+                assertEquals(9, bulk.openSession(f + 1, 2));
+                assertEquals(9, reference.openSession(f + 1, 2));
+            }
+            for (int i = 0; i < SESSIONS; i++) {
+                rAvg[i] = red[i][f];
+            }
+            bulk.stepAll(rAvg, results);
+            for (int i = 0; i < SESSIONS; i++) {
+                if (!reference.isOpen(i)) {
+                    assertArrayEquals(new double[3], Arrays.copyOfRange(results, 3 * i, 3 * i + 3), 0);
+                    continue;
+                }
+                id[0] = i;
+                reference.step(id, new double[] {rAvg[i]}, 1, expected);
+                assertArrayEquals("session " + i + " frame " + (f + 1), expected,
+                                  Arrays.copyOfRange(results, 3 * i, 3 * i + 3), 0);
+                if (expected[0] != 0) {
+                    points++;
+                }
+            }
+        }
+        assertTrue(points > 0);
+    }
+
+    static double[][] traces(int sessions, long seed) {
+        SyntheticTrace.Scenario[] scenarios = SyntheticTrace.Scenario.values();
+        double[][] red = new double[sessions][];
+        for (int i = 0; i < sessions; i++) {
+            red[i] = SyntheticTrace.generate(scenarios[i % scenarios.length], FRAMES, seed + i).red;
+        }
+        return red;
+    }
+
+    @Test
+    public void wideAndClampedDelayLinesMatchPerObjectDetectors() {
+        // Slow pulses calibrate to about half their period
+        int[] periods = {20, 200, 20, 4000, 20};
+        DetectorParameters params = DetectorParameters.DEFAULT.withCalibrationPeaks(1);
+        int frames = 9000;
+        MultiSessionDetector engine = new MultiSessionDetector(2, params);
+        AnemiaDetection[] detectors = new AnemiaDetection[periods.length];
+        int[] ids = new int[periods.length];
+        for (int i = 0; i < periods.length; i++) {
+            ids[i] = engine.openSession(1, 1);
+            detectors[i] = new AnemiaDetection(1, params);
+        }
+        int[] expected = new int[periods.length];
+        int[] verdicts = new int[periods.length];
+        double[] r = new double[periods.length];
+        double[] g = new double[periods.length];
+        double[] b = new double[periods.length];
+        int clampedVerdicts = 0;
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < periods.length; i++) {
+                r[i] = 150 + 20 * Math.sin(2 * Math.PI * f / periods[i]);
+                g[i] = 10;
+                b[i] = 10;
+                detectors[i].updateFrameCount(f + 1);
+                expected[i] = detectors[i].checkDataQuality(r[i], g[i], b[i], CONFIDENCE, 1);
+            }
+            engine.checkDataQuality(ids, r, g, b, periods.length, CONFIDENCE, verdicts);
+            assertArrayEquals("frame " + (f + 1), expected, verdicts);
+            if (verdicts[3] != 0) {
+                clampedVerdicts++;
+            }
+        }
+        assertTrue(clampedVerdicts > 0);
+        assertTrue(detectors[1].getSignalWidth() > 32);
+        assertEquals(AnemiaDetection.MAX_SIGNAL_WIDTH, detectors[3].getSignalWidth());
+    }
+
+    @Test
+    public void closeSessionReleasesTheWideDelayLine() {
+        DetectorParameters params = DetectorParameters.DEFAULT.withCalibrationPeaks(1);
+        MultiSessionDetector engine = new MultiSessionDetector(2, params);
+        int narrow = engine.openSession(1, 1);
+        int wide = engine.openSession(1, 1);
+        int[] ids = {narrow, wide};
+        int[] periods = {20, 200};
+        double[] r = new double[2];
+        double[] g = {10, 10};
+        double[] b = {10, 10};
+        int[] verdicts = new int[2];
+        for (int f = 0; f < 2000; f++) {
+            for (int i = 0; i < 2; i++) {
+                r[i] = 150 + 20 * Math.sin(2 * Math.PI * f / periods[i]);
+            }
+            engine.checkDataQuality(ids, r, g, b, 2, CONFIDENCE, verdicts);
+        }
+        assertEquals(1, engine.getWideDelayLineCount());
+        engine.closeSession(narrow);
+        assertEquals(1, engine.getWideDelayLineCount());
+        engine.closeSession(wide);
+        assertEquals(0, engine.getWideDelayLineCount());
+    }
+}
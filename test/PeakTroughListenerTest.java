@@ -0,0 +1,114 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A PeakTroughListener must be told about exactly the points
+ * detectPeakTrough reports, earlier, and about every tentative point
+ * once more when it is confirmed or retracted.
+ */
+public class PeakTroughListenerTest {
+
+    private static final int FRAMES = 3000;
+
+    @Test
+    public void confirmsThePointsOfDetectPeakTrough() {
+        for (int halfWidth : new int[] {2, 4}) {
+            int retractions = 0;
+            for (SyntheticTrace.Scenario scenario : SyntheticTrace.Scenario.values()) {
+                retractions += assertPredictions(scenario, halfWidth);
+            }
+            assertTrue(retractions > 0);
+        }
+    }
+
+    /**
+     * @return number of retracted points
+     */
+    private static int assertPredictions(SyntheticTrace.Scenario scenario, int halfWidth) {
+        double[] red = SyntheticTrace.generate(scenario, FRAMES, 91).red;
+        DetectorParameters params = DetectorParameters.DEFAULT.withPeakHalfWidth(halfWidth);
+        AnemiaDetection detector = new AnemiaDetection(1, params);
+        AnemiaDetection plain = new AnemiaDetection(1, params);
+        Recorder recorder = new Recorder();
+        detector.setPeakTroughListener(recorder);
+        PeakTroughEvents reported = new PeakTroughEvents();
+        double[] result = new double[3];
+        double[] plainResult = new double[3];
+        for (int f = 1; f <= FRAMES; f++) {
+            recorder.mFrame = f;
+            detector.updateFrameCount(f);
+            plain.updateFrameCount(f);
+            int type = detector.detectPeakTrough(red[f - 1], 1, result);
+            // The listener does not change what detectPeakTrough reports
+            assertEquals(plain.detectPeakTrough(red[f - 1], 1, plainResult), type);
+            assertEquals(plainResult[1], result[1], 0);
+            if (type != 0) {
+                reported.add(type, (int) result[1], result[2]);
+                // Confirmed on an earlier frame
+                assertTrue(recorder.mConfirmedAt.get(reported.size() - 1) < f);
+            }
+        }
+        PeakTroughEvents confirmed = recorder.mConfirmed;
+        assertTrue(reported.size() > 0 || scenario == SyntheticTrace.Scenario.FINGER_OFF);
+        assertTrue(confirmed.size() - reported.size() == 0 || confirmed.size() - reported.size() == 1);
+        for (int i = 0; i < reported.size(); i++) {
+            assertEquals(reported.getType(i), confirmed.getType(i));
+            assertEquals(reported.getFrame(i), confirmed.getFrame(i));
+            assertEquals(reported.getValue(i), confirmed.getValue(i), 0);
+        }
+        assertEquals(confirmed.size() + recorder.mRetractions, recorder.mTentatives - (recorder.mOpenType != 0 ? 1 : 0));
+        return recorder.mRetractions;
+    }
+
+    /**
+     * Checks the order of the calls as they come and records the
+     * confirmed points.
+     */
+    private static final class Recorder implements PeakTroughListener {
+
+        final PeakTroughEvents mConfirmed = new PeakTroughEvents();
+        final List<Integer> mConfirmedAt = new ArrayList<>();
+        int mFrame;
+        int mTentatives;
+        int mRetractions;
+        int mOpenType;
+        int mOpenFrame;
+        double mOpenValue;
+
+        @Override
+        public void onTentative(int type, int frame, double rVal) {
+            assertEquals("tentative while one is open", 0, mOpenType);
+            assertEquals("tentative 1 frame late", mFrame - 1, frame);
+            mOpenType = type;
+            mOpenFrame = frame;
+            mOpenValue = rVal;
+            mTentatives++;
+        }
+
+        @Override
+        public void onConfirmed(int type, int frame, double rVal) {
+            assertEquals(mOpenType, type);
+            assertEquals(mOpenFrame, frame);
+            assertEquals(mOpenValue, rVal, 0);
+            mConfirmed.add(type, frame, rVal);
+            mConfirmedAt.add(mFrame);
+            mOpenType = 0;
+        }
+
+        @Override
+        public void onRetracted(int type, int frame) {
+            assertEquals(mOpenType, type);
+            assertEquals(mOpenFrame, frame);
+            assertTrue(frame < mFrame);
+            mRetractions++;
+            mOpenType = 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * readSnapshot must restore exactly what writeSnapshot saved, and
+ * reject anything else without touching the detector.
+ */
+public class SnapshotTest {
+
+    private static final int FRAMES = 3000;
+    private static final int CONFIDENCE = 5;
+
+    // Offsets into the snapshot layout documented at writeSnapshot
+    private static final int FLAGS_AT = 6;
+    private static final int SIGNAL_WIDTH_AT = 7 + 8 * 8 + 6 * 4;
+    private static final int CAPACITY_AT = SIGNAL_WIDTH_AT + 3 * 4
+            + 2 * 8 * AnemiaDetection.DETECTOR_BUFFER_SIZE;
+
+    private final SyntheticTrace mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 61);
+
+    @Test
+    public void restoredDetectorContinuesIdentically() {
+        AnemiaDetection original = run(new AnemiaDetection(1), 0, 900);
+        AnemiaDetection restored = new AnemiaDetection(1);
+        restored.readSnapshot(snapshot(original));
+        double[] expected = new double[3];
+        double[] actual = new double[3];
+        for (int f = 900; f < FRAMES; f++) {
+            assertEquals(step(original, f, expected), step(restored, f, actual));
+            assertArrayEquals(expected, actual, 0);
+        }
+    }
+
+    @Test
+    public void rejectsASignalWidthPastTheLimitWithoutAllocating() {
+        AnemiaDetection detector = run(new AnemiaDetection(1), 0, 2000);
+        assertTrue(detector.isCalibrated());
+        ByteBuffer crafted = snapshot(detector);
+        crafted.put(FLAGS_AT, (byte) (crafted.get(FLAGS_AT) | 1));
+        crafted.putInt(SIGNAL_WIDTH_AT, Integer.MAX_VALUE - 8);
+        crafted.putInt(CAPACITY_AT, Integer.MAX_VALUE - 8);
+        assertRejected(detector, crafted);
+        crafted.putInt(SIGNAL_WIDTH_AT, AnemiaDetection.MAX_SIGNAL_WIDTH + 1);
+        crafted.putInt(CAPACITY_AT, AnemiaDetection.MAX_SIGNAL_WIDTH + 1);
+        assertRejected(detector, crafted);
+        crafted.putInt(SIGNAL_WIDTH_AT, -1);
+        crafted.putInt(CAPACITY_AT, 1);
+        assertRejected(detector, crafted);
+    }
+
+    @Test
+    public void corruptSnapshotsAreRejectedWithoutChangingTheState() {
+        Random random = new Random(62);
+        ByteBuffer[] valid = {
+            snapshot(run(new AnemiaDetection(1), 0, 30)),
+            snapshot(run(new AnemiaDetection(1), 0, 2000))
+        };
+        AnemiaDetection detector = run(new AnemiaDetection(1), 0, 1200);
+        int rejected = 0;
+        for (int i = 0; i < 5000; i++) {
+            ByteBuffer corrupt = corrupt(valid[i % valid.length], random);
+            byte[] before = snapshot(detector).array();
+            try {
+                detector.readSnapshot(corrupt);
+            } catch (IllegalArgumentException e) {
+                assertArrayEquals(before, snapshot(detector).array());
+                rejected++;
+                continue;
+            }
+            // Accepted: a consistent snapshot that can be written again
+            snapshot(detector);
+        }
+        assertTrue(rejected > 0);
+    }
+
+    @Test
+    public void calibrationPastTheLimitIsRejected() {
+        try {
+            new AnemiaDetection(1).applyCalibration(3, AnemiaDetection.MAX_SIGNAL_WIDTH + 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Past the delay line limit
+        }
+        try {
+            new CalibrationCache(4, 60000).put("user", 3, AnemiaDetection.MAX_SIGNAL_WIDTH + 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Past the delay line limit
+        }
+    }
+
+    private void assertRejected(AnemiaDetection detector, ByteBuffer crafted) {
+        byte[] before = snapshot(detector).array();
+        try {
+            detector.readSnapshot(crafted.duplicate());
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertArrayEquals(before, snapshot(detector).array());
+        }
+    }
+
+    /**
+     * A copy of the snapshot with a few random bytes changed, the
+     * header kept intact half of the time, or cut short.
+     */
+    private static ByteBuffer corrupt(ByteBuffer valid, Random random) {
+        byte[] bytes = Arrays.copyOf(valid.array(), valid.limit());
+        if (random.nextInt(10) == 0) {
+            return ByteBuffer.wrap(bytes, 0, random.nextInt(bytes.length)).slice();
+        }
+        int from = random.nextBoolean() ? 0 : FLAGS_AT;
+        for (int n = 1 + random.nextInt(4); n > 0; n--) {
+            bytes[from + random.nextInt(bytes.length - from)] = (byte) random.nextInt(256);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private AnemiaDetection run(AnemiaDetection detector, int from, int to) {
+        double[] result = new double[3];
+        for (int f = from; f < to; f++) {
+            step(detector, f, result);
+        }
+        return detector;
+    }
+
+    private int step(AnemiaDetection detector, int f, double[] result) {
+        detector.updateFrameCount(f + 1);
+        int verdict = detector.checkDataQuality(mTrace.red[f], mTrace.green[f], mTrace.blue[f], CONFIDENCE, 1);
+        detector.detectPeakTrough(mTrace.red[f], 1, result);
+        return verdict;
+    }
+
+    private static ByteBuffer snapshot(AnemiaDetection detector) {
+        ByteBuffer buffer = ByteBuffer.allocate(detector.getSnapshotSize());
+        detector.writeSnapshot(buffer);
+        buffer.flip();
+        return buffer;
+    }
+}
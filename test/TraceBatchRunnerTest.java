@@ -0,0 +1,125 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TraceBatchRunner must read the trace file format of its class
+ * comment, refuse files it cannot trust with a message naming the
+ * file, and sum the per trace results into the Summary.
+ */
+public class TraceBatchRunnerTest {
+
+    private static final int CONFIDENCE = 5;
+    private static final int FRAMES = 1500;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readsHeaderCommentsAndSeparators() throws IOException {
+        Path file = write("small.csv",
+                "r,g,b",
+                "# recorded on a test phone",
+                "212.4,1.3,0.9",
+                "",
+                "  210.0 1.5\t0.75  ",
+                "209.5, 2, 1");
+        double[][] channels = TraceBatchRunner.readTrace(file);
+        assertArrayEquals(new double[] {212.4, 210.0, 209.5}, channels[0], 0);
+        assertArrayEquals(new double[] {1.3, 1.5, 2}, channels[1], 0);
+        assertArrayEquals(new double[] {0.9, 0.75, 1}, channels[2], 0);
+    }
+
+    @Test
+    public void rejectsNegativeChannelValues() throws IOException {
+        Path file = write("negative.csv",
+                "212.4,1.3,0.9",
+                "212.1,-1.3,0.9");
+        try {
+            TraceBatchRunner.readTrace(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(file.toString()));
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+    }
+
+    @Test
+    public void runFailsOnABadTrace() throws IOException {
+        writeTrace("a.csv", 31);
+        write("b.csv", "212.4,1.3,-0.9");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new TraceBatchRunner(pool, CONFIDENCE, 0).run(mFolder.getRoot().toPath());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("b.csv"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void summaryAddsUpTheTraces() throws IOException {
+        double[][] a = writeTrace("a.csv", 32);
+        double[][] b = writeTrace("b.csv", 33);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        TraceBatchRunner runner = new TraceBatchRunner(pool, CONFIDENCE, 0);
+        TraceBatchRunner.Summary summary;
+        try {
+            summary = runner.run(mFolder.getRoot().toPath());
+        } finally {
+            pool.shutdown();
+        }
+        TraceBatchRunner.TraceResult first = runner.process("a", a[0], a[1], a[2], FRAMES);
+        TraceBatchRunner.TraceResult second = runner.process("b", b[0], b[1], b[2], FRAMES);
+
+        assertEquals(Arrays.asList("a.csv", "b.csv"),
+                     Arrays.asList(summary.getTraces().get(0).getName(), summary.getTraces().get(1).getName()));
+        assertEquals(2 * FRAMES, summary.getFrames());
+        assertEquals(first.getPeaks() + second.getPeaks(), summary.getPeaks());
+        assertEquals(first.getTroughs() + second.getTroughs(), summary.getTroughs());
+        assertTrue(summary.getPeaks() > 0);
+        long verdicts = 0;
+        for (int v = 0; v <= 4; v++) {
+            assertEquals(first.getVerdictCount(v) + second.getVerdictCount(v), summary.getVerdictCount(v));
+            verdicts += summary.getVerdictCount(v);
+        }
+        assertEquals(summary.getFrames(), verdicts);
+    }
+
+    /**
+     * Writes a NOISY synthetic trace with two decimals.
+     *
+     * @return the channels as read back from the file
+     */
+    private double[][] writeTrace(String name, long seed) throws IOException {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, seed);
+        String[] lines = new String[FRAMES + 1];
+        lines[0] = "r,g,b";
+        for (int i = 0; i < FRAMES; i++) {
+            lines[i + 1] = String.format(Locale.US, "%.2f,%.2f,%.2f",
+                                         trace.red[i], trace.green[i], trace.blue[i]);
+        }
+        return TraceBatchRunner.readTrace(write(name, lines));
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(mFolder.getRoot().toPath().resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,299 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A DetectionProcessor must never hand a subscriber more batches than
+ * it requested, merge the results of the frames that arrive while
+ * there is no demand into one batch, keep at most maxPendingFrames
+ * frames requested from upstream, and pass on onComplete and onError
+ * only after the pending batch. The batches together must hold exactly
+ * the results of running the detectors inline.
+ */
+public class DetectionProcessorTest {
+
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+    private static final int MAX_PENDING = 8;
+    private static final int FRAMES = 3000;
+
+    private final SyntheticTrace mTrace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, 41);
+
+    @Test
+    public void neverEmitsMoreThanRequested() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.pump(FRAMES);
+        assertEquals(0, sink.mBatches.size());
+        while (!source.isExhausted()) {
+            sink.request(1);
+            source.pump(FRAMES);
+            assertEquals(sink.mRequested, sink.mBatches.size());
+        }
+        source.complete();
+        assertFalse(sink.mLog.contains("complete"));
+        sink.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList("batch", "complete"), sink.mLog.subList(sink.mLog.size() - 2, sink.mLog.size()));
+        assertMatchesInlineDetection(sink.mBatches);
+    }
+
+    @Test
+    public void mergesResultsWhileThereIsNoDemand() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.pump(FRAMES);
+        // Upstream stalls once MAX_PENDING frames with results are held
+        assertFalse(source.isExhausted());
+        assertEquals(0, source.mOutstanding);
+        assertEquals(MAX_PENDING, new Reference(mTrace, source.mDelivered).mResultFrames);
+
+        sink.request(1);
+        assertEquals(1, sink.mBatches.size());
+        assertEquals(source.mDelivered, sink.mBatches.get(0).getFrameCount());
+        assertTrue(sink.mBatches.get(0).getVerdictCount() + sink.mBatches.get(0).getEvents().size() > 1);
+
+        sink.request(Long.MAX_VALUE);
+        source.pump(FRAMES);
+        assertTrue(source.isExhausted());
+        source.complete();
+        assertTrue(sink.mLog.contains("complete"));
+        assertMatchesInlineDetection(sink.mBatches);
+    }
+
+    @Test
+    public void upstreamRequestsStayBounded() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        // A slow subscriber takes one batch every 50 frames
+        while (!source.isExhausted()) {
+            source.pump(50);
+            sink.request(1);
+            assertTrue(source.mTotalRequested <= source.mDelivered + MAX_PENDING);
+        }
+        assertTrue(source.mMaxOutstanding <= MAX_PENDING);
+        source.complete();
+        sink.request(Long.MAX_VALUE);
+        assertMatchesInlineDetection(sink.mBatches);
+    }
+
+    @Test
+    public void completeWaitsForThePendingBatch() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.pump(FRAMES);
+        source.complete();
+        assertTrue(sink.mLog.isEmpty());
+        sink.request(1);
+        assertEquals(Arrays.asList("batch", "complete"), sink.mLog);
+        assertEquals(source.mDelivered, sink.mBatches.get(0).getFrameCount());
+    }
+
+    @Test
+    public void errorWaitsForThePendingBatch() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.pump(FRAMES);
+        RuntimeException error = new RuntimeException("camera closed");
+        processor.onError(error);
+        assertTrue(sink.mLog.isEmpty());
+        sink.request(1);
+        assertEquals(Arrays.asList("batch", "error"), sink.mLog);
+        assertSame(error, sink.mError);
+        assertEquals(source.mDelivered, sink.mBatches.get(0).getFrameCount());
+    }
+
+    @Test
+    public void nonPositiveRequestFailsAtOnce() {
+        DetectionProcessor processor = new DetectionProcessor(CONFIDENCE, START_FRAME, MAX_PENDING);
+        Source source = new Source(processor, mTrace);
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.pump(FRAMES);
+        sink.request(0);
+        assertEquals(Arrays.asList("error"), sink.mLog);
+        assertTrue(sink.mError instanceof IllegalArgumentException);
+        assertTrue(source.mCancelled);
+    }
+
+    /**
+     * Checks that the batches together cover every frame and hold the
+     * verdicts and points of the inline detectors in order.
+     */
+    private void assertMatchesInlineDetection(List<DetectionBatch> batches) {
+        Reference reference = new Reference(mTrace, FRAMES);
+        List<double[]> verdicts = new ArrayList<>();
+        List<double[]> points = new ArrayList<>();
+        int frames = 0;
+        for (DetectionBatch batch : batches) {
+            frames += batch.getFrameCount();
+            for (int i = 0; i < batch.getVerdictCount(); i++) {
+                verdicts.add(new double[] {batch.getVerdictFrame(i), batch.getVerdict(i)});
+            }
+            PeakTroughEvents events = batch.getEvents();
+            for (int i = 0; i < events.size(); i++) {
+                points.add(new double[] {events.getType(i), events.getFrame(i), events.getValue(i)});
+            }
+        }
+        assertEquals(FRAMES, frames);
+        assertTrue(reference.mPoints.size() > 0);
+        assertRows(reference.mVerdicts, verdicts);
+        assertRows(reference.mPoints, points);
+    }
+
+    private static void assertRows(List<double[]> expected, List<double[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("row " + i, Arrays.equals(expected.get(i), actual.get(i)));
+        }
+    }
+
+    /**
+     * The verdicts (frame, verdict) and points (type, frame, r value)
+     * of the first frames of a trace, and how many of those frames
+     * gave a result, found by running the detectors inline.
+     */
+    private static final class Reference {
+
+        final List<double[]> mVerdicts = new ArrayList<>();
+        final List<double[]> mPoints = new ArrayList<>();
+        int mResultFrames;
+
+        Reference(SyntheticTrace trace, int frames) {
+            AnemiaDetection quality = new AnemiaDetection(1);
+            AnemiaDetection events = new AnemiaDetection(1);
+            double[] result = new double[3];
+            for (int i = 0; i < frames; i++) {
+                int frame = i + 1;
+                quality.updateFrameCount(frame);
+                int verdict = quality.checkDataQuality(trace.red[i], trace.green[i], trace.blue[i],
+                                                       CONFIDENCE, START_FRAME);
+                events.updateFrameCount(frame);
+                int type = events.detectPeakTrough(trace.red[i], START_FRAME, result);
+                if (verdict != 0) {
+                    mVerdicts.add(new double[] {frame, verdict});
+                }
+                if (type != 0) {
+                    mPoints.add(new double[] {type, (int) result[1], result[2]});
+                }
+                if (verdict != 0 || type != 0) {
+                    mResultFrames++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A synchronous publisher of the trace frames that only sends what
+     * the processor requested and records how much it asked for.
+     */
+    private static final class Source implements Flow.Subscription {
+
+        private final DetectionProcessor mProcessor;
+        private final SyntheticTrace mTrace;
+        long mOutstanding;
+        long mMaxOutstanding;
+        long mTotalRequested;
+        int mDelivered;
+        boolean mCancelled;
+
+        Source(DetectionProcessor processor, SyntheticTrace trace) {
+            this.mProcessor = processor;
+            this.mTrace     = trace;
+            processor.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            assertTrue(n > 0);
+            mOutstanding += n;
+            mTotalRequested += n;
+            mMaxOutstanding = Math.max(mMaxOutstanding, mOutstanding);
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isExhausted() {
+            return mDelivered == mTrace.red.length;
+        }
+
+        /**
+         * Sends up to count frames, as long as the processor asked for them.
+         */
+        void pump(int count) {
+            for (int i = 0; i < count && mOutstanding > 0 && !mCancelled && !isExhausted(); i++) {
+                mOutstanding--;
+                int index = mDelivered++;
+                mProcessor.onNext(new FrameSample(index, index + 1, mTrace.red[index],
+                                                  mTrace.green[index], mTrace.blue[index]));
+            }
+        }
+
+        void complete() {
+            mProcessor.onComplete();
+        }
+    }
+
+    /**
+     * Records the batches and signals it gets, and fails on a batch it
+     * did not request.
+     */
+    private static final class Sink implements Flow.Subscriber<DetectionBatch> {
+
+        final List<DetectionBatch> mBatches = new ArrayList<>();
+        final List<String> mLog = new ArrayList<>();
+        Flow.Subscription mSubscription;
+        long mRequested;
+        Throwable mError;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            mSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(DetectionBatch batch) {
+            assertTrue(mBatches.size() < mRequested);
+            mBatches.add(batch);
+            mLog.add("batch");
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+            mLog.add("error");
+        }
+
+        @Override
+        public void onComplete() {
+            mLog.add("complete");
+        }
+
+        void request(long n) {
+            mRequested = n == Long.MAX_VALUE || mRequested + n < 0 ? Long.MAX_VALUE : mRequested + n;
+            mSubscription.request(n);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every Verdict event must carry the verdict and bucket counts of
+ * the frame it was reported for.
+ */
+public class FlightRecorderInstrumentationTest {
+
+    private static final int FRAMES = 3000;
+    private static final int CONFIDENCE = 5;
+
+    @Test
+    public void verdictEventsCarryTheBucketsOfTheirOwnFrame() throws Exception {
+        final List<int[]> expected = new ArrayList<>();
+        final FlightRecorderInstrumentation recorder = new FlightRecorderInstrumentation("test");
+        // Passes calls through, noting what every Verdict event must hold
+        DetectorInstrumentation tap = new DetectorInstrumentation() {
+            private int[] mBuckets;
+
+            @Override
+            public void onDetectPeakTrough(int type, long nanos) {
+                recorder.onDetectPeakTrough(type, nanos);
+            }
+
+            @Override
+            public void onDetectPeakTroughs(PeakTroughEvents events, int from, int frames, long nanos) {
+                recorder.onDetectPeakTroughs(events, from, frames, nanos);
+            }
+
+            @Override
+            public void onCheckDataQuality(int verdict, long nanos) {
+                if (mBuckets != null) {
+                    expected.add(new int[] {verdict, mBuckets[0], mBuckets[1], mBuckets[2], mBuckets[3]});
+                    mBuckets = null;
+                }
+                recorder.onCheckDataQuality(verdict, nanos);
+            }
+
+            @Override
+            public void onCalibrated(int frames, double calcDiff, int signalWidth) {
+                recorder.onCalibrated(frames, calcDiff, signalWidth);
+            }
+
+            @Override
+            public void onConfidenceBuckets(int[] buckets) {
+                mBuckets = buckets.clone();
+                recorder.onConfidenceBuckets(buckets);
+            }
+        };
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.PARTIAL_COVER, FRAMES, 51);
+        AnemiaDetection detector = new AnemiaDetection(1);
+        detector.setInstrumentation(tap);
+        Path file = Files.createTempFile("verdicts", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            for (int f = 0; f < FRAMES; f++) {
+                detector.updateFrameCount(f + 1);
+                detector.checkDataQuality(trace.red[f], trace.green[f], trace.blue[f], CONFIDENCE, 1);
+            }
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals("ubicomp.anemia.Verdict")) {
+                    events.add(event);
+                }
+            }
+            assertTrue(expected.size() > 0);
+            assertEquals(expected.size(), events.size());
+            for (int i = 0; i < events.size(); i++) {
+                RecordedEvent event = events.get(i);
+                assertEquals("test", event.getString("source"));
+                assertEquals(expected.get(i)[0], event.getInt("verdict"));
+                assertEquals(expected.get(i)[1], event.getInt("onCamera"));
+                assertEquals(expected.get(i)[2], event.getInt("partialCover"));
+                assertEquals(expected.get(i)[3], event.getInt("shifted"));
+                assertEquals(expected.get(i)[4], event.getInt("offCamera"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
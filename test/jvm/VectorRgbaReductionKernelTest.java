@@ -0,0 +1,123 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * VectorRgbaReductionKernel must give exactly the sums of
+ * FrameReducer's own packed-long reduction, also when several
+ * threads use one kernel.
+ */
+public class VectorRgbaReductionKernelTest {
+
+    @Test
+    public void matchesThePortableReduction() {
+        Random random = new Random(41);
+        RgbaReductionKernel kernel = new VectorRgbaReductionKernel();
+        // Narrow rows after wide ones reuse the larger scratch row
+        for (int width : new int[] {1, 3, 8, 17, 64, 333, 1280, 17, 3}) {
+            for (boolean direct : new boolean[] {false, true}) {
+                int height = 7;
+                int rowStride = width * 4 + 12;
+                ByteBuffer frame = frame(random, rowStride * height, direct);
+                for (int left : new int[] {0, width / 3}) {
+                    long[] expected = new long[FrameReducer.SUM_SLOTS];
+                    long[] actual = new long[FrameReducer.SUM_SLOTS];
+                    FrameReducer.accumulateRgba(frame, rowStride, left, width, 1, height, expected);
+                    kernel.accumulate(frame, rowStride, left, width, 1, height, actual);
+                    assertArrayEquals("width " + width, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void threadsSharingAKernelGetTheirOwnSums() throws InterruptedException {
+        final RgbaReductionKernel kernel = new VectorRgbaReductionKernel();
+        final int[] widths = {64, 333, 640, 1001};
+        final int height = 9;
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[widths.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int width = widths[t];
+            final ByteBuffer frame = frame(new Random(50 + t), width * 4 * height, true);
+            final long[] expected = new long[FrameReducer.SUM_SLOTS];
+            FrameReducer.accumulateRgba(frame, width * 4, 0, width, 0, height, expected);
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            long[] actual = new long[FrameReducer.SUM_SLOTS];
+                            kernel.accumulate(frame, width * 4, 0, width, 0, height, actual);
+                            assertArrayEquals("width " + width, expected, actual);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+    }
+
+    @Test
+    public void doesNotOverflowTheLanesOfALargeWhiteFrame() {
+        int width = 4000;
+        int height = 300;
+        ByteBuffer frame = ByteBuffer.allocate(width * height * 4);
+        for (int i = 0; i < frame.capacity(); i++) {
+            frame.put(i, (byte) 255);
+        }
+        long[] sums = new long[FrameReducer.SUM_SLOTS];
+        new VectorRgbaReductionKernel().accumulate(frame, width * 4, 0, width, 0, height, sums);
+        long pixels = (long) width * height;
+        assertEquals(255 * pixels, sums[FrameReducer.RED_SUM]);
+        assertEquals(255 * pixels, sums[FrameReducer.GREEN_SUM]);
+        assertEquals(255 * pixels, sums[FrameReducer.BLUE_SUM]);
+        assertEquals(pixels, sums[FrameReducer.SATURATED_COUNT]);
+    }
+
+    @Test
+    public void frameReducerUsesTheKernel() {
+        int width = 321;
+        int height = 240;
+        ByteBuffer frame = frame(new Random(42), width * height * 4, true);
+        FrameReducer portable = new FrameReducer();
+        FrameReducer vector = new FrameReducer();
+        vector.setRgbaKernel(new VectorRgbaReductionKernel());
+        portable.reduceRgba(frame, width, height, width * 4);
+        vector.reduceRgba(frame, width, height, width * 4);
+        assertEquals(portable.getRedAverage(), vector.getRedAverage(), 0);
+        assertEquals(portable.getGreenAverage(), vector.getGreenAverage(), 0);
+        assertEquals(portable.getBlueAverage(), vector.getBlueAverage(), 0);
+        assertEquals(portable.getSaturatedCount(), vector.getSaturatedCount());
+    }
+
+    /**
+     * Random bytes, a quarter of them 255 so that saturated pixels
+     * of every kind turn up.
+     */
+    private static ByteBuffer frame(Random random, int size, boolean direct) {
+        ByteBuffer frame = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            frame.put(i, random.nextInt(4) == 0 ? (byte) 255 : (byte) random.nextInt(256));
+        }
+        return frame;
+    }
+}
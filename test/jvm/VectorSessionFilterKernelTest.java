@@ -0,0 +1,49 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * VectorSessionFilterKernel must give bit identical results to the
+ * scalar loop of MultiSessionDetector, including the scalar tail.
+ */
+public class VectorSessionFilterKernelTest {
+
+    @Test
+    public void matchesTheScalarLoopForEveryCount() {
+        Random random = new Random(31);
+        double lowPassSmoothing = DetectorParameters.DEFAULT.getLowPassSmoothing();
+        double highPassGain = DetectorParameters.DEFAULT.getHighPassGain();
+        for (int count = 0; count <= 37; count++) {
+            double[] rAvg = values(random, count, 100, 200);
+            double[] lpf = values(random, count, 100, 200);
+            double[] hpf = values(random, count, -5, 5);
+            double[] prevLpf = values(random, count, 100, 200);
+            double[] lpfOut = new double[count];
+            double[] hpfOut = new double[count];
+            new VectorSessionFilterKernel().filter(rAvg, lpf, hpf, prevLpf, lpfOut, hpfOut,
+                                                   count, lowPassSmoothing, highPassGain);
+            for (int s = 0; s < count; s++) {
+                double expectedLpf = lpf[s] + (rAvg[s] - lpf[s]) / lowPassSmoothing;
+                assertEquals(expectedLpf, lpfOut[s], 0);
+                assertEquals(highPassGain * (hpf[s] + expectedLpf - prevLpf[s]), hpfOut[s], 0);
+            }
+        }
+    }
+
+    @Test
+    public void stepAllMatchesStep() {
+        MultiSessionDetectorTest.assertStepAllMatchesStep(new VectorSessionFilterKernel());
+    }
+
+    private static double[] values(Random random, int count, double low, double high) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = low + (high - low) * random.nextDouble();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,151 @@
+package ubicomp.william.com.rgbchanneldatacollector;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * VirtualThreadSessionServer must answer every frame exactly like
+ * SessionServer and like local AnemiaDetection objects.
+ */
+public class VirtualThreadSessionServerTest {
+
+    private static final int FRAMES = 600;
+    private static final int CHUNK = 25;
+    private static final int CONFIDENCE = 5;
+    private static final int START_FRAME = 1;
+
+    @Test
+    public void answersLikeLocalDetectorsWithPlatformThreads() throws Exception {
+        assertAnswers(Executors.defaultThreadFactory());
+    }
+
+    @Test
+    public void answersLikeLocalDetectorsWithVirtualThreads() throws Exception {
+        ThreadFactory threads;
+        try {
+            threads = VirtualThreadSessionServer.virtualThreads();
+        } catch (UnsupportedOperationException e) {
+            threads = null;
+        }
+        Assume.assumeTrue("needs JDK 21", threads != null);
+        assertAnswers(threads);
+    }
+
+    @Test
+    public void answersLikeTheEventLoopServer() throws Exception {
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        SessionServer server = new SessionServer(loopback, 2);
+        try {
+            server.start();
+            assertSession(server.getAddress(), 31);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void closesTheSessionOnAMalformedMessage() throws Exception {
+        VirtualThreadSessionServer server = new VirtualThreadSessionServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Executors.defaultThreadFactory());
+        try {
+            server.start();
+            SocketChannel channel = SocketChannel.open(server.getAddress());
+            try {
+                channel.write(ByteBuffer.wrap(new byte[] {SessionServer.MSG_RESULT, 0, 0, 0, 1}));
+                assertEquals(-1, channel.read(ByteBuffer.allocate(SessionServer.RESULT_SIZE)));
+            } finally {
+                channel.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void assertAnswers(ThreadFactory threads) throws Exception {
+        VirtualThreadSessionServer server = new VirtualThreadSessionServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), threads);
+        try {
+            server.start();
+            for (int seed = 31; seed < 34; seed++) {
+                assertSession(server.getAddress(), seed);
+            }
+            assertEquals(3 * FRAMES, server.getFrameCount());
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Streams one trace, CHUNK frames at a time, and checks every
+     * RESULT against local detectors fed the same float values.
+     */
+    private static void assertSession(InetSocketAddress address, long seed) throws IOException {
+        SyntheticTrace trace = SyntheticTrace.generate(SyntheticTrace.Scenario.NOISY, FRAMES, seed);
+        AnemiaDetection quality = new AnemiaDetection(1);
+        AnemiaDetection events = new AnemiaDetection(1);
+        double[] expected = new double[3];
+        ByteBuffer out = ByteBuffer.allocate(SessionServer.HELLO_SIZE + CHUNK * SessionServer.FRAME_SIZE);
+        ByteBuffer in = ByteBuffer.allocate(CHUNK * SessionServer.RESULT_SIZE);
+        int points = 0;
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            out.put(SessionServer.MSG_HELLO).put((byte) CONFIDENCE).putInt(START_FRAME);
+            for (int from = 0; from < FRAMES; from += CHUNK) {
+                for (int f = from; f < from + CHUNK; f++) {
+                    out.put(SessionServer.MSG_FRAME).putInt(f + 1).putFloat((float) trace.red[f])
+                       .putFloat((float) trace.green[f]).putFloat((float) trace.blue[f]);
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.clear();
+                in.clear();
+                while (in.hasRemaining()) {
+                    assertTrue(channel.read(in) >= 0);
+                }
+                in.flip();
+                for (int f = from; f < from + CHUNK; f++) {
+                    double r = (float) trace.red[f];
+                    quality.updateFrameCount(f + 1);
+                    int verdict = quality.checkDataQuality(r, (float) trace.green[f], (float) trace.blue[f],
+                                                           CONFIDENCE, START_FRAME);
+                    events.updateFrameCount(f + 1);
+                    int type = events.detectPeakTrough(r, START_FRAME, expected);
+                    assertEquals(SessionServer.MSG_RESULT, in.get());
+                    assertEquals(f + 1, in.getInt());
+                    assertEquals(verdict, in.get());
+                    assertEquals(type, in.get());
+                    assertEquals((int) expected[1], in.getInt());
+                    assertEquals((float) expected[2], in.getFloat(), 0);
+                    if (type != 0) {
+                        points++;
+                    }
+                }
+            }
+        } finally {
+            closeQuietly(channel);
+        }
+        assertTrue(points > 0);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}